@@ -0,0 +1,122 @@
+package com.example.recalllive;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented checks and query timings for the cluster selection index.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClusterIndexTest {
+    private static final String TAG = "ClusterIndexTest";
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long START = 1_600_000_000_000L;
+
+    private PhotoDatabase database;
+    private ClusterIndex clusterIndex;
+    private final List<ClusterEntity> catalog = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, PhotoDatabase.class).build();
+        clusterIndex = new ClusterIndex(database);
+
+        // Ten years of clusters spread over a large metro area
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            ClusterEntity cluster = new ClusterEntity("cluster_" + i);
+            cluster.setLatitude(37.0 + random.nextDouble() * 1.5);
+            cluster.setLongitude(-123.0 + random.nextDouble() * 1.5);
+            cluster.setCellRow(ClusterEntity.cellOf(cluster.getLatitude()));
+            cluster.setCellColumn(ClusterEntity.cellOf(cluster.getLongitude()));
+            cluster.setStartTime(START + (long) (random.nextDouble() * 3650 * DAY));
+            cluster.setEndTime(cluster.getStartTime() + random.nextInt(6) * 60 * 60 * 1000L);
+            cluster.setPhotoCount(1 + random.nextInt(40));
+            cluster.setLastUsedAt(random.nextInt(4) == 0 ? START + 3650 * DAY : 0);
+            catalog.add(cluster);
+        }
+        database.clusterDao().insertClusters(catalog);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void findNear_matchesFullScan() {
+        double lat = 37.7749;
+        double lng = -122.4194;
+        long from = START + 1000 * DAY;
+        long to = START + 1400 * DAY;
+
+        Set<String> expected = new HashSet<>();
+        for (ClusterEntity cluster : catalog) {
+            if (cluster.getStartTime() <= to && cluster.getEndTime() >= from
+                    && GeoDistance.distanceMeters(lat, lng, cluster.getLatitude(), cluster.getLongitude()) <= 5_000) {
+                expected.add(cluster.getClusterId());
+            }
+        }
+
+        Set<String> actual = new HashSet<>();
+        for (ClusterEntity cluster : clusterIndex.findNear(lat, lng, 5_000, from, to)) {
+            actual.add(cluster.getClusterId());
+        }
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void findNotUsedSince_skipsRecentlyUsed() {
+        List<ClusterEntity> clusters = clusterIndex.findNotUsedSince(START + 3000 * DAY, 1, 10);
+
+        assertEquals(10, clusters.size());
+        for (ClusterEntity cluster : clusters) {
+            assertEquals(0, cluster.getLastUsedAt());
+        }
+    }
+
+    /**
+     * Logs the per-query cost over the 20k cluster catalog. Informational, never fails.
+     */
+    @Test
+    public void benchmarkSelectionQueries() {
+        int rounds = 200;
+        Random random = new Random(2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            long from = START + random.nextInt(3000) * DAY;
+            clusterIndex.findNear(37.0 + random.nextDouble() * 1.5, -123.0 + random.nextDouble() * 1.5,
+                    5_000, from, from + 365 * DAY);
+        }
+        double nearMicros = (System.nanoTime() - start) / 1000.0 / rounds;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            clusterIndex.findNotUsedSince(START + 3000 * DAY, 1, 10);
+        }
+        double unusedMicros = (System.nanoTime() - start) / 1000.0 / rounds;
+
+        Log.i(TAG, String.format("findNear %.0f us, findNotUsedSince %.0f us per query", nearMicros, unusedMicros));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.recalllive;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades databases built from the exported schemas in app/schemas through every migration,
+ * validating each result against the schema of the version it lands on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotoDatabaseMigrationTest {
+    private static final String DATABASE_NAME = "migration_test_db";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), PhotoDatabase.class);
+
+    @Test
+    public void migrate1To2() throws IOException {
+        helper.createDatabase(DATABASE_NAME, 1).close();
+        helper.runMigrationsAndValidate(DATABASE_NAME, 2, true, PhotoDatabase.MIGRATION_1_2).close();
+    }
+
+    @Test
+    public void migrate2To3() throws IOException {
+        helper.createDatabase(DATABASE_NAME, 2).close();
+        helper.runMigrationsAndValidate(DATABASE_NAME, 3, true, PhotoDatabase.MIGRATION_2_3).close();
+    }
+
+    @Test
+    public void migrate3To4() throws IOException {
+        helper.createDatabase(DATABASE_NAME, 3).close();
+        helper.runMigrationsAndValidate(DATABASE_NAME, 4, true, PhotoDatabase.MIGRATION_3_4).close();
+    }
+
+    @Test
+    public void migrate4To5() throws IOException {
+        helper.createDatabase(DATABASE_NAME, 4).close();
+        helper.runMigrationsAndValidate(DATABASE_NAME, 5, true, PhotoDatabase.MIGRATION_4_5).close();
+    }
+
+    @Test
+    public void version1_keepsItsPhotosAndGetsAClusterIndex() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DATABASE_NAME, 1);
+        insertPhoto(db, "content://media/external/images/media/1", 1000, 37.51, -122.26, "loc_a_time_1000");
+        insertPhoto(db, "content://media/external/images/media/2", 3000, 37.53, -122.24, "loc_a_time_1000");
+        insertPhoto(db, "content://media/external/images/media/3", 5000, 0.0, 0.0, "loc_a_time_1000");
+        insertPhoto(db, "content://media/external/images/media/4", 9000, -33.87, 151.21, "loc_b_time_9000");
+        db.close();
+
+        helper.runMigrationsAndValidate(DATABASE_NAME, 5, true, PhotoDatabase.MIGRATIONS).close();
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PhotoDatabase database = Room.databaseBuilder(context, PhotoDatabase.class, DATABASE_NAME)
+                .addMigrations(PhotoDatabase.MIGRATIONS)
+                .build();
+        try {
+            assertEquals(4, database.photoDao().getPhotoCount());
+            assertEquals(0, database.duplicateDao().getDuplicateCount());
+            assertEquals(0L, database.photoDao().getPhotoByUri("content://media/external/images/media/1")
+                    .getPerceptualHash());
+
+            List<ClusterEntity> clusters = database.clusterDao().getClustersByIds(
+                    Arrays.asList("loc_a_time_1000", "loc_b_time_9000"));
+            assertEquals(2, clusters.size());
+            for (ClusterEntity cluster : clusters) {
+                if (cluster.getClusterId().equals("loc_a_time_1000")) {
+                    // The photo without a location is counted but does not pull the center to 0,0
+                    assertEquals(3, cluster.getPhotoCount());
+                    assertEquals(1000, cluster.getStartTime());
+                    assertEquals(5000, cluster.getEndTime());
+                    assertEquals(37.52, cluster.getLatitude(), 1e-9);
+                    assertEquals(ClusterEntity.cellOf(-122.25), cluster.getCellColumn());
+                } else {
+                    assertEquals(ClusterEntity.cellOf(-33.87), cluster.getCellRow());
+                    assertEquals(ClusterEntity.cellOf(151.21), cluster.getCellColumn());
+                }
+            }
+
+            assertEquals(3, database.photoDao().getPhotosByLocationPrefix("loc_a_time_").size());
+            // The photo without a location is left out of bounds queries
+            try (Cursor cursor = database.photoDao().getClusterPhotosInBounds(37.5, 37.54, -122.27, -122.23)) {
+                assertEquals(2, cursor.getCount());
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private static void insertPhoto(SupportSQLiteDatabase db, String uri, long dateTaken, double latitude,
+                                    double longitude, String clusterId) {
+        db.execSQL("INSERT INTO photos (photoUri, dateTaken, latitude, longitude, clusterId) VALUES (?, ?, ?, ?, ?)",
+                new Object[]{uri, dateTaken, latitude, longitude, clusterId});
+    }
+}
@@ -8,6 +8,7 @@ import androidx.annotation.NonNull;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -22,6 +23,8 @@ public class AppExecutors {
     private static final int CORE_POOL_SIZE = 3;
     private static final int MAX_POOL_SIZE = 5;
     private static final int KEEP_ALIVE_TIME = 60;
+    // Media reads wait on storage, not the CPU, so more of them overlap than there are cores
+    private static final int MEDIA_IO_THREADS = 4;
 
     private static volatile AppExecutors sInstance;
 
@@ -29,13 +32,18 @@ public class AppExecutors {
     private final Executor networkIO;
     private final Executor mainThread;
     private final ExecutorService lightweightExecutor;
+    private final ForkJoinPool computePool;
+    private final ExecutorService mediaIO;
 
     private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread,
-                         ExecutorService lightweightExecutor) {
+                         ExecutorService lightweightExecutor, ForkJoinPool computePool,
+                         ExecutorService mediaIO) {
         this.diskIO = diskIO;
         this.networkIO = networkIO;
         this.mainThread = mainThread;
         this.lightweightExecutor = lightweightExecutor;
+        this.computePool = computePool;
+        this.mediaIO = mediaIO;
     }
 
     public static AppExecutors getInstance() {
@@ -56,7 +64,11 @@ public class AppExecutors {
                             // Main thread executor for UI updates
                             new MainThreadExecutor(),
                             // Lightweight executor for quick background tasks
-                            Executors.newSingleThreadExecutor()
+                            Executors.newSingleThreadExecutor(),
+                            // CPU-bound fork/join work (clustering), one worker per core
+                            new ForkJoinPool(Runtime.getRuntime().availableProcessors()),
+                            // Blocking media file reads (EXIF headers), fed through bounded pipelines
+                            Executors.newFixedThreadPool(MEDIA_IO_THREADS)
                     );
                 }
             }
@@ -80,6 +92,14 @@ public class AppExecutors {
         return lightweightExecutor;
     }
 
+    public ForkJoinPool computePool() {
+        return computePool;
+    }
+
+    public ExecutorService mediaIO() {
+        return mediaIO;
+    }
+
     /**
      * Shutdown all executors (call in Application.onTerminate() if needed)
      */
@@ -94,6 +114,8 @@ public class AppExecutors {
             if (sInstance.lightweightExecutor != null) {
                 sInstance.lightweightExecutor.shutdown();
             }
+            sInstance.computePool.shutdown();
+            sInstance.mediaIO.shutdown();
         }
     }
 
@@ -73,12 +73,21 @@ public class AutoClusteringService {
 
         // Schedule periodic clustering using WorkManager
         schedulePeriodicClustering();
+
+        // Cluster new photos within seconds of them being taken
+        PhotoChangeObserver.start(context, patientUid);
     }
 
     /**
      * Check if clustering is needed and start if necessary
      */
     private void checkAndStartClustering(String patientUid) {
+        if (IngestCheckpoint.isInterrupted(context)) {
+            Log.d(TAG, "Previous full clustering was interrupted. Resuming...");
+            performClustering(patientUid, true);
+            return;
+        }
+
         DatabaseReference clusterRef = FirebaseDatabase.getInstance().getReference()
                 .child("Patient")
                 .child(patientUid)
@@ -134,7 +143,7 @@ public class AutoClusteringService {
         // Create processing service
         PhotoProcessingService processingService = new PhotoProcessingService(context, patientUid);
 
-        processingService.processAllPhotos(new PhotoProcessingService.ProcessingCallback() {
+        PhotoProcessingService.ProcessingCallback callback = new PhotoProcessingService.ProcessingCallback() {
             @Override
             public void onProcessingStarted() {
                 Log.d(TAG, "Clustering started");
@@ -149,14 +158,15 @@ public class AutoClusteringService {
 
             @Override
             public void onProcessingComplete(List<PhotoClusteringManager.PhotoCluster> clusters) {
-                Log.d(TAG, "Clustering complete! Created " + clusters.size() + " clusters");
+                int clusterCount = clusters != null ? clusters.size() : 0;
+                Log.d(TAG, "Clustering complete! Created or updated " + clusterCount + " clusters");
 
                 // Update last cluster time
                 prefs.edit().putLong(KEY_LAST_CLUSTER_TIME, System.currentTimeMillis()).apply();
 
                 // Show completion notification
                 showCompletionNotification("Photo organization complete!",
-                        "Created " + clusters.size() + " memory clusters");
+                        "Created " + clusterCount + " memory clusters");
 
                 // If initial setup, notify that daily videos are ready
                 if (isInitial) {
@@ -169,7 +179,14 @@ public class AutoClusteringService {
                 Log.e(TAG, "Clustering failed: " + error);
                 showErrorNotification("Failed to organize photos", error);
             }
-        });
+        };
+
+        // Only the first run clusters the whole library; later runs cluster the delta
+        if (isInitial) {
+            processingService.processAllPhotos(callback);
+        } else {
+            processingService.processNewPhotos(callback);
+        }
     }
 
     /**
@@ -356,6 +373,7 @@ public class AutoClusteringService {
     public void stopAutoClustering() {
         // Cancel scheduled work
         WorkManager.getInstance(context).cancelAllWorkByTag("photo_clustering");
+        PhotoChangeObserver.stop(context);
 
         // Clear user type
         prefs.edit().remove(KEY_USER_TYPE).apply();
@@ -2,6 +2,7 @@ package com.example.recalllive;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.work.Constraints;
@@ -25,6 +26,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.firebase.database.DatabaseReference;
@@ -45,6 +47,10 @@ public class AutomaticVideoService {
     private static final int MAX_VIDEOS_PER_DAY = VideoConfiguration.MAX_VIDEOS_PER_DAY;
     private static final boolean ENABLE_AUTO_CLEANUP = VideoConfiguration.ENABLE_AUTO_CLEANUP;
     private static final boolean ENABLE_TTS = VideoConfiguration.ENABLE_TTS_NARRATION;
+    private static final long CLUSTER_REUSE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final int TOP_CLUSTER_CHOICES = 5;
+    // Smallest cluster worth a video, for both the local index and the Firebase clusters
+    private static final int MIN_CLUSTER_PHOTOS = 1;
 
     private final Context context;
     private final SharedPreferences prefs;
@@ -52,6 +58,7 @@ public class AutomaticVideoService {
     private final FirebaseFirestore firestore;
     private final LocationGeocoderService geocoder;
     private final TTSVideoGenerator ttsGenerator;
+    private final ClusterIndex clusterIndex;
 
     public AutomaticVideoService(Context context) {
         this.context = context;
@@ -60,6 +67,7 @@ public class AutomaticVideoService {
         this.firestore = FirebaseFirestore.getInstance();
         this.geocoder = new LocationGeocoderService(context);
         this.ttsGenerator = new TTSVideoGenerator(context);
+        this.clusterIndex = new ClusterIndex(PhotoDatabase.getInstance(context));
     }
 
     /**
@@ -145,6 +153,63 @@ public class AutomaticVideoService {
         }
     }
 
+    /**
+     * Signup fast path, once PhotoProcessingService.processRecentPhotos has published the
+     * recent clusters: one video right away, then the rest of the library and the remaining
+     * signup videos in the background. The time from setupStartedAt (elapsedRealtime) to the
+     * first video is recorded.
+     */
+    public void initializeForNewPatient(String patientUid, long setupStartedAt) {
+        Log.d(TAG, "╔═══════════════════════════════════════╗");
+        Log.d(TAG, "  🆕 SIGNUP - First Video Fast Path");
+        Log.d(TAG, "  Patient: " + patientUid);
+        Log.d(TAG, "╚═══════════════════════════════════════╝");
+
+        resetDailyCount();
+        clearGeneratedClusters();
+
+        cleanupAllVideosWithCallback(patientUid, () -> {
+            AtomicBoolean firstDone = new AtomicBoolean(false);
+            generateMultipleVideosForPatient(patientUid, 1, "signup_first", success -> {
+                if (!firstDone.compareAndSet(false, true)) {
+                    return;
+                }
+                recordTimeToFirstVideo(patientUid, SystemClock.elapsedRealtime() - setupStartedAt, success);
+                continueSignupInBackground(patientUid, success ? 1 : 0);
+            });
+        });
+    }
+
+    private void continueSignupInBackground(String patientUid, int videosMade) {
+        PhotoProcessingService processingService =
+                new PhotoProcessingService(context.getApplicationContext(), patientUid);
+        processingService.finishInterruptedIngest(new PhotoProcessingService.ProcessingCallback() {
+            @Override
+            public void onProcessingStarted() {
+                Log.d(TAG, "▶️ Organizing the rest of the library...");
+            }
+
+            @Override
+            public void onProgressUpdate(int processed, int total) {
+            }
+
+            @Override
+            public void onProcessingComplete(List<PhotoClusteringManager.PhotoCluster> clusters) {
+                Log.d(TAG, "✓ Library organized, generating the remaining signup videos");
+                generateMultipleVideosForPatient(patientUid, MAX_VIDEOS_PER_DAY - videosMade, "signup");
+            }
+
+            @Override
+            public void onProcessingError(String error) {
+                // Whatever is stored is still worth making videos of; the next run resumes the rest
+                Log.e(TAG, "❌ Organizing the library failed: " + error);
+                generateMultipleVideosForPatient(patientUid, MAX_VIDEOS_PER_DAY - videosMade, "signup");
+            }
+        });
+
+        scheduleDailyVideoGeneration(patientUid);
+    }
+
     private void verifyAndSyncVideoCount(String patientUid, boolean isSignup) {
         String today = getTodayDateString();
         Log.d(TAG, "🔍 Verifying actual video count for today: " + today);
@@ -213,6 +278,14 @@ public class AutomaticVideoService {
     }
 
     private void generateMultipleVideosForPatient(String patientUid, int videosToGenerate, String triggerType) {
+        generateMultipleVideosForPatient(patientUid, videosToGenerate, triggerType, null);
+    }
+
+    /**
+     * onEachVideo is called once per video, or once with false if none could be started
+     */
+    private void generateMultipleVideosForPatient(String patientUid, int videosToGenerate, String triggerType,
+                                                  VideoCompletionCallback onEachVideo) {
         Log.d(TAG, "━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         Log.d(TAG, "GENERATING " + videosToGenerate + " VIDEOS");
         Log.d(TAG, "Patient: " + patientUid);
@@ -222,6 +295,23 @@ public class AutomaticVideoService {
         AppExecutors.getInstance().networkIO().execute(() -> {
             try {
                 Log.d(TAG, "📂 Step 1: Loading photo clusters...");
+
+                // Only the candidates are loaded and geocoded when the local index has clusters
+                List<PhotoClusteringManager.PhotoCluster> candidates = clusterIndex.loadClusters(
+                        clusterIndex.findNotUsedSince(System.currentTimeMillis() - CLUSTER_REUSE_MILLIS,
+                                MIN_CLUSTER_PHOTOS, videosToGenerate + TOP_CLUSTER_CHOICES - 1));
+                if (!candidates.isEmpty()) {
+                    Log.d(TAG, "✓ Selected " + candidates.size() + " candidate clusters from local index");
+                    geocodeClustersAndGenerateMultiple(candidates, patientUid, triggerType, videosToGenerate,
+                            false, onEachVideo);
+                    return;
+                }
+                if (clusterIndex.hasClusters()) {
+                    Log.w(TAG, "⚠️ Every cluster was used in the last 30 days - no videos generated");
+                    if (onEachVideo != null) onEachVideo.onComplete(false);
+                    return;
+                }
+
                 FirebaseClusterManager clusterManager = new FirebaseClusterManager(context, patientUid);
 
                 clusterManager.getClusters(new FirebaseClusterManager.OnClustersRetrievedCallback() {
@@ -229,25 +319,35 @@ public class AutomaticVideoService {
                     public void onClustersRetrieved(List<PhotoClusteringManager.PhotoCluster> clusters) {
                         if (clusters == null || clusters.isEmpty()) {
                             Log.e(TAG, "❌ No clusters found");
+                            if (onEachVideo != null) onEachVideo.onComplete(false);
                             return;
                         }
                         Log.d(TAG, "✓ Found " + clusters.size() + " clusters");
-                        geocodeClustersAndGenerateMultiple(clusters, patientUid, triggerType, videosToGenerate);
+                        geocodeClustersAndGenerateMultiple(clusters, patientUid, triggerType, videosToGenerate,
+                                true, onEachVideo);
                     }
 
                     @Override
                     public void onError(String error) {
                         Log.e(TAG, "❌ Failed to load clusters: " + error);
+                        if (onEachVideo != null) onEachVideo.onComplete(false);
                     }
                 });
             } catch (Exception e) {
                 Log.e(TAG, "❌ Exception in generateMultipleVideosForPatient", e);
+                if (onEachVideo != null) onEachVideo.onComplete(false);
             }
         });
     }
 
+    /**
+     * recycleWhenExhausted starts over on today's generated clusters when all of them were used;
+     * otherwise onEachVideo gets false and no video is made
+     */
     private void geocodeClustersAndGenerateMultiple(List<PhotoClusteringManager.PhotoCluster> clusters,
-                                                    String patientUid, String triggerType, int videosToGenerate) {
+                                                    String patientUid, String triggerType, int videosToGenerate,
+                                                    boolean recycleWhenExhausted,
+                                                    VideoCompletionCallback onEachVideo) {
         geocoder.geocodeClusters(clusters, new LocationGeocoderService.ClusterGeocodeCallback() {
             @Override
             public void onProgress(int processed, int total) {
@@ -262,6 +362,11 @@ public class AutomaticVideoService {
 
                 List<PhotoClusteringManager.PhotoCluster> availableClusters = getAvailableClusters(geocodedClusters);
 
+                if (availableClusters.isEmpty() && !recycleWhenExhausted) {
+                    Log.w(TAG, "⚠️ No unused clusters left");
+                    if (onEachVideo != null) onEachVideo.onComplete(false);
+                    return;
+                }
                 if (availableClusters.isEmpty()) {
                     Log.w(TAG, "⚠️ No available clusters - resetting");
                     clearGeneratedClusters();
@@ -269,6 +374,9 @@ public class AutomaticVideoService {
                 }
 
                 int videosToCreate = Math.min(videosToGenerate, availableClusters.size());
+                if (videosToCreate == 0 && onEachVideo != null) {
+                    onEachVideo.onComplete(false);
+                }
                 Set<String> usedInThisSession = new HashSet<>();
                 AtomicInteger completedVideos = new AtomicInteger(0);
                 AtomicInteger failedVideos = new AtomicInteger(0);
@@ -290,11 +398,13 @@ public class AutomaticVideoService {
                         generateVideoWithTTS(selectedCluster, patientUid, triggerType, success -> {
                             if (success) completedVideos.incrementAndGet();
                             else failedVideos.incrementAndGet();
+                            if (onEachVideo != null) onEachVideo.onComplete(success);
                         });
                     } else {
                         generateSilentVideo(selectedCluster, patientUid, triggerType, success -> {
                             if (success) completedVideos.incrementAndGet();
                             else failedVideos.incrementAndGet();
+                            if (onEachVideo != null) onEachVideo.onComplete(success);
                         });
                     }
 
@@ -318,7 +428,7 @@ public class AutomaticVideoService {
         List<PhotoClusteringManager.PhotoCluster> available = new ArrayList<>();
 
         for (PhotoClusteringManager.PhotoCluster cluster : allClusters) {
-            if (cluster.getPhotoCount() >= 1 && !usedClusters.contains(cluster.getClusterId())) {
+            if (cluster.getPhotoCount() >= MIN_CLUSTER_PHOTOS && !usedClusters.contains(cluster.getClusterId())) {
                 available.add(cluster);
             }
         }
@@ -342,7 +452,7 @@ public class AutomaticVideoService {
         uniqueClusters.sort((a, b) -> b.getPhotoCount() - a.getPhotoCount());
 
         Random random = new Random();
-        int topChoices = Math.min(5, uniqueClusters.size());
+        int topChoices = Math.min(TOP_CLUSTER_CHOICES, uniqueClusters.size());
         return uniqueClusters.get(random.nextInt(topChoices));
     }
 
@@ -539,6 +649,20 @@ public class AutomaticVideoService {
         firestore.collection("video_generation_log").add(record);
     }
 
+    private void recordTimeToFirstVideo(String patientUid, long millis, boolean success) {
+        Log.d(TAG, "⏱ Time to first video: " + millis + " ms" + (success ? "" : " (no video made)"));
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("patientUid", patientUid);
+        record.put("metric", "time_to_first_video");
+        record.put("valueMillis", millis);
+        record.put("recentDays", VideoConfiguration.FIRST_VIDEO_RECENT_DAYS);
+        record.put("success", success);
+        record.put("timestamp", FieldValue.serverTimestamp());
+
+        firestore.collection("setup_metrics").add(record);
+    }
+
     private String getTodayDateString() {
         return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
     }
@@ -578,6 +702,7 @@ public class AutomaticVideoService {
         Set<String> clusters = getGeneratedClusters();
         clusters.add(clusterId);
         prefs.edit().putStringSet(KEY_GENERATED_CLUSTERS, clusters).apply();
+        AppExecutors.getInstance().diskIO().execute(() -> clusterIndex.markUsed(clusterId));
     }
 
     private void clearGeneratedClusters() {
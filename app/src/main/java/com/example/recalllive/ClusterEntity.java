@@ -0,0 +1,162 @@
+package com.example.recalllive;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One row per cluster, indexed for selection queries.
+ *
+ * The cluster center is bucketed into a coarse grid cell, so "near X" becomes an index range
+ * scan over (cellRow, cellColumn) and "between A and B" a range over startTime. Together they
+ * act as a time-bucketed grid over the catalog; callers never have to load every cluster to
+ * filter or shuffle it in memory.
+ */
+@Entity(tableName = "clusters",
+        indices = {
+                @Index({"cellRow", "cellColumn", "startTime"}),
+                @Index("startTime"),
+                @Index({"lastUsedAt", "photoCount"})
+        })
+public class ClusterEntity {
+
+    // About 5.5 km of latitude, so a few km radius query touches a 3x3 block of cells
+    public static final double CELL_DEGREES = 0.05;
+
+    @PrimaryKey
+    @NonNull
+    private String clusterId;
+    private double latitude;
+    private double longitude;
+    private int cellRow;
+    private int cellColumn;
+    private long startTime;
+    private long endTime;
+    private int photoCount;
+    private String locationName;
+    private String timeDescription;
+    private long lastUsedAt; // 0 until a video or quiz has used the cluster
+
+    public ClusterEntity(@NonNull String clusterId) {
+        this.clusterId = clusterId;
+    }
+
+    /**
+     * Index row for a freshly clustered PhotoCluster
+     */
+    public static ClusterEntity fromCluster(PhotoClusteringManager.PhotoCluster cluster) {
+        ClusterEntity entity = new ClusterEntity(cluster.getClusterId());
+        entity.setLatitude(cluster.getLatitude());
+        entity.setLongitude(cluster.getLongitude());
+        entity.setCellRow(cellOf(cluster.getLatitude()));
+        entity.setCellColumn(cellOf(cluster.getLongitude()));
+        entity.setStartTime(cluster.getStartTime());
+        entity.setEndTime(cluster.getEndTime());
+        entity.setPhotoCount(cluster.getPhotoCount());
+        entity.setLocationName(cluster.getLocationName());
+        entity.setTimeDescription(cluster.getTimeDescription());
+        return entity;
+    }
+
+    /**
+     * Grid cell of a latitude or longitude
+     */
+    public static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    public boolean hasLocation() {
+        return latitude != 0.0 || longitude != 0.0;
+    }
+
+    // Getters and Setters
+    @NonNull
+    public String getClusterId() {
+        return clusterId;
+    }
+
+    public void setClusterId(@NonNull String clusterId) {
+        this.clusterId = clusterId;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public int getCellRow() {
+        return cellRow;
+    }
+
+    public void setCellRow(int cellRow) {
+        this.cellRow = cellRow;
+    }
+
+    public int getCellColumn() {
+        return cellColumn;
+    }
+
+    public void setCellColumn(int cellColumn) {
+        this.cellColumn = cellColumn;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public int getPhotoCount() {
+        return photoCount;
+    }
+
+    public void setPhotoCount(int photoCount) {
+        this.photoCount = photoCount;
+    }
+
+    public String getLocationName() {
+        return locationName;
+    }
+
+    public void setLocationName(String locationName) {
+        this.locationName = locationName;
+    }
+
+    public String getTimeDescription() {
+        return timeDescription;
+    }
+
+    public void setTimeDescription(String timeDescription) {
+        this.timeDescription = timeDescription;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public void setLastUsedAt(long lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.recalllive;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatio-temporal selection over the clusters table.
+ *
+ * Answers "clusters within R of X between A and B" and "clusters not used since T" with
+ * index range scans, and only loads the photos of the clusters a caller actually picks.
+ * All methods block on Room, so call them off the main thread.
+ */
+public class ClusterIndex {
+    // Stays under SQLite's bound variable limit for IN (...) queries
+    private static final int SQL_BATCH_SIZE = 500;
+
+    private final PhotoDatabase database;
+    private final PhotoDatabase.ClusterDao clusterDao;
+
+    public ClusterIndex(PhotoDatabase database) {
+        this.database = database;
+        this.clusterDao = database.clusterDao();
+    }
+
+    /**
+     * Write the clusters a clustering run produced and drop the ones it retired.
+     * Clusters written again unchanged keep their usage, since their IDs are stable.
+     */
+    public void update(List<PhotoClusteringManager.PhotoCluster> clusters, List<String> removedClusterIds) {
+        Map<String, ClusterEntity> entities = new HashMap<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+            entities.put(cluster.getClusterId(), ClusterEntity.fromCluster(cluster));
+        }
+        List<String> ids = new ArrayList<>(entities.keySet());
+
+        database.runInTransaction(() -> {
+            for (int i = 0; i < ids.size(); i += SQL_BATCH_SIZE) {
+                List<String> batch = ids.subList(i, Math.min(i + SQL_BATCH_SIZE, ids.size()));
+                for (ClusterEntity stored : clusterDao.getClustersByIds(batch)) {
+                    entities.get(stored.getClusterId()).setLastUsedAt(stored.getLastUsedAt());
+                }
+            }
+            clusterDao.insertClusters(new ArrayList<>(entities.values()));
+
+            for (int i = 0; i < removedClusterIds.size(); i += SQL_BATCH_SIZE) {
+                clusterDao.deleteClustersByIds(
+                        removedClusterIds.subList(i, Math.min(i + SQL_BATCH_SIZE, removedClusterIds.size())));
+            }
+        });
+    }
+
+    /**
+     * Drop index rows no photo points to any more, after a full run rewrote the photos table
+     */
+    public void pruneOrphans() {
+        clusterDao.deleteOrphanedClusters();
+    }
+
+    /**
+     * Clusters centered within the radius of a point whose time span overlaps [fromTime, toTime]
+     */
+    public List<ClusterEntity> findNear(double latitude, double longitude, double radiusMeters,
+                                        long fromTime, long toTime) {
+        double latDelta = radiusMeters / GeoDistance.METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(Math.min(90.0, Math.abs(latitude) + latDelta)));
+        double lngDelta = Math.min(180.0, latDelta / Math.max(cos, 1e-6));
+
+        int minRow = ClusterEntity.cellOf(latitude - latDelta);
+        int maxRow = ClusterEntity.cellOf(latitude + latDelta);
+        double west = longitude - lngDelta;
+        double east = longitude + lngDelta;
+
+        List<ClusterEntity> candidates = new ArrayList<>();
+        if (lngDelta >= 180.0) {
+            candidates.addAll(clusterDao.getClustersInCells(minRow, maxRow,
+                    ClusterEntity.cellOf(-180.0), ClusterEntity.cellOf(180.0), fromTime, toTime));
+        } else {
+            // A box crossing the antimeridian is queried as two column ranges
+            if (west < -180.0) {
+                candidates.addAll(clusterDao.getClustersInCells(minRow, maxRow,
+                        ClusterEntity.cellOf(west + 360.0), ClusterEntity.cellOf(180.0), fromTime, toTime));
+                west = -180.0;
+            }
+            if (east > 180.0) {
+                candidates.addAll(clusterDao.getClustersInCells(minRow, maxRow,
+                        ClusterEntity.cellOf(-180.0), ClusterEntity.cellOf(east - 360.0), fromTime, toTime));
+                east = 180.0;
+            }
+            candidates.addAll(clusterDao.getClustersInCells(minRow, maxRow,
+                    ClusterEntity.cellOf(west), ClusterEntity.cellOf(east), fromTime, toTime));
+        }
+
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        List<ClusterEntity> result = new ArrayList<>();
+        for (ClusterEntity cluster : candidates) {
+            if (cluster.hasLocation() && GeoDistance.isWithinRadius(latitude, longitude, cosLatitude,
+                    cluster.getLatitude(), cluster.getLongitude(), radiusMeters)) {
+                result.add(cluster);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Largest clusters not used since the given time. Empty if every cluster was used since
+     * then; check hasClusters to tell that apart from an index that was never filled.
+     */
+    public List<ClusterEntity> findNotUsedSince(long usedBefore, int minPhotos, int limit) {
+        return clusterDao.getClustersNotUsedSince(usedBefore, minPhotos, limit);
+    }
+
+    public boolean hasClusters() {
+        return clusterDao.getClusterCount() > 0;
+    }
+
+    public List<ClusterEntity> findRandom(int minPhotos, int limit) {
+        return clusterDao.getRandomClusters(minPhotos, limit);
+    }
+
+    public void markUsed(String clusterId) {
+        clusterDao.markClusterUsed(clusterId, System.currentTimeMillis());
+    }
+
+    /**
+     * Materialize selected index rows as clusters with their photos, in the order given.
+     * Photos are read in batches of clusters rather than one query per cluster.
+     */
+    public List<PhotoClusteringManager.PhotoCluster> loadClusters(List<ClusterEntity> entities) {
+        List<String> ids = new ArrayList<>(entities.size());
+        for (ClusterEntity entity : entities) {
+            ids.add(entity.getClusterId());
+        }
+        Map<String, List<PhotoData>> photosByCluster = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += SQL_BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + SQL_BATCH_SIZE, ids.size()));
+            for (PhotoData photo : database.photoDao().getPhotosInClusters(batch)) {
+                photosByCluster.computeIfAbsent(photo.getClusterId(), id -> new ArrayList<>()).add(photo);
+            }
+        }
+
+        List<PhotoClusteringManager.PhotoCluster> clusters = new ArrayList<>(entities.size());
+        for (ClusterEntity entity : entities) {
+            List<PhotoData> photos = photosByCluster.get(entity.getClusterId());
+            if (photos == null) {
+                continue;
+            }
+
+            PhotoClusteringManager.PhotoCluster cluster =
+                    new PhotoClusteringManager.PhotoCluster(entity.getClusterId());
+            cluster.setPhotos(photos);
+            cluster.setLatitude(entity.getLatitude());
+            cluster.setLongitude(entity.getLongitude());
+            cluster.setStartTime(entity.getStartTime());
+            cluster.setEndTime(entity.getEndTime());
+            cluster.setLocationName(entity.getLocationName());
+            cluster.setTimeDescription(entity.getTimeDescription());
+            clusters.add(cluster);
+        }
+
+        return clusters;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.recalllive;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Summary of a cluster's photos, accumulated in the same pass that assigns them.
+ *
+ * Holds the photo count, time bounds, centroid and bounding box of the photos with a
+ * location, and how many photos fall in each time of day. Downstream code reads these
+ * instead of walking the photos again.
+ *
+ * Longitudes are accumulated as offsets from the first located photo, so a cluster
+ * straddling the antimeridian gets a sensible centroid; its bounding box then has a
+ * minimum longitude greater than its maximum.
+ */
+public class ClusterStats {
+
+    private int photoCount;
+    private int locatedCount;
+    private long startTime = Long.MAX_VALUE;
+    private long endTime = Long.MIN_VALUE;
+
+    private double referenceLongitude;
+    private double latitudeSum;
+    private double longitudeOffsetSum;
+    private double minLatitude = Double.POSITIVE_INFINITY;
+    private double maxLatitude = Double.NEGATIVE_INFINITY;
+    private double minLongitudeOffset = Double.POSITIVE_INFINITY;
+    private double maxLongitudeOffset = Double.NEGATIVE_INFINITY;
+
+    private final int[] timeOfDayCounts = new int[PhotoColumns.TIME_CLUSTERS.length];
+
+    /**
+     * Stats of photos that were not clustered in this process, e.g. loaded from storage
+     */
+    public static ClusterStats of(List<PhotoData> photos) {
+        ClusterStats stats = new ClusterStats();
+        for (PhotoData photo : photos) {
+            stats.add(photo);
+        }
+        return stats;
+    }
+
+    public void add(PhotoColumns columns, int index) {
+        add(columns.hasLocation(index), columns.getLatitude(index), columns.getLongitude(index),
+                columns.getDateTaken(index), columns.getTimeClusterCode(index));
+    }
+
+    public void add(PhotoData photo) {
+        add(photo.hasLocation(), photo.getLatitude(), photo.getLongitude(),
+                photo.getDateTaken(), PhotoColumns.timeClusterCode(photo.getTimeCluster()));
+    }
+
+    private void add(boolean hasLocation, double latitude, double longitude, long dateTaken, int timeOfDay) {
+        photoCount++;
+        startTime = Math.min(startTime, dateTaken);
+        endTime = Math.max(endTime, dateTaken);
+        if (timeOfDay >= 0) {
+            timeOfDayCounts[timeOfDay]++;
+        }
+
+        if (!hasLocation) {
+            return;
+        }
+        if (locatedCount == 0) {
+            referenceLongitude = longitude;
+        }
+        locatedCount++;
+
+        double offset = wrapLongitude(longitude - referenceLongitude);
+        latitudeSum += latitude;
+        longitudeOffsetSum += offset;
+        minLatitude = Math.min(minLatitude, latitude);
+        maxLatitude = Math.max(maxLatitude, latitude);
+        minLongitudeOffset = Math.min(minLongitudeOffset, offset);
+        maxLongitudeOffset = Math.max(maxLongitudeOffset, offset);
+    }
+
+    /**
+     * Wrap a longitude into [-180, 180)
+     */
+    private static double wrapLongitude(double longitude) {
+        return longitude - 360.0 * Math.floor((longitude + 180.0) / 360.0);
+    }
+
+    public int getPhotoCount() {
+        return photoCount;
+    }
+
+    public int getLocatedCount() {
+        return locatedCount;
+    }
+
+    public boolean hasLocation() {
+        return locatedCount > 0;
+    }
+
+    public long getStartTime() {
+        return photoCount > 0 ? startTime : 0;
+    }
+
+    public long getEndTime() {
+        return photoCount > 0 ? endTime : 0;
+    }
+
+    public double getCentroidLatitude() {
+        return hasLocation() ? latitudeSum / locatedCount : 0.0;
+    }
+
+    public double getCentroidLongitude() {
+        return hasLocation() ? wrapLongitude(referenceLongitude + longitudeOffsetSum / locatedCount) : 0.0;
+    }
+
+    public double getMinLatitude() {
+        return hasLocation() ? minLatitude : 0.0;
+    }
+
+    public double getMaxLatitude() {
+        return hasLocation() ? maxLatitude : 0.0;
+    }
+
+    public double getMinLongitude() {
+        return hasLocation() ? wrapLongitude(referenceLongitude + minLongitudeOffset) : 0.0;
+    }
+
+    public double getMaxLongitude() {
+        return hasLocation() ? wrapLongitude(referenceLongitude + maxLongitudeOffset) : 0.0;
+    }
+
+    /**
+     * Photos taken in the given time of day ("Morning", "Afternoon", "Evening" or "Night")
+     */
+    public int getTimeOfDayCount(String timeCluster) {
+        int code = PhotoColumns.timeClusterCode(timeCluster);
+        return code < 0 ? 0 : timeOfDayCounts[code];
+    }
+
+    /**
+     * Counts per time of day, in the order of PhotoColumns.TIME_CLUSTERS
+     */
+    public int[] getTimeOfDayCounts() {
+        return Arrays.copyOf(timeOfDayCounts, timeOfDayCounts.length);
+    }
+}
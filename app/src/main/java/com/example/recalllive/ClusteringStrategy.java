@@ -0,0 +1,28 @@
+package com.example.recalllive;
+
+/**
+ * Decides which photos belong together before {@link PhotoClusteringManager} splits groups
+ * by time and derives cluster IDs, names and bounds.
+ *
+ * Implementations must be deterministic for a given set of photos, so cluster IDs stay stable
+ * across runs, and must not depend on anything outside the columns they are given.
+ */
+public interface ClusteringStrategy {
+
+    /**
+     * Label for a photo that belongs to no group; it becomes a cluster of its own
+     */
+    int NOISE = -1;
+
+    /**
+     * Fill labels[i] for every photo i in the columns. Photos sharing a label form one group.
+     * Labels must be NOISE or lie in [0, columns.size()).
+     */
+    void assignLabels(PhotoColumns columns, int[] labels);
+
+    /**
+     * Largest time gap allowed between consecutive photos of a cluster; groups are split
+     * wherever their photos are further apart
+     */
+    long getTimeWindowMillis();
+}
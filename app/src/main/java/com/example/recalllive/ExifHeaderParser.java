@@ -0,0 +1,597 @@
+package com.example.recalllive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
+
+/**
+ * Reads just GPS position and capture time from the head of a JPEG or HEIF file.
+ *
+ * Only the first 64 KB are read through the channel into a reused buffer, and only IFD0, the
+ * Exif IFD and the GPS IFD are walked. Dates are decoded straight from the ASCII bytes, so a
+ * parse allocates nothing. Anything unusual (truncated segments, unexpected value types,
+ * malformed dates, fragmented HEIF items) makes parse return false, and the caller falls back
+ * to ExifInterface. Not thread-safe; keep one parser per thread.
+ */
+public class ExifHeaderParser {
+    static final int HEADER_BYTES = 64 * 1024;
+
+    private static final int TAG_DATETIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    private static final int TAG_GPS_LATITUDE = 0x0002;
+    private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    private static final int TAG_GPS_LONGITUDE = 0x0004;
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+    private static final int TYPE_IFD = 13;
+    private static final int ENTRY_SIZE = 12;
+    private static final int DATETIME_LENGTH = 19; // yyyy:MM:dd HH:mm:ss
+
+    private static final int BOX_FTYP = 0x66747970;
+    private static final int BOX_META = 0x6d657461;
+    private static final int BOX_IINF = 0x69696e66;
+    private static final int BOX_INFE = 0x696e6665;
+    private static final int BOX_ILOC = 0x696c6f63;
+    private static final int ITEM_EXIF = 0x45786966;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private final TimeZone timeZone;
+    private final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+
+    private boolean hasLocation;
+    private double latitude;
+    private double longitude;
+    private long dateTime;
+
+    /**
+     * @param timeZone zone the EXIF local times are read in, as SimpleDateFormat would
+     */
+    public ExifHeaderParser(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Parse the file head. Returns false if the file needs the full EXIF reader; on true the
+     * getters describe the file, which may simply have no location or date.
+     */
+    public boolean parse(FileChannel channel) throws IOException {
+        hasLocation = false;
+        latitude = 0;
+        longitude = 0;
+        dateTime = 0;
+
+        read(channel, 0, HEADER_BYTES);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (buffer.limit() >= 2 && u16(0) == 0xFFD8) {
+                return parseJpeg();
+            }
+            if (buffer.limit() >= 12 && buffer.getInt(4) == BOX_FTYP) {
+                return parseHeif(channel);
+            }
+            return false;
+        } catch (IndexOutOfBoundsException e) {
+            // A size or offset field pointed past what was read
+            hasLocation = false;
+            dateTime = 0;
+            return false;
+        }
+    }
+
+    public boolean hasLocation() {
+        return hasLocation;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * DateTimeOriginal, or DateTime when that is missing, in epoch millis; 0 if neither is set
+     */
+    public long getDateTime() {
+        return dateTime;
+    }
+
+    /**
+     * Walk the markers up to the Exif APP1 segment; other APP1 payloads such as XMP are skipped
+     */
+    private boolean parseJpeg() {
+        int limit = buffer.limit();
+        int pos = 2;
+        while (pos + 4 <= limit) {
+            if ((buffer.get(pos) & 0xFF) != 0xFF) {
+                return false;
+            }
+            int marker = buffer.get(pos + 1) & 0xFF;
+            if (marker == 0xFF) {
+                pos++; // fill byte
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                pos += 2; // no length field
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                return true; // image data reached without any Exif segment
+            }
+
+            int length = u16(pos + 2);
+            if (length < 2) {
+                return false;
+            }
+            int start = pos + 4;
+            int end = pos + 2 + length;
+            if (marker == 0xE1 && length >= 8 && start + 6 <= limit
+                    && buffer.getInt(start) == ITEM_EXIF && buffer.getShort(start + 4) == 0) {
+                return end <= limit && parseTiff(start + 6, end);
+            }
+            pos = end;
+        }
+        return false;
+    }
+
+    /**
+     * Find the Exif item through meta/iinf and meta/iloc, then parse its TIFF payload
+     */
+    private boolean parseHeif(FileChannel channel) throws IOException {
+        int limit = buffer.limit();
+        int meta = findBox(0, limit, BOX_META);
+        if (meta < 0) {
+            return false;
+        }
+        int metaEnd = meta + buffer.getInt(meta);
+        int children = meta + 12; // full box header
+        int iinf = findBox(children, metaEnd, BOX_IINF);
+        int iloc = findBox(children, metaEnd, BOX_ILOC);
+        if (iinf < 0 || iloc < 0) {
+            return false;
+        }
+
+        long exifItem = findExifItemId(iinf);
+        if (exifItem == -1) {
+            return false;
+        }
+        if (exifItem == -2) {
+            return true; // no Exif item at all
+        }
+
+        long[] extent = findItemExtent(iloc, exifItem);
+        if (extent == null || extent[1] < 8 || extent[1] > HEADER_BYTES) {
+            return false;
+        }
+
+        int start;
+        if (extent[0] + extent[1] <= limit) {
+            start = (int) extent[0];
+        } else {
+            read(channel, extent[0], (int) extent[1]);
+            if (buffer.limit() < extent[1]) {
+                return false;
+            }
+            start = 0;
+        }
+        int end = start + (int) extent[1];
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        long tiffOffset = u32(start);
+        if (tiffOffset > extent[1] - 8) {
+            return false;
+        }
+        return parseTiff(start + 4 + (int) tiffOffset, end);
+    }
+
+    /**
+     * Item ID of the Exif item, -2 if there is none, -1 if iinf is not understood
+     */
+    private long findExifItemId(int iinf) {
+        int end = iinf + buffer.getInt(iinf);
+        int version = buffer.get(iinf + 8) & 0xFF;
+        int pos = iinf + 12;
+        long count;
+        if (version == 0) {
+            count = u16(pos);
+            pos += 2;
+        } else {
+            count = u32(pos);
+            pos += 4;
+        }
+
+        for (long i = 0; i < count; i++) {
+            if (pos + 8 > end || buffer.getInt(pos + 4) != BOX_INFE) {
+                return -1;
+            }
+            int size = buffer.getInt(pos);
+            int infeVersion = buffer.get(pos + 8) & 0xFF;
+            if (size < 12 || pos + size > end || infeVersion < 2) {
+                return -1;
+            }
+            int field = pos + 12;
+            long itemId;
+            if (infeVersion == 2) {
+                itemId = u16(field);
+                field += 2;
+            } else {
+                itemId = u32(field);
+                field += 4;
+            }
+            // Skip item_protection_index to item_type
+            if (field + 6 > pos + size) {
+                return -1;
+            }
+            if (buffer.getInt(field + 2) == ITEM_EXIF) {
+                return itemId;
+            }
+            pos += size;
+        }
+        return -2;
+    }
+
+    /**
+     * {file offset, length} of a single-extent item stored in the file itself, or null
+     */
+    private long[] findItemExtent(int iloc, long itemId) {
+        int end = iloc + buffer.getInt(iloc);
+        int version = buffer.get(iloc + 8) & 0xFF;
+        if (version > 2 || iloc + 16 > end) {
+            return null;
+        }
+        int pos = iloc + 12;
+        int offsetSize = (buffer.get(pos) & 0xFF) >> 4;
+        int lengthSize = buffer.get(pos) & 0x0F;
+        int baseOffsetSize = (buffer.get(pos + 1) & 0xFF) >> 4;
+        int indexSize = version == 0 ? 0 : buffer.get(pos + 1) & 0x0F;
+        pos += 2;
+        long count;
+        if (version < 2) {
+            count = u16(pos);
+            pos += 2;
+        } else {
+            count = u32(pos);
+            pos += 4;
+        }
+
+        for (long i = 0; i < count; i++) {
+            long id;
+            if (version < 2) {
+                id = u16(pos);
+                pos += 2;
+            } else {
+                id = u32(pos);
+                pos += 4;
+            }
+            int constructionMethod = 0;
+            if (version > 0) {
+                constructionMethod = u16(pos) & 0x0F;
+                pos += 2;
+            }
+            pos += 2; // data_reference_index
+            long baseOffset = readSized(pos, baseOffsetSize);
+            pos += baseOffsetSize;
+            int extentCount = u16(pos);
+            pos += 2;
+            int extentSize = indexSize + offsetSize + lengthSize;
+            if (baseOffset < 0 || pos + extentCount * extentSize > end) {
+                return null;
+            }
+
+            if (id == itemId) {
+                if (constructionMethod != 0 || extentCount != 1) {
+                    return null;
+                }
+                long offset = readSized(pos + indexSize, offsetSize);
+                long length = readSized(pos + indexSize + offsetSize, lengthSize);
+                if (offset < 0 || length <= 0) {
+                    return null;
+                }
+                return new long[]{baseOffset + offset, length};
+            }
+            pos += extentCount * extentSize;
+        }
+        return null;
+    }
+
+    private int findBox(int from, int end, int type) {
+        int pos = from;
+        while (pos + 8 <= end) {
+            long size = u32(pos);
+            if (size < 8 || pos + size > Integer.MAX_VALUE) {
+                return -1; // 64-bit and open-ended sizes never hold the boxes looked for here
+            }
+            if (buffer.getInt(pos + 4) == type) {
+                return pos + size <= end ? pos : -1;
+            }
+            pos += (int) size;
+        }
+        return -1;
+    }
+
+    /**
+     * Walk IFD0, then the Exif and GPS IFDs it points to. Offsets are relative to base.
+     */
+    private boolean parseTiff(int base, int end) {
+        if (base + 8 > end) {
+            return false;
+        }
+        short byteOrder = buffer.getShort(base);
+        if (byteOrder == 0x4949) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder == 0x4D4D) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return false;
+        }
+        if (u16(base + 2) != 42) {
+            return false;
+        }
+
+        int ifd0 = ifdStart(base, end, u32(base + 4));
+        if (ifd0 < 0) {
+            return false;
+        }
+        long exifOffset = -1;
+        long gpsOffset = -1;
+        int dateTimeEntry = -1;
+        for (int i = 0, count = u16(ifd0); i < count; i++) {
+            int entry = ifd0 + 2 + i * ENTRY_SIZE;
+            int tag = u16(entry);
+            if (tag == TAG_EXIF_IFD) {
+                exifOffset = pointer(entry);
+            } else if (tag == TAG_GPS_IFD) {
+                gpsOffset = pointer(entry);
+            } else if (tag == TAG_DATETIME) {
+                dateTimeEntry = entry;
+            }
+        }
+
+        int dateTimeOriginalEntry = -1;
+        if (exifOffset != -1) {
+            int exifIfd = ifdStart(base, end, exifOffset);
+            if (exifIfd < 0) {
+                return false;
+            }
+            for (int i = 0, count = u16(exifIfd); i < count; i++) {
+                int entry = exifIfd + 2 + i * ENTRY_SIZE;
+                if (u16(entry) == TAG_DATETIME_ORIGINAL) {
+                    dateTimeOriginalEntry = entry;
+                }
+            }
+        }
+
+        int dateEntry = dateTimeOriginalEntry != -1 ? dateTimeOriginalEntry : dateTimeEntry;
+        if (dateEntry != -1) {
+            int value = asciiValue(base, end, dateEntry);
+            if (value < 0) {
+                return false;
+            }
+            dateTime = decodeDateTime(value);
+            if (dateTime == Long.MIN_VALUE) {
+                return false;
+            }
+        }
+
+        if (gpsOffset != -1) {
+            int gpsIfd = ifdStart(base, end, gpsOffset);
+            return gpsIfd >= 0 && parseGps(base, end, gpsIfd);
+        }
+        return true;
+    }
+
+    private boolean parseGps(int base, int end, int ifd) {
+        int latRef = -1;
+        int lngRef = -1;
+        int lat = -1;
+        int lng = -1;
+        for (int i = 0, count = u16(ifd); i < count; i++) {
+            int entry = ifd + 2 + i * ENTRY_SIZE;
+            switch (u16(entry)) {
+                case TAG_GPS_LATITUDE_REF:
+                    latRef = entry;
+                    break;
+                case TAG_GPS_LATITUDE:
+                    lat = entry;
+                    break;
+                case TAG_GPS_LONGITUDE_REF:
+                    lngRef = entry;
+                    break;
+                case TAG_GPS_LONGITUDE:
+                    lng = entry;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (latRef == -1 || lngRef == -1 || lat == -1 || lng == -1) {
+            return true; // ExifInterface reports no location either
+        }
+
+        int latRefValue = asciiValue(base, end, latRef);
+        int lngRefValue = asciiValue(base, end, lngRef);
+        if (latRefValue < 0 || lngRefValue < 0) {
+            return false;
+        }
+        int latSign = hemisphereSign(buffer.get(latRefValue), 'N', 'S');
+        int lngSign = hemisphereSign(buffer.get(lngRefValue), 'E', 'W');
+        double latDegrees = degrees(base, end, lat);
+        double lngDegrees = degrees(base, end, lng);
+        if (latSign == 0 || lngSign == 0 || Double.isNaN(latDegrees) || Double.isNaN(lngDegrees)) {
+            return false;
+        }
+
+        hasLocation = true;
+        latitude = latSign * latDegrees;
+        longitude = lngSign * lngDegrees;
+        return true;
+    }
+
+    private static int hemisphereSign(byte ref, char positive, char negative) {
+        return ref == positive ? 1 : ref == negative ? -1 : 0;
+    }
+
+    /**
+     * Degrees, minutes and seconds rationals as decimal degrees, NaN if malformed
+     */
+    private double degrees(int base, int end, int entry) {
+        if (u16(entry + 2) != TYPE_RATIONAL || u32(entry + 4) != 3) {
+            return Double.NaN;
+        }
+        long offset = u32(entry + 8);
+        if (offset > end - base - 24) {
+            return Double.NaN;
+        }
+        int pos = base + (int) offset;
+        double result = 0;
+        double unit = 1;
+        for (int i = 0; i < 3; i++, pos += 8, unit *= 60) {
+            long denominator = u32(pos + 4);
+            if (denominator == 0) {
+                return Double.NaN;
+            }
+            result += u32(pos) / (double) denominator / unit;
+        }
+        return result;
+    }
+
+    /**
+     * Buffer position of an ASCII entry's value, inline or at its offset; -1 if malformed
+     */
+    private int asciiValue(int base, int end, int entry) {
+        if (u16(entry + 2) != TYPE_ASCII) {
+            return -1;
+        }
+        long count = u32(entry + 4);
+        if (count <= 4) {
+            return count == 0 ? -1 : entry + 8;
+        }
+        long offset = u32(entry + 8);
+        if (offset > end - base - count) {
+            return -1;
+        }
+        return base + (int) offset;
+    }
+
+    private long pointer(int entry) {
+        int type = u16(entry + 2);
+        return type == TYPE_LONG || type == TYPE_IFD ? u32(entry + 8) : -2;
+    }
+
+    /**
+     * Buffer position of an IFD whose entries all lie before end, or -1
+     */
+    private int ifdStart(int base, int end, long offset) {
+        if (offset < 0 || offset > end - base - 2) {
+            return -1;
+        }
+        int ifd = base + (int) offset;
+        int count = u16(ifd);
+        return ifd + 2 + (long) count * ENTRY_SIZE <= end ? ifd : -1;
+    }
+
+    /**
+     * Epoch millis of a "yyyy:MM:dd HH:mm:ss" local time, Long.MIN_VALUE if malformed
+     */
+    private long decodeDateTime(int pos) {
+        if (pos + DATETIME_LENGTH > buffer.limit()
+                || buffer.get(pos + 4) != ':' || buffer.get(pos + 7) != ':' || buffer.get(pos + 10) != ' '
+                || buffer.get(pos + 13) != ':' || buffer.get(pos + 16) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(pos, 4);
+        int month = digits(pos + 5, 2);
+        int day = digits(pos + 8, 2);
+        int hour = digits(pos + 11, 2);
+        int minute = digits(pos + 14, 2);
+        int second = digits(pos + 17, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000;
+        return toUtc(local);
+    }
+
+    /**
+     * Resolve a wall-clock time the way GregorianCalendar does: times repeated when clocks go
+     * back and times skipped when they go forward both read as standard time
+     */
+    private long toUtc(long local) {
+        int rawOffset = timeZone.getRawOffset();
+        long standard = local - rawOffset;
+        int offset = timeZone.getOffset(standard);
+        if (offset == rawOffset) {
+            return standard;
+        }
+        long daylight = local - offset;
+        return timeZone.getOffset(daylight) == offset ? daylight : standard;
+    }
+
+    private int digits(int pos, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = buffer.get(pos + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    private long readSized(int pos, int size) {
+        switch (size) {
+            case 0:
+                return 0;
+            case 4:
+                return u32(pos);
+            case 8:
+                long value = buffer.getLong(pos);
+                return value < 0 ? -1 : value;
+            default:
+                return -1;
+        }
+    }
+
+    private int u16(int pos) {
+        return buffer.getShort(pos) & 0xFFFF;
+    }
+
+    private long u32(int pos) {
+        return buffer.getInt(pos) & 0xFFFFFFFFL;
+    }
+
+    private void read(FileChannel channel, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        long at = position;
+        int read;
+        while (buffer.hasRemaining() && (read = channel.read(buffer, at)) > 0) {
+            at += read;
+        }
+        buffer.flip();
+    }
+}
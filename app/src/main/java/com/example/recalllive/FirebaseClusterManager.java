@@ -48,42 +48,7 @@ public class FirebaseClusterManager {
         Map<String, Object> clusterUpdates = new HashMap<>();
 
         for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
-            Map<String, Object> clusterData = new HashMap<>();
-
-            // Store cluster metadata
-            clusterData.put("clusterId", cluster.getClusterId());
-            clusterData.put("latitude", cluster.getLatitude());
-            clusterData.put("longitude", cluster.getLongitude());
-            clusterData.put("startTime", cluster.getStartTime());
-            clusterData.put("endTime", cluster.getEndTime());
-            clusterData.put("locationName", cluster.getLocationName());
-            clusterData.put("timeDescription", cluster.getTimeDescription());
-            clusterData.put("photoCount", cluster.getPhotoCount());
-            clusterData.put("createdAt", System.currentTimeMillis());
-
-            // Store photo URIs in the cluster
-            List<String> photoUris = new ArrayList<>();
-            Map<String, Object> photosData = new HashMap<>();
-
-            for (PhotoData photo : cluster.getPhotos()) {
-                photoUris.add(photo.getPhotoUri());
-
-                // Store individual photo metadata
-                Map<String, Object> photoMeta = new HashMap<>();
-                photoMeta.put("uri", photo.getPhotoUri());
-                photoMeta.put("dateTaken", photo.getDateTaken());
-                photoMeta.put("latitude", photo.getLatitude());
-                photoMeta.put("longitude", photo.getLongitude());
-                photoMeta.put("timeCluster", photo.getTimeCluster());
-
-                photosData.put(sanitizeKey(photo.getPhotoUri()), photoMeta);
-            }
-
-            clusterData.put("photoUris", photoUris);
-            clusterData.put("photos", photosData);
-
-            // Add to updates map
-            clusterUpdates.put(cluster.getClusterId(), clusterData);
+            clusterUpdates.put(cluster.getClusterId(), toClusterData(cluster));
         }
 
         // Store all clusters in one batch update
@@ -108,6 +73,100 @@ public class FirebaseClusterManager {
                 });
     }
 
+    /**
+     * Write only the clusters an incremental run changed and delete the ones it retired,
+     * in a single multi-path update. Totals come from the local database because this
+     * run never sees the whole library.
+     */
+    public void applyClusterChanges(List<PhotoClusteringManager.PhotoCluster> changedClusters,
+                                    List<String> removedClusterIds,
+                                    int totalClusters, int totalPhotos,
+                                    OnClusterStorageCallback callback) {
+        if (changedClusters.isEmpty() && removedClusterIds.isEmpty()) {
+            if (callback != null) {
+                callback.onSuccess(0);
+            }
+            return;
+        }
+
+        DatabaseReference patientRef = database.child("Patient").child(patientUid);
+
+        Map<String, Object> clusterUpdates = new HashMap<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : changedClusters) {
+            clusterUpdates.put(cluster.getClusterId(), toClusterData(cluster));
+        }
+        for (String clusterId : removedClusterIds) {
+            // A null value deletes the child in a multi-path update
+            clusterUpdates.put(clusterId, null);
+        }
+
+        patientRef.child("clusters").updateChildren(clusterUpdates)
+                .addOnCompleteListener(new OnCompleteListener<Void>() {
+                    @Override
+                    public void onComplete(Task<Void> task) {
+                        if (task.isSuccessful()) {
+                            Log.d(TAG, "Applied " + changedClusters.size() + " changed and "
+                                    + removedClusterIds.size() + " removed clusters");
+
+                            Map<String, Object> summary = new HashMap<>();
+                            summary.put("totalClusters", totalClusters);
+                            summary.put("totalPhotos", totalPhotos);
+                            summary.put("lastUpdated", System.currentTimeMillis());
+                            patientRef.child("clusterSummary").updateChildren(summary);
+
+                            if (callback != null) {
+                                callback.onSuccess(changedClusters.size());
+                            }
+                        } else {
+                            Log.e(TAG, "Failed to apply cluster changes", task.getException());
+                            if (callback != null) {
+                                callback.onError(task.getException().getMessage());
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Firebase representation of one cluster with its photo metadata
+     */
+    private Map<String, Object> toClusterData(PhotoClusteringManager.PhotoCluster cluster) {
+        Map<String, Object> clusterData = new HashMap<>();
+
+        // Store cluster metadata
+        clusterData.put("clusterId", cluster.getClusterId());
+        clusterData.put("latitude", cluster.getLatitude());
+        clusterData.put("longitude", cluster.getLongitude());
+        clusterData.put("startTime", cluster.getStartTime());
+        clusterData.put("endTime", cluster.getEndTime());
+        clusterData.put("locationName", cluster.getLocationName());
+        clusterData.put("timeDescription", cluster.getTimeDescription());
+        clusterData.put("photoCount", cluster.getPhotoCount());
+        clusterData.put("createdAt", System.currentTimeMillis());
+
+        // Store photo URIs in the cluster
+        List<String> photoUris = new ArrayList<>();
+        Map<String, Object> photosData = new HashMap<>();
+
+        for (PhotoData photo : cluster.getPhotos()) {
+            photoUris.add(photo.getPhotoUri());
+
+            // Store individual photo metadata
+            Map<String, Object> photoMeta = new HashMap<>();
+            photoMeta.put("uri", photo.getPhotoUri());
+            photoMeta.put("dateTaken", photo.getDateTaken());
+            photoMeta.put("latitude", photo.getLatitude());
+            photoMeta.put("longitude", photo.getLongitude());
+            photoMeta.put("timeCluster", photo.getTimeCluster());
+
+            photosData.put(sanitizeKey(photo.getPhotoUri()), photoMeta);
+        }
+
+        clusterData.put("photoUris", photoUris);
+        clusterData.put("photos", photosData);
+        return clusterData;
+    }
+
     /**
      * Update cluster summary statistics in Firebase
      */
@@ -120,33 +179,31 @@ public class FirebaseClusterManager {
         summary.put("totalClusters", clusters.size());
         summary.put("lastUpdated", System.currentTimeMillis());
 
-        // Count photos by time cluster
-        Map<String, Integer> timeDistribution = new HashMap<>();
-        timeDistribution.put("Morning", 0);
-        timeDistribution.put("Afternoon", 0);
-        timeDistribution.put("Evening", 0);
-        timeDistribution.put("Night", 0);
-
+        int[] timeOfDayCounts = new int[PhotoColumns.TIME_CLUSTERS.length];
         int totalPhotos = 0;
         int clustersWithLocation = 0;
 
+        // Clusters carry their stats from clustering, so no photo is walked here
         for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
-            totalPhotos += cluster.getPhotoCount();
+            ClusterStats stats = cluster.getStats();
+            totalPhotos += stats.getPhotoCount();
 
-            if (cluster.getLatitude() != 0 || cluster.getLongitude() != 0) {
+            if (stats.hasLocation()) {
                 clustersWithLocation++;
             }
 
-            // Count time distribution
-            for (PhotoData photo : cluster.getPhotos()) {
-                String timeCluster = photo.getTimeCluster();
-                if (timeCluster != null && timeDistribution.containsKey(timeCluster)) {
-                    timeDistribution.put(timeCluster,
-                            timeDistribution.get(timeCluster) + 1);
-                }
+            int[] counts = stats.getTimeOfDayCounts();
+            for (int t = 0; t < counts.length; t++) {
+                timeOfDayCounts[t] += counts[t];
             }
         }
 
+        // Count photos by time cluster
+        Map<String, Integer> timeDistribution = new HashMap<>();
+        for (int t = 0; t < timeOfDayCounts.length; t++) {
+            timeDistribution.put(PhotoColumns.TIME_CLUSTERS[t], timeOfDayCounts[t]);
+        }
+
         summary.put("totalPhotos", totalPhotos);
         summary.put("clustersWithLocation", clustersWithLocation);
         summary.put("timeDistribution", timeDistribution);
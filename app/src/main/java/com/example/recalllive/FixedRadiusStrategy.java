@@ -0,0 +1,279 @@
+package com.example.recalllive;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The default strategy: DBSCAN with a fixed radius and minPts of 2 over a spatial grid index,
+ * then a fixed time window.
+ *
+ * A photo with at least one neighbor within the radius is a core point, so every group is a
+ * connected component of the radius graph. That is what lets large libraries be labelled in
+ * parallel on a ForkJoinPool with exactly the same result as the sequential scan.
+ */
+public class FixedRadiusStrategy implements ClusteringStrategy {
+
+    // Parallel labelling parameters
+    private static final int PARTITIONS_PER_THREAD = 4; // spare partitions keep uneven ones balanced
+    private static final double PARTITION_TILE_DEGREES = 0.05; // about 5 km, photos are sorted tile by tile
+
+    private final double radiusMeters;
+    private final long timeWindowMillis;
+    private final ForkJoinPool pool;
+
+    /**
+     * A null pool keeps all work on the calling thread
+     */
+    public FixedRadiusStrategy(double radiusMeters, long timeWindowMillis, ForkJoinPool pool) {
+        this.radiusMeters = radiusMeters;
+        this.timeWindowMillis = timeWindowMillis;
+        this.pool = pool;
+    }
+
+    @Override
+    public void assignLabels(PhotoColumns columns, int[] labels) {
+        if (pool != null && columns.size() >= PhotoClusteringManager.PARALLEL_THRESHOLD) {
+            labelParallel(columns, labels);
+        } else {
+            labelSequential(columns, labels);
+        }
+    }
+
+    @Override
+    public long getTimeWindowMillis() {
+        return timeWindowMillis;
+    }
+
+    /**
+     * Grow each group from its seed breadth-first until no reachable photo is left
+     */
+    private void labelSequential(PhotoColumns columns, int[] labels) {
+        int count = columns.size();
+        SpatialGridIndex index = buildIndex(columns);
+        Arrays.fill(labels, 0, count, NOISE);
+
+        int[] queue = new int[count];
+        int groups = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (labels[i] != NOISE) {
+                continue;
+            }
+
+            int[] neighbors = getNeighbors(i, columns, index);
+            if (neighbors.length == 0) {
+                // Photo doesn't belong to any location cluster
+                continue;
+            }
+
+            int label = groups++;
+            labels[i] = label;
+            int queueSize = 0;
+            queue[queueSize++] = i;
+
+            for (int head = 0; head < queueSize; head++) {
+                int[] reachable = head == 0 ? neighbors : getNeighbors(queue[head], columns, index);
+                for (int neighbor : reachable) {
+                    if (labels[neighbor] == NOISE) {
+                        labels[neighbor] = label;
+                        queue[queueSize++] = neighbor;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Same groups as {@link #labelSequential(PhotoColumns, int[])}, computed on the pool.
+     *
+     * Since every group is a connected component, the photos can be cut into any partitions:
+     * each task links neighbors inside its own partition and reports the pairs that cross into
+     * another one, and those border pairs are stitched afterwards. Partitions are runs of
+     * photos sorted by coarse tile, which keeps them spatially compact and the border small.
+     */
+    private void labelParallel(PhotoColumns columns, int[] labels) {
+        int count = columns.size();
+        SpatialGridIndex index = buildIndex(columns);
+        int[][] partitions = partitionByTile(columns, pool.getParallelism() * PARTITIONS_PER_THREAD);
+
+        int[] partitionOf = new int[count];
+        Arrays.fill(partitionOf, -1);
+        for (int p = 0; p < partitions.length; p++) {
+            for (int i : partitions[p]) {
+                partitionOf[i] = p;
+            }
+        }
+
+        // Union-find forest; a task only ever touches the entries of its own partition
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+        }
+
+        int[] crossing = pool.invoke(new LinkPartitionsTask(
+                columns, index, partitions, partitionOf, parent, 0, partitions.length));
+        for (int k = 0; k < crossing.length; k += 2) {
+            union(parent, crossing[k], crossing[k + 1]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            labels[i] = find(parent, i);
+        }
+    }
+
+    private SpatialGridIndex buildIndex(PhotoColumns columns) {
+        SpatialGridIndex index = new SpatialGridIndex(radiusMeters);
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.hasLocation(i)) {
+                index.add(i, columns.getLatitude(i), columns.getLongitude(i));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Find indices of photos within the radius, only looking at adjacent grid cells
+     */
+    private int[] getNeighbors(int centerIndex, PhotoColumns columns, SpatialGridIndex index) {
+        if (!columns.hasLocation(centerIndex)) {
+            return new int[0];
+        }
+
+        double centerLat = columns.getLatitude(centerIndex);
+        double centerLng = columns.getLongitude(centerIndex);
+        double cosCenterLat = Math.cos(Math.toRadians(centerLat));
+
+        int[] candidates = index.getCandidates(centerLat, centerLng);
+        int count = 0;
+
+        for (int candidate : candidates) {
+            if (candidate == centerIndex) {
+                continue;
+            }
+
+            if (GeoDistance.isWithinRadius(centerLat, centerLng, cosCenterLat,
+                    columns.getLatitude(candidate), columns.getLongitude(candidate), radiusMeters)) {
+                // Compact the matches in place, candidates is a fresh array
+                candidates[count++] = candidate;
+            }
+        }
+
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Cut the photos with a location into about partitionCount equal runs, sorted by coarse tile
+     */
+    private int[][] partitionByTile(PhotoColumns columns, int partitionCount) {
+        // Pack tile row, tile column and photo index into one long, so a primitive sort groups
+        // photos tile by tile; only the index (low 31 bits) has to survive exactly
+        long[] keys = new long[columns.size()];
+        int located = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.hasLocation(i)) {
+                long row = (long) Math.floor((columns.getLatitude(i) + 90.0) / PARTITION_TILE_DEGREES);
+                long column = (long) Math.floor((columns.getLongitude(i) + 180.0) / PARTITION_TILE_DEGREES);
+                keys[located++] = (row << 44) | (column << 31) | i;
+            }
+        }
+        Arrays.sort(keys, 0, located);
+
+        int partitions = Math.max(1, Math.min(partitionCount, located));
+        int[][] result = new int[partitions][];
+        for (int p = 0; p < partitions; p++) {
+            int from = (int) ((long) located * p / partitions);
+            int to = (int) ((long) located * (p + 1) / partitions);
+            result[p] = new int[to - from];
+            for (int k = from; k < to; k++) {
+                result[p][k - from] = (int) (keys[k] & 0x7fffffffL);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Link neighbors within one partition, returning the crossing pairs as (a, b) with a < b
+     */
+    private int[] linkPartition(PhotoColumns columns, SpatialGridIndex index, int[] members,
+                                int partition, int[] partitionOf, int[] parent) {
+        int[] crossing = new int[16];
+        int crossingSize = 0;
+
+        for (int i : members) {
+            for (int neighbor : getNeighbors(i, columns, index)) {
+                if (partitionOf[neighbor] == partition) {
+                    union(parent, i, neighbor);
+                } else if (i < neighbor) {
+                    // Seen from both sides, so keep only one copy
+                    if (crossingSize == crossing.length) {
+                        crossing = Arrays.copyOf(crossing, crossing.length * 2);
+                    }
+                    crossing[crossingSize++] = i;
+                    crossing[crossingSize++] = neighbor;
+                }
+            }
+        }
+
+        return Arrays.copyOf(crossing, crossingSize);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            // Path halving
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * Links partitions [from, to) in parallel and returns their concatenated crossing pairs
+     */
+    private class LinkPartitionsTask extends RecursiveTask<int[]> {
+        private final PhotoColumns columns;
+        private final SpatialGridIndex index;
+        private final int[][] partitions;
+        private final int[] partitionOf;
+        private final int[] parent;
+        private final int from;
+        private final int to;
+
+        LinkPartitionsTask(PhotoColumns columns, SpatialGridIndex index, int[][] partitions,
+                           int[] partitionOf, int[] parent, int from, int to) {
+            this.columns = columns;
+            this.index = index;
+            this.partitions = partitions;
+            this.partitionOf = partitionOf;
+            this.parent = parent;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from == 1) {
+                return linkPartition(columns, index, partitions[from], from, partitionOf, parent);
+            }
+
+            int middle = (from + to) >>> 1;
+            LinkPartitionsTask left = new LinkPartitionsTask(columns, index, partitions, partitionOf, parent, from, middle);
+            LinkPartitionsTask right = new LinkPartitionsTask(columns, index, partitions, partitionOf, parent, middle, to);
+            left.fork();
+            int[] rightPairs = right.compute();
+            int[] leftPairs = left.join();
+
+            int[] pairs = Arrays.copyOf(leftPairs, leftPairs.length + rightPairs.length);
+            System.arraycopy(rightPairs, 0, pairs, leftPairs.length, rightPairs.length);
+            return pairs;
+        }
+    }
+}
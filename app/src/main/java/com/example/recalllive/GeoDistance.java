@@ -0,0 +1,71 @@
+package com.example.recalllive;
+
+/**
+ * Allocation-free great-circle distance on primitive doubles.
+ *
+ * Replaces android.location.Location#distanceTo in the clustering hot path, which needed
+ * two Location objects per comparison and kept the clustering code off the plain JVM.
+ * Uses the haversine formula on a spherical earth; against the WGS84 ellipsoid the error
+ * stays under 0.5%, well below GPS noise at clustering distances.
+ */
+public final class GeoDistance {
+
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180.0;
+
+    // Headroom for the equirectangular approximation, so the prefilter never rejects
+    // a pair the exact formula would accept
+    private static final double PREFILTER_SLACK = 1.01;
+
+    private GeoDistance() {
+    }
+
+    /**
+     * Haversine distance between two coordinates in meters
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinHalfDeltaPhi = Math.sin((phi2 - phi1) * 0.5);
+        double sinHalfDeltaLambda = Math.sin(Math.toRadians(lon2 - lon1) * 0.5);
+
+        double h = sinHalfDeltaPhi * sinHalfDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+
+        return 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(Math.min(1.0, h)));
+    }
+
+    /**
+     * Check whether two coordinates are within the radius of each other
+     */
+    public static boolean isWithinRadius(double lat1, double lon1,
+                                         double lat2, double lon2, double radiusMeters) {
+        return isWithinRadius(lat1, lon1, Math.cos(Math.toRadians(lat1)), lat2, lon2, radiusMeters);
+    }
+
+    /**
+     * Same as {@link #isWithinRadius(double, double, double, double, double)} with the cosine of
+     * the first latitude computed by the caller, so scanning many candidates around one center
+     * runs no trigonometry until a pair survives the bounding-box prefilter.
+     */
+    public static boolean isWithinRadius(double lat1, double lon1, double cosLat1,
+                                         double lat2, double lon2, double radiusMeters) {
+        double limit = radiusMeters * PREFILTER_SLACK;
+
+        double northSouth = Math.abs(lat2 - lat1) * METERS_PER_DEGREE;
+        if (northSouth > limit) {
+            return false;
+        }
+
+        double deltaLon = Math.abs(lon2 - lon1);
+        if (deltaLon > 180.0) {
+            deltaLon = 360.0 - deltaLon;
+        }
+        double eastWest = deltaLon * METERS_PER_DEGREE * cosLat1;
+        if (eastWest > limit || northSouth * northSouth + eastWest * eastWest > limit * limit) {
+            return false;
+        }
+
+        return distanceMeters(lat1, lon1, lat2, lon2) <= radiusMeters;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.recalllive;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Progress of a full photo ingest, so a run killed halfway resumes instead of starting over.
+ *
+ * The resume point is the dateTaken of the first photo after the last stretch of the stream
+ * that reached Room: every photo taken before it is stored, and the stream is read again from
+ * there (those photos come from the metadata cache, so without file I/O). Clusters written or
+ * retired in Room but not yet confirmed by Firebase are remembered too, and pushed again by
+ * the next run.
+ *
+ * Checkpoints are only written after the data they describe is committed, so a lost write
+ * merely repeats a little work.
+ */
+public class IngestCheckpoint {
+    private static final String PREFS_NAME = "RecallLive";
+    private static final String KEY_ACTIVE = "ingest_active";
+    private static final String KEY_RESUME_FROM = "ingest_resume_from";
+    private static final String KEY_STORED_BATCHES = "ingest_stored_batches";
+    private static final String KEY_UNSYNCED_CLUSTERS = "ingest_unsynced_clusters";
+
+    private static IngestCheckpoint INSTANCE;
+
+    private final SharedPreferences prefs;
+    private final Set<String> unsyncedClusterIds;
+    private boolean active;
+    private long resumeFrom;
+    private int storedBatches;
+
+    private IngestCheckpoint(SharedPreferences prefs) {
+        this.prefs = prefs;
+        this.active = prefs.getBoolean(KEY_ACTIVE, false);
+        this.resumeFrom = prefs.getLong(KEY_RESUME_FROM, Long.MIN_VALUE);
+        this.storedBatches = prefs.getInt(KEY_STORED_BATCHES, 0);
+        // The returned set must not be modified, so keep a copy
+        this.unsyncedClusterIds = new HashSet<>(prefs.getStringSet(KEY_UNSYNCED_CLUSTERS, new HashSet<>()));
+    }
+
+    /**
+     * One instance per process, since Firebase confirmations can arrive after the run ended
+     */
+    public static synchronized IngestCheckpoint getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new IngestCheckpoint(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * True if a full ingest was interrupted and should be resumed
+     */
+    public static boolean isInterrupted(Context context) {
+        return getInstance(context).isActive();
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Photos taken at or after this time may not be stored yet
+     */
+    public synchronized long getResumeFrom() {
+        return resumeFrom;
+    }
+
+    public synchronized int getStoredBatches() {
+        return storedBatches;
+    }
+
+    public synchronized Set<String> getUnsyncedClusterIds() {
+        return new HashSet<>(unsyncedClusterIds);
+    }
+
+    /**
+     * Start a fresh ingest from the beginning of the library
+     */
+    public synchronized void begin() {
+        active = true;
+        resumeFrom = Long.MIN_VALUE;
+        storedBatches = 0;
+        save();
+    }
+
+    /**
+     * A batch of clusters is committed to Room; nothing taken before resumeFrom is pending
+     */
+    public synchronized void markStored(Collection<String> clusterIds, long resumeFrom) {
+        unsyncedClusterIds.addAll(clusterIds);
+        this.resumeFrom = Math.max(this.resumeFrom, resumeFrom);
+        storedBatches++;
+        save();
+    }
+
+    /**
+     * Firebase confirmed these clusters
+     */
+    public synchronized void markSynced(Collection<String> clusterIds) {
+        if (unsyncedClusterIds.removeAll(clusterIds)) {
+            save();
+        }
+    }
+
+    /**
+     * The whole library is stored. Clusters Firebase has not confirmed stay on record.
+     */
+    public synchronized void complete() {
+        active = false;
+        resumeFrom = Long.MIN_VALUE;
+        storedBatches = 0;
+        save();
+    }
+
+    private void save() {
+        prefs.edit()
+                .putBoolean(KEY_ACTIVE, active)
+                .putLong(KEY_RESUME_FROM, resumeFrom)
+                .putInt(KEY_STORED_BATCHES, storedBatches)
+                .putStringSet(KEY_UNSYNCED_CLUSTERS, new HashSet<>(unsyncedClusterIds))
+                .apply();
+    }
+}
@@ -2,8 +2,6 @@ package com.example.recalllive;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
@@ -20,7 +18,6 @@ import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
 
 import java.io.File;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -177,66 +174,16 @@ public class Media3VideoGenerator {
     }
 
     /**
-     * FIXED: Load image EXACTLY like quiz does - this ensures correct colors
-     * Copied from PatientQuizFragment.loadImageFromUri()
+     * The encode-ready 720x1280 frame from the derivative cache. The original is only decoded
+     * (with the quiz's color setup, and turned portrait) the first time a photo is used.
      */
     private Bitmap loadImageFromUriExactlyLikeQuiz(String uriString) {
-        try {
-            Uri uri = Uri.parse(uriString);
-            InputStream inputStream = context.getContentResolver().openInputStream(uri);
-
-            if (inputStream != null) {
-                // CRITICAL: Use same BitmapFactory options as quiz
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                options.inPremultiplied = true;
-                options.inDither = false;
-                options.inScaled = false;  // CRITICAL: Don't scale during decode
-
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream, null, options);
-                inputStream.close();
-
-                if (bitmap != null) {
-                    // Now scale to video dimensions
-                    return scaleToVideoDimensions(bitmap);
-                } else {
-                    return null;
-                }
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to load image: " + uriString, e);
-            return null;
+        Bitmap bitmap = PhotoDerivativeCache.getInstance(context)
+                .load(uriString, PhotoDerivativeCache.Level.ENCODE);
+        if (bitmap == null) {
+            Log.e(TAG, "Failed to load image: " + uriString);
         }
-    }
-
-    /**
-     * Scale bitmap to video dimensions while handling orientation
-     */
-    private Bitmap scaleToVideoDimensions(Bitmap original) {
-        int width = original.getWidth();
-        int height = original.getHeight();
-
-        // If landscape, rotate 90 degrees
-        if (width > height) {
-            Log.d(TAG, "Converting landscape to portrait: " + width + "x" + height);
-            Matrix matrix = new Matrix();
-            matrix.postRotate(90);
-            Bitmap rotated = Bitmap.createBitmap(original, 0, 0, width, height, matrix, true);
-            if (rotated != original) {
-                original.recycle();
-            }
-            original = rotated;
-        }
-
-        // Scale to exact video dimensions
-        Bitmap scaled = Bitmap.createScaledBitmap(original, VIDEO_WIDTH, VIDEO_HEIGHT, true);
-        if (scaled != original) {
-            original.recycle();
-        }
-
-        return scaled;
+        return bitmap;
     }
 
     private int calculateImageDurationSeconds(int ttsDurationSeconds, int photoCount) {
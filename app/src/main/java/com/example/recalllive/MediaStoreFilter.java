@@ -0,0 +1,151 @@
+package com.example.recalllive;
+
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which MediaStore images are worth ingesting, as a selection the query itself applies.
+ *
+ * Screenshots, messaging-app downloads, stickers and other tiny images are never memories,
+ * so they are kept out of the cursor instead of being EXIF-read, hashed, clustered and synced
+ * for nothing. Rows are excluded by folder (bucket name on every API, plus a path fragment
+ * matched against RELATIVE_PATH on API 29+ and DATA before), by MIME type, and by a minimum
+ * WIDTH and HEIGHT. Rows MediaStore has no value for are kept, since it may not have
+ * scanned them yet.
+ */
+public class MediaStoreFilter {
+
+    /**
+     * Folders whose name alone marks them as not photos of the patient's life
+     */
+    public static final List<String> DEFAULT_EXCLUDED_BUCKETS = Collections.unmodifiableList(Arrays.asList(
+            "Screenshots", "Screenshot", "Screen recordings", "WhatsApp Stickers", "Stickers", "GIFs"));
+
+    /**
+     * Folders of messaging apps, matched anywhere in the path
+     */
+    public static final List<String> DEFAULT_EXCLUDED_PATHS = Collections.unmodifiableList(Arrays.asList(
+            "Screenshots/", "WhatsApp/Media/", "Telegram/", "Messenger/", "Signal/"));
+
+    /**
+     * Animations and stickers
+     */
+    public static final List<String> DEFAULT_EXCLUDED_MIME_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "image/gif", "image/webp"));
+
+    /**
+     * Smallest width and height in pixels; below that an image is an icon, emoji or sticker
+     */
+    public static final int DEFAULT_MIN_DIMENSION = 480;
+
+    private final List<String> excludedBuckets;
+    private final List<String> excludedPaths;
+    private final List<String> excludedMimeTypes;
+    private final int minWidth;
+    private final int minHeight;
+
+    public MediaStoreFilter(List<String> excludedBuckets, List<String> excludedPaths,
+                            List<String> excludedMimeTypes, int minWidth, int minHeight) {
+        this.excludedBuckets = new ArrayList<>(excludedBuckets);
+        this.excludedPaths = new ArrayList<>(excludedPaths);
+        this.excludedMimeTypes = new ArrayList<>(excludedMimeTypes);
+        this.minWidth = minWidth;
+        this.minHeight = minHeight;
+    }
+
+    public static MediaStoreFilter getDefault() {
+        return new MediaStoreFilter(DEFAULT_EXCLUDED_BUCKETS, DEFAULT_EXCLUDED_PATHS,
+                DEFAULT_EXCLUDED_MIME_TYPES, DEFAULT_MIN_DIMENSION, DEFAULT_MIN_DIMENSION);
+    }
+
+    /**
+     * selection with this filter ANDed on, for a query on a device running sdkInt. A null
+     * selection selects every row, and an empty filter returns selection unchanged.
+     */
+    public String apply(String selection, int sdkInt) {
+        String filter = getSelection(sdkInt);
+        if (filter == null) {
+            return selection;
+        }
+        return selection == null ? filter : "(" + selection + ") AND " + filter;
+    }
+
+    /**
+     * selectionArgs followed by the arguments of this filter, in the order apply places them
+     */
+    public String[] applyArgs(String[] selectionArgs, int sdkInt) {
+        List<String> filterArgs = getSelectionArgs(sdkInt);
+        if (filterArgs.isEmpty()) {
+            return selectionArgs;
+        }
+        List<String> args = new ArrayList<>();
+        if (selectionArgs != null) {
+            args.addAll(Arrays.asList(selectionArgs));
+        }
+        args.addAll(filterArgs);
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * The filter alone, or null if it excludes nothing
+     */
+    String getSelection(int sdkInt) {
+        List<String> clauses = new ArrayList<>();
+        if (!excludedBuckets.isEmpty()) {
+            clauses.add(notIn(MediaStore.Images.Media.BUCKET_DISPLAY_NAME, excludedBuckets.size()));
+        }
+        if (!excludedPaths.isEmpty()) {
+            String column = pathColumn(sdkInt);
+            StringBuilder clause = new StringBuilder("(" + column + " IS NULL");
+            for (int i = 0; i < excludedPaths.size(); i++) {
+                clause.append(i == 0 ? " OR (" : " AND ").append(column).append(" NOT LIKE ?");
+            }
+            clauses.add(clause.append("))").toString());
+        }
+        if (!excludedMimeTypes.isEmpty()) {
+            clauses.add(notIn(MediaStore.Images.Media.MIME_TYPE, excludedMimeTypes.size()));
+        }
+        if (minWidth > 0) {
+            clauses.add(atLeast(MediaStore.Images.Media.WIDTH));
+        }
+        if (minHeight > 0) {
+            clauses.add(atLeast(MediaStore.Images.Media.HEIGHT));
+        }
+        return clauses.isEmpty() ? null : String.join(" AND ", clauses);
+    }
+
+    List<String> getSelectionArgs(int sdkInt) {
+        List<String> args = new ArrayList<>(excludedBuckets);
+        // RELATIVE_PATH has no leading slash; DATA is absolute
+        String prefix = sdkInt >= 29 ? "%" : "%/";
+        for (String path : excludedPaths) {
+            args.add(prefix + path + "%");
+        }
+        args.addAll(excludedMimeTypes);
+        if (minWidth > 0) {
+            args.add(String.valueOf(minWidth));
+        }
+        if (minHeight > 0) {
+            args.add(String.valueOf(minHeight));
+        }
+        return args;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String pathColumn(int sdkInt) {
+        return sdkInt >= 29 ? MediaStore.MediaColumns.RELATIVE_PATH : MediaStore.Images.Media.DATA;
+    }
+
+    private static String notIn(String column, int count) {
+        return "(" + column + " IS NULL OR " + column + " NOT IN ("
+                + String.join(",", Collections.nCopies(count, "?")) + "))";
+    }
+
+    private static String atLeast(String column) {
+        return "(" + column + " IS NULL OR " + column + " <= 0 OR " + column + " >= ?)";
+    }
+}
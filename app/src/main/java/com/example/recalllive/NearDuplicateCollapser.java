@@ -0,0 +1,184 @@
+package com.example.recalllive;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collapses burst shots and re-saved copies into one representative photo, so only the
+ * representative is clustered, stored, synced and decoded for videos.
+ *
+ * Two photos are near-duplicates when their perceptual hashes differ in at most MAX_DISTANCE
+ * bits and they were taken within WINDOW_MILLIS of each other. Hashes are found through a
+ * multi-index hash table: the 64 bits are split into 8 blocks of 8, and every photo is filed
+ * under each block value. Any hash within 6 bits agrees with the query on at least 2 blocks,
+ * so looking up the query's own 8 buckets finds every candidate. Unlike a BK-tree, entries can
+ * be dropped again, which keeps the streaming window small.
+ */
+public class NearDuplicateCollapser {
+
+    public static final int MAX_DISTANCE = 6;
+    public static final long WINDOW_MILLIS = 2 * 60 * 1000L;
+
+    private static final int BLOCKS = 8;
+    private static final int BLOCK_BITS = 64 / BLOCKS;
+    private static final int BUCKETS = 1 << BLOCK_BITS;
+
+    @SuppressWarnings("unchecked")
+    private final List<Entry>[] buckets = new List[BLOCKS * BUCKETS];
+    // Indexed photos in the order offer added them, for dropping those out of the window
+    private final ArrayDeque<Entry> window = new ArrayDeque<>();
+    private int queryStamp;
+
+    /**
+     * The kept photos and the duplicates collapsed into them
+     */
+    public static class Result {
+        private final List<PhotoData> keptPhotos;
+        private final List<PhotoDuplicate> duplicates;
+
+        public Result(List<PhotoData> keptPhotos, List<PhotoDuplicate> duplicates) {
+            this.keptPhotos = keptPhotos;
+            this.duplicates = duplicates;
+        }
+
+        public List<PhotoData> getKeptPhotos() {
+            return keptPhotos;
+        }
+
+        public List<PhotoDuplicate> getDuplicates() {
+            return duplicates;
+        }
+    }
+
+    private static final class Entry {
+        final PhotoData photo;
+        final long hash;
+        int stamp;
+
+        Entry(PhotoData photo) {
+            this.photo = photo;
+            this.hash = photo.getPerceptualHash();
+        }
+    }
+
+    /**
+     * Collapse incoming photos among themselves and into stored ones. Stored photos are
+     * always kept, even when an incoming photo was taken earlier; otherwise the earliest photo
+     * of a group is its representative.
+     */
+    public static Result collapse(List<PhotoData> stored, List<PhotoData> incoming) {
+        NearDuplicateCollapser collapser = new NearDuplicateCollapser();
+        for (PhotoData photo : stored) {
+            collapser.index(photo);
+        }
+
+        List<PhotoData> ordered = new ArrayList<>(incoming);
+        ordered.sort(Comparator.comparingLong(PhotoData::getDateTaken));
+
+        List<PhotoData> kept = new ArrayList<>();
+        List<PhotoDuplicate> duplicates = new ArrayList<>();
+        for (PhotoData photo : ordered) {
+            PhotoData representative = collapser.findRepresentative(photo);
+            if (representative != null) {
+                duplicates.add(PhotoDuplicate.of(photo, representative));
+            } else {
+                kept.add(photo);
+                collapser.index(photo);
+            }
+        }
+        return new Result(kept, duplicates);
+    }
+
+    /**
+     * Streaming form for photos arriving in dateTaken order: the representative this photo
+     * collapses into, or null if it is kept. Photos that fell out of the window are dropped
+     * from the index, so memory stays bounded by the photos of the last WINDOW_MILLIS.
+     */
+    public PhotoData offer(PhotoData photo) {
+        long oldest = photo.getDateTaken() - WINDOW_MILLIS;
+        while (!window.isEmpty() && window.peekFirst().photo.getDateTaken() < oldest) {
+            remove(window.pollFirst());
+        }
+
+        PhotoData representative = findRepresentative(photo);
+        if (representative == null) {
+            Entry entry = index(photo);
+            if (entry != null) {
+                window.addLast(entry);
+            }
+        }
+        return representative;
+    }
+
+    /**
+     * The closest indexed photo within MAX_DISTANCE bits and WINDOW_MILLIS, earliest on ties
+     */
+    private PhotoData findRepresentative(PhotoData photo) {
+        long hash = photo.getPerceptualHash();
+        if (hash == PerceptualHash.UNKNOWN) {
+            return null;
+        }
+
+        int stamp = ++queryStamp;
+        Entry best = null;
+        int bestDistance = MAX_DISTANCE + 1;
+        for (int block = 0; block < BLOCKS; block++) {
+            List<Entry> bucket = buckets[bucketOf(hash, block)];
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry entry : bucket) {
+                if (entry.stamp == stamp) {
+                    continue; // already seen through an earlier block
+                }
+                entry.stamp = stamp;
+
+                if (Math.abs(entry.photo.getDateTaken() - photo.getDateTaken()) > WINDOW_MILLIS) {
+                    continue;
+                }
+                int distance = PerceptualHash.distance(hash, entry.hash);
+                if (distance < bestDistance || (distance == bestDistance
+                        && entry.photo.getDateTaken() < best.photo.getDateTaken())) {
+                    best = entry;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best != null ? best.photo : null;
+    }
+
+    private Entry index(PhotoData photo) {
+        if (photo.getPerceptualHash() == PerceptualHash.UNKNOWN) {
+            return null;
+        }
+
+        Entry entry = new Entry(photo);
+        for (int block = 0; block < BLOCKS; block++) {
+            int bucket = bucketOf(entry.hash, block);
+            if (buckets[bucket] == null) {
+                buckets[bucket] = new ArrayList<>();
+            }
+            buckets[bucket].add(entry);
+        }
+        return entry;
+    }
+
+    private void remove(Entry entry) {
+        for (int block = 0; block < BLOCKS; block++) {
+            List<Entry> bucket = buckets[bucketOf(entry.hash, block)];
+            // Window order matches insertion order, so the entry sits near the front
+            for (int i = 0; i < bucket.size(); i++) {
+                if (bucket.get(i) == entry) {
+                    bucket.remove(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static int bucketOf(long hash, int block) {
+        return block * BUCKETS + (int) ((hash >>> (block * BLOCK_BITS)) & (BUCKETS - 1));
+    }
+}
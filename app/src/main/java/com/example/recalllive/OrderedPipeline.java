@@ -0,0 +1,103 @@
+package com.example.recalllive;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a task per item on a worker pool while the producer keeps feeding items, and hands the
+ * results to the sink in submission order on the producer's thread, so the sink needs no locking.
+ *
+ * At most maxInFlight items are queued or running at once: submit blocks on the oldest item once
+ * the window is full, which keeps a cursor loop from running far ahead of slow storage reads.
+ * With a null executor every task runs inline on submit.
+ */
+public class OrderedPipeline<T, R> {
+    private final Executor executor;
+    private final int maxInFlight;
+    private final Function<T, R> task;
+    private final Consumer<R> sink;
+    private final ArrayDeque<Future<R>> window;
+    private int emittedCount;
+
+    public OrderedPipeline(Executor executor, int maxInFlight, Function<T, R> task, Consumer<R> sink) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.task = task;
+        this.sink = sink;
+        this.window = new ArrayDeque<>(maxInFlight);
+    }
+
+    /**
+     * Queue an item, first waiting for the oldest one if the window is full. Results that are
+     * already done at the head of the window are emitted on the way.
+     */
+    public void submit(T item) {
+        if (executor == null) {
+            emit(task.apply(item));
+            return;
+        }
+
+        while (window.size() >= maxInFlight) {
+            emitHead();
+        }
+        FutureTask<R> future = new FutureTask<>(() -> task.apply(item));
+        window.add(future);
+        executor.execute(future);
+
+        while (!window.isEmpty() && window.peek().isDone()) {
+            emitHead();
+        }
+    }
+
+    /**
+     * Wait for every queued item and emit the remaining results
+     */
+    public void finish() {
+        while (!window.isEmpty()) {
+            emitHead();
+        }
+    }
+
+    /**
+     * Drop every queued item without emitting it. A no-op after finish.
+     */
+    public void cancel() {
+        for (Future<R> future : window) {
+            future.cancel(true);
+        }
+        window.clear();
+    }
+
+    public int getEmittedCount() {
+        return emittedCount;
+    }
+
+    private void emitHead() {
+        Future<R> future = window.poll();
+        R result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new IllegalStateException("Interrupted while waiting for a pipeline task", e);
+        } catch (ExecutionException e) {
+            cancel();
+            throw new IllegalStateException("Pipeline task failed", e.getCause());
+        }
+        emit(result);
+    }
+
+    private void emit(R result) {
+        emittedCount++;
+        sink.accept(result);
+    }
+}
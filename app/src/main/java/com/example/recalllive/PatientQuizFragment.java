@@ -3,10 +3,7 @@ package com.example.recalllive;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
-import android.graphics.Matrix;
-import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -25,7 +22,6 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -206,6 +202,29 @@ public class PatientQuizFragment extends Fragment {
         tvQuestionTitle.setText("Loading Quiz...");
         tvQuestionText.setText("Generating today's random quiz questions...");
 
+        // Pick the quiz clusters straight from the local index, Firebase only when it is empty
+        PhotoDatabase database = PhotoDatabase.getInstance(requireContext());
+        AppExecutors.getInstance().diskIO().execute(() -> {
+            ClusterIndex clusterIndex = new ClusterIndex(database);
+            List<PhotoClusteringManager.PhotoCluster> clusters =
+                    clusterIndex.loadClusters(clusterIndex.findRandom(1, TOTAL_QUESTIONS));
+
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                if (!isAdded() || getContext() == null) {
+                    return;
+                }
+                if (clusters.isEmpty()) {
+                    loadQuizDataFromFirebase();
+                } else {
+                    Log.d(TAG, "✓ Selected " + clusters.size() + " clusters from local index");
+                    tvQuestionText.setText("Loading location names...");
+                    generateQuizQuestions(clusters);
+                }
+            });
+        });
+    }
+
+    private void loadQuizDataFromFirebase() {
         clusterManager = new FirebaseClusterManager(requireContext(), patientUid);
         clusterManager.getClusters(new FirebaseClusterManager.OnClustersRetrievedCallback() {
             @Override
@@ -455,68 +474,33 @@ public class PatientQuizFragment extends Fragment {
     }
 
     /**
-     * FIXED: Load image with proper orientation and color for quiz
+     * Show the photo's display-size derivative, portrait like in videos. It is read off the
+     * main thread; only the first use of a photo decodes the original.
      */
     private void loadImageFromUri(String uriString) {
         if (!isAdded() || getContext() == null) {
             return;
         }
 
-        try {
-            Uri uri = Uri.parse(uriString);
-            InputStream inputStream = getContext().getContentResolver().openInputStream(uri);
-
-            if (inputStream != null) {
-                // FIXED: Decode with proper color configuration (same as video)
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                options.inPremultiplied = true;
-                options.inDither = false;
-
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream, null, options);
-                inputStream.close();
+        PhotoDerivativeCache derivativeCache = PhotoDerivativeCache.getInstance(requireContext());
+        ivQuestionImage.setTag(uriString);
+        ivQuestionImage.setImageDrawable(null);
+        AppExecutors.getInstance().diskIO().execute(() -> {
+            Bitmap bitmap = derivativeCache.load(uriString, PhotoDerivativeCache.Level.DISPLAY);
 
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                // The patient may have moved on to the next question meanwhile
+                if (!isAdded() || !uriString.equals(ivQuestionImage.getTag())) {
+                    return;
+                }
                 if (bitmap != null) {
-                    // FIXED: Convert horizontal images to vertical like in videos
-                    Bitmap orientedBitmap = convertToPortraitForQuiz(bitmap);
-                    ivQuestionImage.setImageBitmap(orientedBitmap);
-
-                    if (orientedBitmap != bitmap) {
-                        bitmap.recycle();
-                    }
+                    ivQuestionImage.setImageBitmap(bitmap);
                 } else {
+                    Log.e(TAG, "Failed to load image: " + uriString);
                     ivQuestionImage.setImageResource(android.R.drawable.ic_menu_gallery);
                 }
-            } else {
-                ivQuestionImage.setImageResource(android.R.drawable.ic_menu_gallery);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to load image: " + uriString, e);
-            ivQuestionImage.setImageResource(android.R.drawable.ic_menu_gallery);
-        }
-    }
-
-    /**
-     * FIXED: Convert horizontal images to vertical for quiz display
-     * Same logic as video generation for consistency
-     */
-    private Bitmap convertToPortraitForQuiz(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        // If already portrait or square, return as is
-        if (height >= width) {
-            return bitmap;
-        }
-
-        // Image is horizontal - rotate 90 degrees clockwise
-        Log.d(TAG, "Converting landscape quiz image to portrait: " + width + "x" + height);
-
-        Matrix matrix = new Matrix();
-        matrix.postRotate(90);
-        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, true);
-
-        return rotated;
+            });
+        });
     }
 
     private void checkAnswer(Button clickedButton, String selectedAnswer) {
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.Patterns;
@@ -307,9 +308,11 @@ public class PatientSignupActivity extends AppCompatActivity {
     }
 
     /**
-     * CRITICAL FIX: Start clustering FIRST, then wait for completion before starting videos
+     * Organize the recent photos first and make one video from them; the rest of the library
+     * and the remaining videos follow in the background (see AutomaticVideoService)
      */
     private void startSetupProcess() {
+        long setupStartedAt = SystemClock.elapsedRealtime();
         Toast.makeText(this, "Setting up your account...", Toast.LENGTH_SHORT).show();
 
         Log.d(TAG, "╔═══════════════════════════════════════╗");
@@ -321,21 +324,22 @@ public class PatientSignupActivity extends AppCompatActivity {
 
         AlertDialog progressDialog = new AlertDialog.Builder(this)
                 .setTitle("Organizing Your Photos")
-                .setMessage("Please wait while we organize your photos...\n\n" +
+                .setMessage("Please wait while we organize your recent photos...\n\n" +
                         "• Analyzing photo metadata\n" +
                         "• Grouping by location and time\n" +
                         "• Preparing memory clusters\n\n" +
-                        "This may take 30-60 seconds.")
+                        "Older photos are organized in the background.")
                 .setCancelable(false)
                 .create();
 
         progressDialog.show();
 
-        // STEP 1: Start clustering WITH callback
-        Log.d(TAG, "▶️ Step 1: Starting photo clustering...");
+        // STEP 1: Cluster the recent photos WITH callback
+        Log.d(TAG, "▶️ Step 1: Clustering the last " + VideoConfiguration.FIRST_VIDEO_RECENT_DAYS + " days...");
 
         PhotoProcessingService processingService = new PhotoProcessingService(this, newPatientUid);
-        processingService.processAllPhotos(new PhotoProcessingService.ProcessingCallback() {
+        processingService.processRecentPhotos(VideoConfiguration.FIRST_VIDEO_RECENT_DAYS,
+                new PhotoProcessingService.ProcessingCallback() {
             @Override
             public void onProcessingStarted() {
                 Log.d(TAG, "✓ Photo clustering started");
@@ -358,13 +362,12 @@ public class PatientSignupActivity extends AppCompatActivity {
 
                 // STEP 2: NOW start video generation (clusters exist!)
                 runOnUiThread(() -> {
-                    progressDialog.setMessage("Photos organized!\n\n" +
-                            "Now creating your first memory videos...\n\n" +
-                            "This will take another 30-60 seconds.");
+                    progressDialog.setMessage("Recent photos organized!\n\n" +
+                            "Now creating your first memory video...");
                 });
 
-                Log.d(TAG, "▶️ Step 2: Starting video generation (clusters ready!)...");
-                automaticVideoService.initializeForPatient(newPatientUid, true);
+                Log.d(TAG, "▶️ Step 2: Starting video generation (recent clusters ready!)...");
+                automaticVideoService.initializeForNewPatient(newPatientUid, setupStartedAt);
 
                 // Wait a bit then navigate
                 new android.os.Handler().postDelayed(() -> {
@@ -0,0 +1,63 @@
+package com.example.recalllive;
+
+/**
+ * 64-bit difference hash (dHash) of an image, for spotting burst shots and re-saved copies.
+ *
+ * The image is averaged down to a 9x8 luminance grid and each bit records whether a cell is
+ * brighter than its right-hand neighbour. Scaling, recompression and small exposure changes
+ * flip few bits, so near-duplicates lie within a small Hamming distance of each other.
+ */
+public final class PerceptualHash {
+
+    /** Hash of a photo that could not be decoded; never matches anything */
+    public static final long UNKNOWN = 0L;
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * dHash of ARGB pixels in row-major order, as returned by Bitmap.getPixels. The source
+     * should be at least 9x8; each grid cell is the mean luminance of the pixels it covers.
+     */
+    public static long dHash(int[] argb, int width, int height) {
+        if (width < GRID_WIDTH || height < GRID_HEIGHT || argb.length < width * height) {
+            return UNKNOWN;
+        }
+
+        long[] sums = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] counts = new int[GRID_WIDTH * GRID_HEIGHT];
+        for (int y = 0; y < height; y++) {
+            int row = y * GRID_HEIGHT / height * GRID_WIDTH;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[offset + x];
+                // Integer Rec. 601 luma, 0..255 scaled by 1000
+                int luma = 299 * ((pixel >> 16) & 0xFF) + 587 * ((pixel >> 8) & 0xFF) + 114 * (pixel & 0xFF);
+                int cell = row + x * GRID_WIDTH / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                int left = y * GRID_WIDTH + x;
+                // Compare means without dividing: a/ca > b/cb  <=>  a*cb > b*ca
+                hash <<= 1;
+                if (sums[left] * counts[left + 1] > sums[left + 1] * counts[left]) {
+                    hash |= 1;
+                }
+            }
+        }
+        // A flat image hashes to 0; nudge it so it does not read as UNKNOWN
+        return hash == UNKNOWN ? 1L : hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
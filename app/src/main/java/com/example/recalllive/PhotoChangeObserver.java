@@ -0,0 +1,138 @@
+package com.example.recalllive;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.media.AudioManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Live ingestion: watches MediaStore.Images and feeds new photos into the incremental
+ * clustering path within seconds, instead of waiting for the daily ClusteringWorker.
+ *
+ * A burst of notifications (a camera burst, a sync of many photos) is debounced into one
+ * micro-batch, flushed once things are quiet for DEBOUNCE_MILLIS or at the latest
+ * MAX_BATCH_DELAY_MILLIS after the first change. The batch itself is just processNewPhotos,
+ * which only reads rows past the scan watermark. Work runs single-flight on a
+ * background-priority thread and is put off while audio or video is playing.
+ */
+public class PhotoChangeObserver extends ContentObserver {
+    private static final String TAG = "PhotoChangeObserver";
+    private static final long DEBOUNCE_MILLIS = 2_000;
+    private static final long MAX_BATCH_DELAY_MILLIS = 10_000;
+    private static final long PLAYBACK_RETRY_MILLIS = 30_000;
+
+    private static PhotoChangeObserver INSTANCE;
+
+    private final Context context;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final PhotoProcessingService processingService;
+    private final AudioManager audioManager;
+    private final Runnable flush = this::flush;
+
+    // Only touched on the observer thread
+    private long firstPendingAt;
+    private boolean running;
+    private boolean dirty;
+
+    private PhotoChangeObserver(Context context, HandlerThread thread, String patientUid) {
+        super(new Handler(thread.getLooper()));
+        this.context = context;
+        this.thread = thread;
+        this.handler = new Handler(thread.getLooper());
+        this.processingService = new PhotoProcessingService(context, patientUid);
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    /**
+     * Start watching for the given patient, replacing any earlier observer
+     */
+    public static synchronized void start(Context context, String patientUid) {
+        stop(context);
+
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        INSTANCE = new PhotoChangeObserver(context.getApplicationContext(), thread, patientUid);
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, INSTANCE);
+        Log.d(TAG, "Watching MediaStore for new photos");
+    }
+
+    public static synchronized void stop(Context context) {
+        if (INSTANCE != null) {
+            context.getContentResolver().unregisterContentObserver(INSTANCE);
+            INSTANCE.handler.removeCallbacksAndMessages(null);
+            INSTANCE.thread.quitSafely();
+            INSTANCE = null;
+            Log.d(TAG, "Stopped watching MediaStore");
+        }
+    }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+        long now = SystemClock.uptimeMillis();
+        if (firstPendingAt == 0) {
+            firstPendingAt = now;
+        }
+
+        // Push the flush back while the burst continues, but never past the batch deadline
+        handler.removeCallbacks(flush);
+        long at = Math.min(now + DEBOUNCE_MILLIS, firstPendingAt + MAX_BATCH_DELAY_MILLIS);
+        handler.postAtTime(flush, at);
+    }
+
+    private void flush() {
+        if (running) {
+            dirty = true; // picked up again when the current batch finishes
+            return;
+        }
+        if (audioManager != null && audioManager.isMusicActive()) {
+            Log.d(TAG, "Playback active, deferring photo ingestion");
+            handler.postDelayed(flush, PLAYBACK_RETRY_MILLIS);
+            return;
+        }
+
+        firstPendingAt = 0;
+        running = true;
+        Executor observerThread = handler::post;
+        processingService.processNewPhotos(new PhotoProcessingService.ProcessingCallback() {
+            @Override
+            public void onProcessingStarted() {
+            }
+
+            @Override
+            public void onProgressUpdate(int processed, int total) {
+            }
+
+            @Override
+            public void onProcessingComplete(List<PhotoClusteringManager.PhotoCluster> clusters) {
+                Log.d(TAG, "Live ingestion updated " + (clusters != null ? clusters.size() : 0) + " clusters");
+                observerThread.execute(PhotoChangeObserver.this::finishBatch);
+            }
+
+            @Override
+            public void onProcessingError(String error) {
+                Log.e(TAG, "Live ingestion failed: " + error);
+                observerThread.execute(PhotoChangeObserver.this::finishBatch);
+            }
+        }, observerThread);
+    }
+
+    private void finishBatch() {
+        running = false;
+        if (dirty) {
+            dirty = false;
+            handler.removeCallbacks(flush);
+            handler.postDelayed(flush, DEBOUNCE_MILLIS);
+        }
+    }
+}
@@ -1,217 +1,713 @@
 package com.example.recalllive;
 
-import android.location.Location;
-import android.util.Log;
-
-import com.example.recalllive.PhotoData;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
-import com.google.maps.android.clustering.ClusterItem;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 public class PhotoClusteringManager {
-    private static final String TAG = "PhotoClusteringManager";
 
     // Clustering parameters
-    private static final double LOCATION_CLUSTER_RADIUS_METERS = 100.0; // 100 meters radius for location clustering
-    private static final long TIME_CLUSTER_WINDOW_MILLIS = 3 * 60 * 60 * 1000; // 3 hours for time clustering
+    static final double LOCATION_CLUSTER_RADIUS_METERS = 100.0; // 100 meters radius for location clustering
+    static final long TIME_CLUSTER_WINDOW_MILLIS = 3 * 60 * 60 * 1000; // 3 hours for time clustering
+
+    // Separates the location cluster part of a cluster ID from its time part
+    private static final String TIME_ID_SEPARATOR = "_time_";
+    // Starts the location part of clusters with more than one located photo
+    private static final String LOCATION_ID_PREFIX = "loc_";
+
+    // Parallel clustering parameters
+    static final int PARALLEL_THRESHOLD = 20_000; // below this, fork/join overhead outweighs the speedup
+    private static final int MIN_PHOTOS_PER_TASK = 2_048;
+
+    private final ClusteringStrategy strategy;
+    private final ForkJoinPool pool;
+
+    public PhotoClusteringManager() {
+        this((ForkJoinPool) null);
+    }
+
+    /**
+     * Cluster large libraries on the given pool. Results are identical to the sequential path;
+     * a null pool keeps all work on the calling thread.
+     */
+    public PhotoClusteringManager(ForkJoinPool pool) {
+        this(new FixedRadiusStrategy(LOCATION_CLUSTER_RADIUS_METERS, TIME_CLUSTER_WINDOW_MILLIS, pool), pool);
+    }
+
+    /**
+     * Group photos with another strategy. IDs, names and time splits work the same way for
+     * every strategy; the pool is only used for the time split here.
+     */
+    public PhotoClusteringManager(ClusteringStrategy strategy, ForkJoinPool pool) {
+        this.strategy = strategy;
+        this.pool = pool;
+    }
 
     /**
      * Cluster photos by both time and location
      */
     public List<PhotoCluster> clusterPhotos(List<PhotoData> photos) {
-        Map<String, PhotoCluster> clusters = new HashMap<>();
+        return clusterPhotos(photos, null);
+    }
 
-        // First, cluster by location
-        Map<String, List<PhotoData>> locationClusters = clusterByLocation(photos);
+    private List<PhotoCluster> clusterPhotos(List<PhotoData> photos, Pins pins) {
+        PhotoColumns columns = PhotoColumns.fromPhotos(photos);
+        ClusterLayout layout = clusterColumns(columns, pins);
 
-        // Then, within each location cluster, cluster by time
-        for (Map.Entry<String, List<PhotoData>> entry : locationClusters.entrySet()) {
-            String locationId = entry.getKey();
-            List<PhotoData> locationPhotos = entry.getValue();
+        List<PhotoCluster> clusters = buildClusters(columns, layout, photos::get);
 
-            Map<String, List<PhotoData>> timeClusters = clusterByTime(locationPhotos);
+        // Keep the caller's photos in sync with the cluster assignment
+        for (int i = 0; i < columns.size(); i++) {
+            String locationName = columns.getLocationName(i);
+            if (locationName != null) {
+                photos.get(i).setLocationName(locationName);
+            }
+        }
 
-            for (Map.Entry<String, List<PhotoData>> timeEntry : timeClusters.entrySet()) {
-                String timeId = timeEntry.getKey();
-                List<PhotoData> clusterPhotos = timeEntry.getValue();
+        return clusters;
+    }
 
-                String clusterId = locationId + "_" + timeId;
-                PhotoCluster cluster = new PhotoCluster(clusterId);
-                cluster.setPhotos(clusterPhotos);
+    /**
+     * Re-cluster only the part of the library touched by a delta of added and removed photos,
+     * with every location cluster in affectedClusters loaded whole.
+     */
+    public IncrementalResult clusterIncremental(List<PhotoCluster> affectedClusters,
+                                                List<PhotoData> addedPhotos,
+                                                Set<String> removedUris) {
+        return clusterIncremental(affectedClusters, addedPhotos, removedUris, new HashMap<>(), new HashMap<>());
+    }
 
-                // Update cluster ID in each photo
-                for (PhotoData photo : clusterPhotos) {
-                    photo.setClusterId(clusterId);
-                }
+    /**
+     * Re-cluster only the part of the library touched by a delta of added and removed photos.
+     *
+     * affectedClusters must hold every persisted cluster of each location cluster that either
+     * contains a removed photo or has a member within the location radius of an added photo
+     * (see {@link #getLocationPrefix(String)}). Location clusters are closed under that radius, so
+     * re-clustering just those photos plus the delta gives the same result as a full run,
+     * while the rest of the library is never loaded. Merges and splits fall out naturally.
+     *
+     * A location cluster the delta only extends may be loaded in part instead: just its time
+     * clusters the time rule below asks for. Such a cluster is pinned by its location prefix in
+     * pinnedLocationNames, mapped to the location name its photos carry, and every added photo
+     * within the radius of it is mapped to that prefix in addedPhotoLocations. It keeps its ID
+     * and name, so it must not contain a removed or modified photo, must not be linked to any
+     * other location cluster by the added photos, and those photos must all be taken after its
+     * earliest located photo. {@link LocationLinks} finds the clusters that qualify.
+     *
+     * Photos without a location follow the located photo nearest in time, so affectedClusters
+     * must also cover every time cluster with a photo within twice the time window of a delta
+     * photo (added, removed, or the old copy of a modified one), with the whole location
+     * cluster unless it is pinned. Unlocated photos further than one window from the delta keep
+     * the located photo they were attached to.
+     *
+     * This closure only holds for the default {@link FixedRadiusStrategy}; with another
+     * strategy the result is an approximation of a full run.
+     */
+    public IncrementalResult clusterIncremental(List<PhotoCluster> affectedClusters,
+                                                List<PhotoData> addedPhotos,
+                                                Set<String> removedUris,
+                                                Map<String, String> pinnedLocationNames,
+                                                Map<String, String> addedPhotoLocations) {
+        Set<String> addedUris = new HashSet<>();
+        for (PhotoData photo : addedPhotos) {
+            addedUris.add(photo.getPhotoUri());
+        }
 
-                // Set cluster metadata
-                if (!clusterPhotos.isEmpty()) {
-                    PhotoData firstPhoto = clusterPhotos.get(0);
-                    cluster.setLatitude(firstPhoto.getLatitude());
-                    cluster.setLongitude(firstPhoto.getLongitude());
-                    cluster.setStartTime(getEarliestTime(clusterPhotos));
-                    cluster.setEndTime(getLatestTime(clusterPhotos));
-                    cluster.setLocationName(generateLocationName(firstPhoto));
-                    cluster.setTimeDescription(generateTimeDescription(cluster.getStartTime(), cluster.getEndTime()));
+        List<PhotoData> photos = new ArrayList<>();
+        List<String> locations = new ArrayList<>();
+        Map<String, Set<String>> previousMembers = new HashMap<>();
+        List<Long> deltaTimes = new ArrayList<>();
+
+        for (PhotoCluster cluster : affectedClusters) {
+            String prefix = getLocationPrefix(cluster.getClusterId());
+            String location = pinnedLocationNames.containsKey(prefix) ? prefix : null;
+            Set<String> members = new HashSet<>();
+            for (PhotoData photo : cluster.getPhotos()) {
+                String uri = photo.getPhotoUri();
+                members.add(uri);
+                // Modified photos come back in the delta, so drop their stale copy
+                if (!removedUris.contains(uri) && !addedUris.contains(uri)) {
+                    photos.add(photo);
+                    locations.add(location);
+                } else {
+                    deltaTimes.add(photo.getDateTaken());
                 }
+            }
+            previousMembers.put(cluster.getClusterId(), members);
+        }
+        for (PhotoData photo : addedPhotos) {
+            photos.add(photo);
+            locations.add(addedPhotoLocations.get(photo.getPhotoUri()));
+            deltaTimes.add(photo.getDateTaken());
+        }
 
-                clusters.put(clusterId, cluster);
+        Pins pins = new Pins(pinUnlocatedPhotos(affectedClusters, photos, deltaTimes, removedUris, addedUris),
+                locations.toArray(new String[0]), pinnedLocationNames);
+
+        List<PhotoCluster> changedClusters = new ArrayList<>();
+        for (PhotoCluster cluster : clusterPhotos(photos, pins)) {
+            Set<String> before = previousMembers.remove(cluster.getClusterId());
+            if (before == null || hasChanged(cluster, before, addedUris)) {
+                changedClusters.add(cluster);
             }
         }
 
-        return new ArrayList<>(clusters.values());
+        // Anything not produced again was merged, split or emptied
+        List<String> removedClusterIds = new ArrayList<>(previousMembers.keySet());
+
+        return new IncrementalResult(changedClusters, removedClusterIds);
     }
 
     /**
-     * Cluster photos by location using DBSCAN-like algorithm
+     * For every kept photo without a location that is more than one time window from the
+     * delta, the index of the located photo it was attached to; -1 for every other photo.
+     * That photo was the nearest in time of the whole library, so it is also the nearest
+     * within the photo's old cluster, and the delta is too far away to change that.
      */
-    private Map<String, List<PhotoData>> clusterByLocation(List<PhotoData> photos) {
-        Map<String, List<PhotoData>> clusters = new HashMap<>();
-        List<PhotoData> visited = new ArrayList<>();
+    private int[] pinUnlocatedPhotos(List<PhotoCluster> affectedClusters, List<PhotoData> photos,
+                                     List<Long> deltaTimes, Set<String> removedUris, Set<String> addedUris) {
+        long window = strategy.getTimeWindowMillis();
+        long[] delta = new long[deltaTimes.size()];
+        for (int i = 0; i < delta.length; i++) {
+            delta[i] = deltaTimes.get(i);
+        }
+        Arrays.sort(delta);
+
+        Map<String, Integer> indexOf = new HashMap<>();
+        for (int i = 0; i < photos.size(); i++) {
+            indexOf.put(photos.get(i).getPhotoUri(), i);
+        }
+
+        int[] pinned = new int[photos.size()];
+        Arrays.fill(pinned, -1);
 
-        for (PhotoData photo : photos) {
-            if (visited.contains(photo)) {
+        for (PhotoCluster cluster : affectedClusters) {
+            // Located members in the order findNearestInTime breaks ties in
+            List<PhotoData> byTime = new ArrayList<>();
+            for (PhotoData member : cluster.getPhotos()) {
+                if (member.hasLocation()) {
+                    byTime.add(member);
+                }
+            }
+            // Clusters without located photos are time sessions, which are recomputed
+            if (byTime.isEmpty()) {
                 continue;
             }
+            byTime.sort((a, b) -> a.getDateTaken() != b.getDateTaken()
+                    ? Long.compare(a.getDateTaken(), b.getDateTaken())
+                    : a.getPhotoUri().compareTo(b.getPhotoUri()));
+            long[] times = new long[byTime.size()];
+            for (int k = 0; k < times.length; k++) {
+                times[k] = byTime.get(k).getDateTaken();
+            }
+
+            for (PhotoData photo : cluster.getPhotos()) {
+                String uri = photo.getPhotoUri();
+                if (photo.hasLocation() || removedUris.contains(uri) || addedUris.contains(uri)
+                        || isNearDelta(delta, photo.getDateTaken(), window)) {
+                    continue;
+                }
+
+                long time = photo.getDateTaken();
+                int after = lowerBound(times, time);
+                int anchor;
+                if (after == 0 || (after < times.length && times[after] - time < time - times[after - 1])) {
+                    anchor = after;
+                } else {
+                    // Equal gaps go to the earlier photo, equal times to the smallest URI
+                    anchor = lowerBound(times, times[after - 1]);
+                }
+                pinned[indexOf.get(uri)] = indexOf.get(byTime.get(anchor).getPhotoUri());
+            }
+        }
+
+        return pinned;
+    }
+
+    /**
+     * First index of the sorted array holding a value not below the given one
+     */
+    private static int lowerBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isNearDelta(long[] sortedDelta, long time, long window) {
+        int k = Arrays.binarySearch(sortedDelta, time);
+        if (k >= 0) {
+            return true;
+        }
+        k = -k - 1;
+        return (k < sortedDelta.length && sortedDelta[k] - time <= window)
+                || (k > 0 && time - sortedDelta[k - 1] <= window);
+    }
+
+    private boolean hasChanged(PhotoCluster cluster, Set<String> previousMembers, Set<String> addedUris) {
+        if (cluster.getPhotoCount() != previousMembers.size()) {
+            return true;
+        }
+        for (PhotoData photo : cluster.getPhotos()) {
+            String uri = photo.getPhotoUri();
+            if (addedUris.contains(uri) || !previousMembers.contains(uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The location cluster part of a cluster ID, including the separator. Every time cluster
+     * cut from the same location cluster shares it, so it selects the whole location cluster
+     * in storage.
+     */
+    public static String getLocationPrefix(String clusterId) {
+        int separator = clusterId.indexOf(TIME_ID_SEPARATOR);
+        return separator < 0 ? clusterId : clusterId.substring(0, separator + TIME_ID_SEPARATOR.length());
+    }
+
+    /**
+     * Whether the location prefix belongs to a location cluster identified by its earliest
+     * located photo, rather than a lone located photo or a time session without a location
+     */
+    public static boolean isAnchoredLocation(String locationPrefix) {
+        return locationPrefix.startsWith(LOCATION_ID_PREFIX);
+    }
+
+    private static String getLocationId(String locationPrefix) {
+        return locationPrefix.substring(0, locationPrefix.length() - TIME_ID_SEPARATOR.length());
+    }
+
+    /**
+     * Group photos with a location with the strategy, split every group by time, then give
+     * each photo without a location a time cluster.
+     * Works on index permutations only; the cluster of each photo is written back to the columns.
+     */
+    private ClusterLayout clusterColumns(PhotoColumns columns, Pins pins) {
+        int[] labels = new int[columns.size()];
+        strategy.assignLabels(columns, labels);
+
+        ClusterLayout locationClusters = layoutFromLabels(columns, labels, pins);
+        boolean parallel = pool != null && columns.size() >= PARALLEL_THRESHOLD;
+        ClusterLayout gpsSessions = clusterByTime(columns, locationClusters, parallel);
+        ClusterLayout clusters = attachUnlocated(columns, gpsSessions, pins != null ? pins.anchors : null);
+
+        for (int c = 0; c < clusters.size(); c++) {
+            String clusterId = clusters.getClusterId(c);
+            for (int k = clusters.getStart(c); k < clusters.getEnd(c); k++) {
+                columns.setClusterId(clusters.order[k], clusterId);
+            }
+        }
 
-            visited.add(photo);
-            List<PhotoData> neighbors = getLocationNeighbors(photo, photos);
+        return clusters;
+    }
 
-            if (neighbors.size() > 0) {
-                String clusterId = UUID.randomUUID().toString();
-                List<PhotoData> cluster = new ArrayList<>();
-                cluster.add(photo);
-                cluster.addAll(neighbors);
+    private List<PhotoCluster> buildClusters(PhotoColumns columns, ClusterLayout layout,
+                                             IntFunction<PhotoData> photoAt) {
+        List<PhotoCluster> clusters = new ArrayList<>(layout.size());
 
-                // Mark all neighbors as visited
-                visited.addAll(neighbors);
+        for (int c = 0; c < layout.size(); c++) {
+            String clusterId = layout.getClusterId(c);
+            int start = layout.getStart(c);
+            int end = layout.getEnd(c);
 
-                // Set location name for all photos in cluster
-                String locationName = generateLocationName(photo);
-                for (PhotoData p : cluster) {
-                    p.setLocationName(locationName);
+            List<PhotoData> clusterPhotos = new ArrayList<>(end - start);
+            ClusterStats stats = new ClusterStats();
+            int firstLocated = layout.order[start];
+            for (int k = start; k < end; k++) {
+                PhotoData photo = photoAt.apply(layout.order[k]);
+                // Update cluster ID in each photo
+                photo.setClusterId(clusterId);
+                clusterPhotos.add(photo);
+                stats.add(columns, layout.order[k]);
+                if (!columns.hasLocation(firstLocated) && columns.hasLocation(layout.order[k])) {
+                    firstLocated = layout.order[k];
                 }
+            }
+
+            PhotoCluster cluster = new PhotoCluster(clusterId);
+            cluster.setPhotos(clusterPhotos);
+            cluster.setStats(stats);
+
+            cluster.setLatitude(stats.getCentroidLatitude());
+            cluster.setLongitude(stats.getCentroidLongitude());
+            cluster.setStartTime(stats.getStartTime());
+            cluster.setEndTime(stats.getEndTime());
+            cluster.setLocationName(generateLocationName(columns, firstLocated));
+            cluster.setTimeDescription(generateTimeDescription(cluster.getStartTime(), cluster.getEndTime()));
+
+            clusters.add(cluster);
+        }
 
-                clusters.put(clusterId, cluster);
+        return clusters;
+    }
+
+    /**
+     * Group photos with a location by the strategy's labels, in order of each group's lowest
+     * index. A NOISE photo becomes a group of its own; photos without a location are left
+     * to {@link #attachUnlocated(PhotoColumns, ClusterLayout, int[])}. Photos pinned to the
+     * same stored location cluster form one group, as its unloaded photos still join them.
+     */
+    private ClusterLayout layoutFromLabels(PhotoColumns columns, int[] labels, Pins pins) {
+        int count = columns.size();
+
+        // Number groups densely, counting the photos of each
+        int[] groupOf = new int[count];
+        int[] groupStarts = new int[count + 1];
+        int[] remap = new int[count];
+        Arrays.fill(remap, -1);
+        Map<String, Integer> pinnedGroups = new HashMap<>();
+        int groups = 0;
+        int located = 0;
+        for (int i = 0; i < count; i++) {
+            if (!columns.hasLocation(i)) {
+                groupOf[i] = -1;
+                continue;
+            }
+            located++;
+
+            int label = labels[i];
+            String location = pins != null ? pins.locations[i] : null;
+            int group;
+            if (location != null) {
+                Integer pinned = pinnedGroups.get(location);
+                if (pinned == null) {
+                    pinned = groups++;
+                    pinnedGroups.put(location, pinned);
+                }
+                group = pinned;
+            } else if (label == ClusteringStrategy.NOISE) {
+                group = groups++;
             } else {
-                // Photo doesn't belong to any location cluster
-                String clusterId = "no_location_" + UUID.randomUUID().toString();
-                List<PhotoData> cluster = new ArrayList<>();
-                cluster.add(photo);
-                clusters.put(clusterId, cluster);
+                if (remap[label] < 0) {
+                    remap[label] = groups++;
+                }
+                group = remap[label];
+            }
+            groupOf[i] = group;
+            groupStarts[group + 1]++;
+        }
+        for (int g = 0; g < groups; g++) {
+            groupStarts[g + 1] += groupStarts[g];
+        }
+
+        ClusterLayout clusters = new ClusterLayout(located);
+        int[] next = Arrays.copyOf(groupStarts, groups);
+        for (int i = 0; i < count; i++) {
+            if (groupOf[i] >= 0) {
+                clusters.order[next[groupOf[i]]++] = i;
             }
         }
+        for (int g = 0; g < groups; g++) {
+            addLocationCluster(columns, clusters, groupStarts[g], groupStarts[g + 1], pins);
+        }
 
         return clusters;
     }
 
     /**
-     * Find photos within location radius
+     * Append the location cluster held in order[start, end). A photo alone in its slice
+     * was not grouped with any other, unless it is pinned.
      */
-    private List<PhotoData> getLocationNeighbors(PhotoData centerPhoto, List<PhotoData> allPhotos) {
-        List<PhotoData> neighbors = new ArrayList<>();
+    private void addLocationCluster(PhotoColumns columns, ClusterLayout clusters, int start, int end, Pins pins) {
+        int[] order = clusters.order;
+        String location = pins != null ? pins.locations[order[start]] : null;
+        if (location != null) {
+            // The anchor of a pinned cluster may not be loaded, but it keeps its ID and name
+            String locationName = pins.locationNames.get(location);
+            for (int k = start; k < end; k++) {
+                columns.setLocationName(order[k], locationName);
+            }
+            clusters.addCluster(getLocationId(location), start);
+            return;
+        }
+        if (end - start == 1) {
+            // Photo doesn't belong to any location cluster
+            clusters.addCluster("no_location_" + Long.toHexString(contentHash(columns.getPhotoUri(order[start]))), start);
+            return;
+        }
 
-        if (!centerPhoto.hasLocation()) {
-            return neighbors;
+        // Name and identify the cluster by its earliest photo, which does not depend
+        // on input order or on which photo happened to seed the expansion
+        int anchor = findEarliest(columns, order, start, end);
+        String locationName = generateLocationName(columns, anchor);
+        for (int k = start; k < end; k++) {
+            columns.setLocationName(order[k], locationName);
         }
 
-        for (PhotoData photo : allPhotos) {
-            if (photo.equals(centerPhoto) || !photo.hasLocation()) {
-                continue;
+        clusters.addCluster(generateLocationId(columns, anchor), start);
+    }
+
+    /**
+     * Split every location cluster into runs whose consecutive photos are at most
+     * the time window apart. Sorts each location slice of the order in place.
+     */
+    private ClusterLayout clusterByTime(PhotoColumns columns, ClusterLayout locationClusters, boolean parallel) {
+        int[] order = locationClusters.order;
+        int[][] runStarts = new int[locationClusters.size()][];
+
+        // Slices are disjoint, so they can be sorted and split independently
+        if (parallel) {
+            pool.invoke(new SplitByTimeTask(columns, locationClusters, runStarts, 0, runStarts.length));
+        } else {
+            for (int c = 0; c < runStarts.length; c++) {
+                runStarts[c] = splitByTime(columns, order, locationClusters.getStart(c), locationClusters.getEnd(c));
             }
+        }
+
+        ClusterLayout clusters = new ClusterLayout(order);
+        for (int c = 0; c < runStarts.length; c++) {
+            String locationId = locationClusters.getClusterId(c);
+            for (int runStart : runStarts[c]) {
+                clusters.addCluster(generateTimeId(columns, locationId, order[runStart]), runStart);
+            }
+        }
 
-            float distance = calculateDistance(
-                    centerPhoto.getLatitude(), centerPhoto.getLongitude(),
-                    photo.getLatitude(), photo.getLongitude()
-            );
+        return clusters;
+    }
 
-            if (distance <= LOCATION_CLUSTER_RADIUS_METERS) {
-                neighbors.add(photo);
+    /**
+     * Sort order[start, end) by date taken and return where each time cluster starts
+     */
+    private int[] splitByTime(PhotoColumns columns, int[] order, int start, int end) {
+        columns.sortByDateTaken(order, start, end);
+
+        int[] runStarts = new int[4];
+        int runs = 0;
+        runStarts[runs++] = start;
+        long window = strategy.getTimeWindowMillis();
+        for (int k = start + 1; k < end; k++) {
+            long timeDiff = columns.getDateTaken(order[k]) - columns.getDateTaken(order[k - 1]);
+            if (timeDiff > window) {
+                // Start new cluster
+                if (runs == runStarts.length) {
+                    runStarts = Arrays.copyOf(runStarts, runs * 2);
+                }
+                runStarts[runs++] = k;
             }
         }
 
-        return neighbors;
+        return Arrays.copyOf(runStarts, runs);
     }
 
     /**
-     * Cluster photos by time
+     * Give every photo without a location a time cluster. A photo joins the GPS session of the
+     * located photo nearest to it in time, if that one is within the time window; the others
+     * are split into time sessions of their own, so screenshots and scans end up as a handful
+     * of clusters instead of one each. pinnedAnchors, if not null, fixes the located photo
+     * some of them attach to (see {@link #clusterIncremental(List, List, Set, Map, Map)}).
      */
-    private Map<String, List<PhotoData>> clusterByTime(List<PhotoData> photos) {
-        Map<String, List<PhotoData>> clusters = new HashMap<>();
-        List<PhotoData> sorted = new ArrayList<>(photos);
+    private ClusterLayout attachUnlocated(PhotoColumns columns, ClusterLayout gpsSessions, int[] pinnedAnchors) {
+        int count = columns.size();
+        int located = gpsSessions.order.length;
+        if (located == count) {
+            return gpsSessions;
+        }
+
+        long window = strategy.getTimeWindowMillis();
+        int gpsCount = gpsSessions.size();
+        int[] sessionOf = new int[count];
+        for (int c = 0; c < gpsCount; c++) {
+            for (int k = gpsSessions.getStart(c); k < gpsSessions.getEnd(c); k++) {
+                sessionOf[gpsSessions.order[k]] = c;
+            }
+        }
 
-        // Sort by date taken
-        sorted.sort((a, b) -> Long.compare(a.getDateTaken(), b.getDateTaken()));
+        // Located photos in time order, for nearest-in-time lookups
+        int[] byTime = Arrays.copyOf(gpsSessions.order, located);
+        columns.sortByDateTaken(byTime, 0, located);
+        long[] times = new long[located];
+        for (int k = 0; k < located; k++) {
+            times[k] = columns.getDateTaken(byTime[k]);
+        }
 
-        List<PhotoData> currentCluster = new ArrayList<>();
-        long lastTime = 0;
+        int[] unlocated = new int[count - located];
+        int unlocatedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (!columns.hasLocation(i)) {
+                unlocated[unlocatedCount++] = i;
+            }
+        }
+        columns.sortByDateTaken(unlocated, 0, unlocatedCount);
 
-        for (PhotoData photo : sorted) {
-            if (currentCluster.isEmpty()) {
-                currentCluster.add(photo);
-                lastTime = photo.getDateTaken();
+        // Target cluster of each unlocated photo; new time sessions are numbered after the GPS ones
+        int[] targetOf = new int[unlocatedCount];
+        int[] sizes = new int[gpsCount + unlocatedCount];
+        for (int c = 0; c < gpsCount; c++) {
+            sizes[c] = gpsSessions.getEnd(c) - gpsSessions.getStart(c);
+        }
+        int clusterCount = gpsCount;
+        long sessionEnd = Long.MIN_VALUE;
+
+        for (int k = 0; k < unlocatedCount; k++) {
+            int photo = unlocated[k];
+            long time = columns.getDateTaken(photo);
+            int anchor = pinnedAnchors != null && pinnedAnchors[photo] >= 0
+                    ? pinnedAnchors[photo] : findNearestInTime(columns, byTime, times, time, window);
+
+            if (anchor >= 0) {
+                targetOf[k] = sessionOf[anchor];
+                columns.setLocationName(photo, columns.getLocationName(anchor));
             } else {
-                long timeDiff = photo.getDateTaken() - lastTime;
+                if (clusterCount == gpsCount || time - sessionEnd > window) {
+                    // Start new time session
+                    clusterCount++;
+                }
+                sessionEnd = time;
+                targetOf[k] = clusterCount - 1;
+            }
+            sizes[targetOf[k]]++;
+        }
 
-                if (timeDiff <= TIME_CLUSTER_WINDOW_MILLIS) {
-                    currentCluster.add(photo);
-                    lastTime = photo.getDateTaken();
-                } else {
-                    // Start new cluster
-                    String clusterId = "time_" + UUID.randomUUID().toString();
-                    clusters.put(clusterId, new ArrayList<>(currentCluster));
+        int[] starts = new int[clusterCount + 1];
+        for (int c = 0; c < clusterCount; c++) {
+            starts[c + 1] = starts[c] + sizes[c];
+        }
 
-                    currentCluster.clear();
-                    currentCluster.add(photo);
-                    lastTime = photo.getDateTaken();
-                }
+        ClusterLayout clusters = new ClusterLayout(count);
+        int[] order = clusters.order;
+        int[] next = Arrays.copyOf(starts, clusterCount);
+        for (int c = 0; c < gpsCount; c++) {
+            for (int k = gpsSessions.getStart(c); k < gpsSessions.getEnd(c); k++) {
+                order[next[c]++] = gpsSessions.order[k];
             }
         }
+        for (int k = 0; k < unlocatedCount; k++) {
+            order[next[targetOf[k]]++] = unlocated[k];
+        }
 
-        // Add last cluster
-        if (!currentCluster.isEmpty()) {
-            String clusterId = "time_" + UUID.randomUUID().toString();
-            clusters.put(clusterId, currentCluster);
+        for (int c = 0; c < clusterCount; c++) {
+            if (c < gpsCount) {
+                // GPS sessions keep their ID, their located photos are unchanged
+                if (starts[c + 1] - starts[c] > gpsSessions.getEnd(c) - gpsSessions.getStart(c)) {
+                    columns.sortByDateTaken(order, starts[c], starts[c + 1]);
+                }
+                clusters.addCluster(gpsSessions.getClusterId(c), starts[c]);
+            } else {
+                int anchor = findEarliest(columns, order, starts[c], starts[c + 1]);
+                String locationId = "no_location_" + Long.toHexString(contentHash(columns.getPhotoUri(anchor)));
+                clusters.addCluster(generateTimeId(columns, locationId, anchor), starts[c]);
+            }
         }
 
         return clusters;
     }
 
     /**
-     * Calculate distance between two GPS coordinates in meters
+     * Located photo nearest in time, or -1 if none is within the window. Ties go to the earlier
+     * photo, then to the smaller URI, so the choice only depends on the photos themselves.
+     */
+    private int findNearestInTime(PhotoColumns columns, int[] byTime, long[] times, long time, long window) {
+        int after = Arrays.binarySearch(times, time);
+        if (after < 0) {
+            after = -after - 1;
+        }
+        // binarySearch may land anywhere in a run of equal times
+        while (after > 0 && times[after - 1] >= time) {
+            after--;
+        }
+
+        long gapBefore = after > 0 ? time - times[after - 1] : Long.MAX_VALUE;
+        long gapAfter = after < times.length ? times[after] - time : Long.MAX_VALUE;
+        if (Math.min(gapBefore, gapAfter) > window) {
+            return -1;
+        }
+
+        int k = gapBefore <= gapAfter ? after - 1 : after;
+        int nearest = byTime[k];
+        // Photos taken at the same moment sit next to each other in byTime
+        for (int j = k - 1; j >= 0 && times[j] == times[k]; j--) {
+            nearest = smallerUri(columns, nearest, byTime[j]);
+        }
+        for (int j = k + 1; j < times.length && times[j] == times[k]; j++) {
+            nearest = smallerUri(columns, nearest, byTime[j]);
+        }
+        return nearest;
+    }
+
+    private static int smallerUri(PhotoColumns columns, int a, int b) {
+        return columns.getPhotoUri(b).compareTo(columns.getPhotoUri(a)) < 0 ? b : a;
+    }
+
+    /**
+     * Stable location cluster ID: the grid cell of the anchor photo plus a hash of its URI.
+     * The same photos always produce the same ID, so unchanged clusters keep their identity
+     * across runs and downstream sync and dedup can skip them.
      */
-    private float calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        Location loc1 = new Location("");
-        loc1.setLatitude(lat1);
-        loc1.setLongitude(lon1);
+    private String generateLocationId(PhotoColumns columns, int anchor) {
+        double cellDegrees = LOCATION_CLUSTER_RADIUS_METERS / GeoDistance.METERS_PER_DEGREE;
+        long row = (long) Math.floor(columns.getLatitude(anchor) / cellDegrees);
+        long column = (long) Math.floor(columns.getLongitude(anchor) / cellDegrees);
 
-        Location loc2 = new Location("");
-        loc2.setLatitude(lat2);
-        loc2.setLongitude(lon2);
+        return String.format(Locale.US, LOCATION_ID_PREFIX + "%d_%d_%s", row, column,
+                Long.toHexString(contentHash(columns.getPhotoUri(anchor))));
+    }
+
+    /**
+     * Time clusters never overlap within a location cluster, so the window start is unique there
+     */
+    private String generateTimeId(PhotoColumns columns, String locationId, int firstPhoto) {
+        return locationId + TIME_ID_SEPARATOR + columns.getDateTaken(firstPhoto);
+    }
+
+    /**
+     * Earliest photo of order[from, to), ties broken by URI so the choice is content-derived
+     */
+    private int findEarliest(PhotoColumns columns, int[] order, int from, int to) {
+        int earliest = order[from];
+        for (int k = from + 1; k < to; k++) {
+            int candidate = order[k];
+            long difference = columns.getDateTaken(candidate) - columns.getDateTaken(earliest);
+            if (difference < 0 || (difference == 0
+                    && columns.getPhotoUri(candidate).compareTo(columns.getPhotoUri(earliest)) < 0)) {
+                earliest = candidate;
+            }
+        }
+        return earliest;
+    }
 
-        return loc1.distanceTo(loc2);
+    /**
+     * 64-bit FNV-1a, stable across processes and devices unlike identity or random IDs
+     */
+    private static long contentHash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
     /**
      * Generate friendly location name
      */
-    private String generateLocationName(PhotoData photo) {
-        if (!photo.hasLocation()) {
+    private String generateLocationName(PhotoColumns columns, int index) {
+        if (!columns.hasLocation(index)) {
             return "Unknown Location";
         }
 
         // In a real app, you would use Geocoding API to get actual address
         // For now, return a generic name based on coordinates
         return String.format(Locale.US, "Location (%.2f, %.2f)",
-                photo.getLatitude(), photo.getLongitude());
+                columns.getLatitude(index), columns.getLongitude(index));
     }
 
     /**
@@ -237,24 +733,276 @@ public class PhotoClusteringManager {
                 cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR);
     }
 
-    private long getEarliestTime(List<PhotoData> photos) {
-        long earliest = Long.MAX_VALUE;
-        for (PhotoData photo : photos) {
-            if (photo.getDateTaken() < earliest) {
-                earliest = photo.getDateTaken();
+    /**
+     * Outcome of an incremental run: clusters to write and cluster IDs to delete
+     */
+    public static class IncrementalResult {
+        private final List<PhotoCluster> changedClusters;
+        private final List<String> removedClusterIds;
+
+        public IncrementalResult(List<PhotoCluster> changedClusters, List<String> removedClusterIds) {
+            this.changedClusters = changedClusters;
+            this.removedClusterIds = removedClusterIds;
+        }
+
+        public List<PhotoCluster> getChangedClusters() {
+            return changedClusters;
+        }
+
+        public List<String> getRemovedClusterIds() {
+            return removedClusterIds;
+        }
+
+        public boolean isEmpty() {
+            return changedClusters.isEmpty() && removedClusterIds.isEmpty();
+        }
+    }
+
+    /**
+     * Groups added photos with each other and with the stored location clusters within the
+     * location radius of them, to find the clusters an incremental run may load in part (see
+     * {@link #clusterIncremental(List, List, Set, Map, Map)}). Feed it every stored located
+     * photo within the radius of an added one, then resolve.
+     */
+    public static class LocationLinks {
+        private final List<PhotoData> locatedPhotos = new ArrayList<>();
+        private final SpatialGridIndex grid = new SpatialGridIndex(LOCATION_CLUSTER_RADIUS_METERS);
+        private final Map<String, Integer> prefixNodes = new HashMap<>();
+        private final List<String> prefixes = new ArrayList<>();
+        // Union-find over the located added photos, then one node per linked location prefix
+        private int[] parent;
+
+        public LocationLinks(List<PhotoData> addedPhotos) {
+            for (PhotoData photo : addedPhotos) {
+                if (photo.hasLocation()) {
+                    grid.add(locatedPhotos.size(), photo.getLatitude(), photo.getLongitude());
+                    locatedPhotos.add(photo);
+                }
+            }
+            parent = new int[locatedPhotos.size() + 16];
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = i;
+            }
+
+            for (int i = 0; i < locatedPhotos.size(); i++) {
+                PhotoData photo = locatedPhotos.get(i);
+                for (int candidate : grid.getCandidates(photo.getLatitude(), photo.getLongitude())) {
+                    if (candidate < i && isNear(candidate, photo.getLatitude(), photo.getLongitude())) {
+                        union(candidate, i);
+                    }
+                }
             }
         }
-        return earliest;
+
+        /**
+         * The added photos with a location, the only ones that can link stored clusters
+         */
+        public List<PhotoData> getLocatedPhotos() {
+            return locatedPhotos;
+        }
+
+        /**
+         * Record a stored photo; it only counts if it lies within the radius of an added photo
+         */
+        public void addStoredPhoto(String clusterId, double latitude, double longitude) {
+            String prefix = getLocationPrefix(clusterId);
+            Integer node = prefixNodes.get(prefix);
+            for (int candidate : grid.getCandidates(latitude, longitude)) {
+                if (node != null && find(parent, candidate) == find(parent, node)) {
+                    continue;
+                }
+                if (isNear(candidate, latitude, longitude)) {
+                    if (node == null) {
+                        node = addPrefixNode(prefix);
+                    }
+                    union(candidate, node);
+                }
+            }
+        }
+
+        /**
+         * Decide which location clusters linked to the added photos must be loaded whole and
+         * add them to wholePrefixes, which already holds those with removed or modified photos.
+         * Every other one is only extended by its added photos, later than its earliest located
+         * photo as given by earliestLocatedTime (null if unknown), and the result maps each of
+         * those photos to its location prefix.
+         */
+        public Map<String, String> resolve(Set<String> wholePrefixes, Function<String, Long> earliestLocatedTime) {
+            Map<Integer, List<String>> prefixesByRoot = new HashMap<>();
+            for (int p = 0; p < prefixes.size(); p++) {
+                int root = find(parent, locatedPhotos.size() + p);
+                List<String> linked = prefixesByRoot.get(root);
+                if (linked == null) {
+                    linked = new ArrayList<>();
+                    prefixesByRoot.put(root, linked);
+                }
+                linked.add(prefixes.get(p));
+            }
+            Map<Integer, Long> earliestAdded = new HashMap<>();
+            for (int i = 0; i < locatedPhotos.size(); i++) {
+                int root = find(parent, i);
+                Long earliest = earliestAdded.get(root);
+                if (earliest == null || locatedPhotos.get(i).getDateTaken() < earliest) {
+                    earliestAdded.put(root, locatedPhotos.get(i).getDateTaken());
+                }
+            }
+
+            Map<Integer, String> extended = new HashMap<>();
+            for (Map.Entry<Integer, List<String>> component : prefixesByRoot.entrySet()) {
+                List<String> linked = component.getValue();
+                String prefix = linked.get(0);
+                // Merges, a moved anchor or a changed member can change the ID, so those reload
+                boolean whole = linked.size() > 1 || wholePrefixes.contains(prefix) || !isAnchoredLocation(prefix);
+                if (!whole) {
+                    Long anchorTime = earliestLocatedTime.apply(prefix);
+                    whole = anchorTime == null || earliestAdded.get(component.getKey()) <= anchorTime;
+                }
+                if (whole) {
+                    wholePrefixes.addAll(linked);
+                } else {
+                    extended.put(component.getKey(), prefix);
+                }
+            }
+
+            Map<String, String> addedPhotoLocations = new HashMap<>();
+            for (int i = 0; i < locatedPhotos.size(); i++) {
+                String prefix = extended.get(find(parent, i));
+                if (prefix != null) {
+                    addedPhotoLocations.put(locatedPhotos.get(i).getPhotoUri(), prefix);
+                }
+            }
+            return addedPhotoLocations;
+        }
+
+        private boolean isNear(int photo, double latitude, double longitude) {
+            PhotoData other = locatedPhotos.get(photo);
+            return GeoDistance.isWithinRadius(latitude, longitude, other.getLatitude(), other.getLongitude(),
+                    LOCATION_CLUSTER_RADIUS_METERS);
+        }
+
+        private int addPrefixNode(String prefix) {
+            int node = locatedPhotos.size() + prefixes.size();
+            if (node == parent.length) {
+                int size = parent.length;
+                parent = Arrays.copyOf(parent, size * 2);
+                for (int i = size; i < parent.length; i++) {
+                    parent[i] = i;
+                }
+            }
+            prefixNodes.put(prefix, node);
+            prefixes.add(prefix);
+            return node;
+        }
+
+        private void union(int a, int b) {
+            int rootA = find(parent, a);
+            int rootB = find(parent, b);
+            if (rootA != rootB) {
+                parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+            }
+        }
+
+        private static int find(int[] parent, int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
     }
 
-    private long getLatestTime(List<PhotoData> photos) {
-        long latest = Long.MIN_VALUE;
-        for (PhotoData photo : photos) {
-            if (photo.getDateTaken() > latest) {
-                latest = photo.getDateTaken();
+    /**
+     * What an incremental run fixes in place: the located photo of unlocated photos far from
+     * the delta, and the stored location cluster of photos extending a partly loaded one
+     */
+    private static class Pins {
+        final int[] anchors;
+        final String[] locations;
+        final Map<String, String> locationNames;
+
+        Pins(int[] anchors, String[] locations, Map<String, String> locationNames) {
+            this.anchors = anchors;
+            this.locations = locations;
+            this.locationNames = locationNames;
+        }
+    }
+
+    /**
+     * Splits location clusters [from, to) by time in parallel, writing each one's run starts
+     */
+    private class SplitByTimeTask extends RecursiveAction {
+        private final PhotoColumns columns;
+        private final ClusterLayout locationClusters;
+        private final int[][] runStarts;
+        private final int from;
+        private final int to;
+
+        SplitByTimeTask(PhotoColumns columns, ClusterLayout locationClusters, int[][] runStarts, int from, int to) {
+            this.columns = columns;
+            this.locationClusters = locationClusters;
+            this.runStarts = runStarts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int photos = locationClusters.getEnd(to - 1) - locationClusters.getStart(from);
+            if (to - from == 1 || photos <= MIN_PHOTOS_PER_TASK) {
+                for (int c = from; c < to; c++) {
+                    runStarts[c] = splitByTime(columns, locationClusters.order,
+                            locationClusters.getStart(c), locationClusters.getEnd(c));
+                }
+                return;
             }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new SplitByTimeTask(columns, locationClusters, runStarts, from, middle),
+                    new SplitByTimeTask(columns, locationClusters, runStarts, middle, to));
+        }
+    }
+
+    /**
+     * Photo indices grouped by cluster: cluster c occupies order[getStart(c), getEnd(c))
+     */
+    private static class ClusterLayout {
+        final int[] order;
+        private final List<String> clusterIds = new ArrayList<>();
+        private int[] starts = new int[16];
+
+        ClusterLayout(int photoCount) {
+            this(new int[photoCount]);
+        }
+
+        ClusterLayout(int[] order) {
+            this.order = order;
+        }
+
+        void addCluster(String clusterId, int start) {
+            int c = clusterIds.size();
+            if (c == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            clusterIds.add(clusterId);
+            starts[c] = start;
+        }
+
+        int size() {
+            return clusterIds.size();
+        }
+
+        String getClusterId(int c) {
+            return clusterIds.get(c);
+        }
+
+        int getStart(int c) {
+            return starts[c];
+        }
+
+        int getEnd(int c) {
+            // Clusters are contiguous, so each one ends where the next begins
+            return c + 1 < clusterIds.size() ? starts[c + 1] : order.length;
         }
-        return latest;
     }
 
     /**
@@ -269,6 +1017,7 @@ public class PhotoClusteringManager {
         private long endTime;
         private String locationName;
         private String timeDescription;
+        private ClusterStats stats;
 
         public PhotoCluster(String clusterId) {
             this.clusterId = clusterId;
@@ -290,6 +1039,22 @@ public class PhotoClusteringManager {
 
         public void setPhotos(List<PhotoData> photos) {
             this.photos = photos;
+            this.stats = null;
+        }
+
+        /**
+         * Stats accumulated while clustering, or computed once on first use for clusters
+         * loaded from storage
+         */
+        public ClusterStats getStats() {
+            if (stats == null) {
+                stats = ClusterStats.of(photos != null ? photos : new ArrayList<>());
+            }
+            return stats;
+        }
+
+        public void setStats(ClusterStats stats) {
+            this.stats = stats;
         }
 
         public double getLatitude() {
@@ -0,0 +1,280 @@
+package com.example.recalllive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structure-of-arrays view of the photo library.
+ *
+ * Clustering only needs a timestamp, a coordinate and a cluster per photo. Each run copies
+ * those from its photos into primitive columns, so the hot loops read contiguous memory
+ * instead of chasing one PhotoData object (plus its strings) per photo. Content URIs are
+ * stored as an interned prefix plus the numeric MediaStore id.
+ */
+public class PhotoColumns {
+
+    public static final int NO_CLUSTER = -1;
+
+    static final String[] TIME_CLUSTERS = {"Morning", "Afternoon", "Evening", "Night"};
+    private static final long IRREGULAR_URI = -1;
+
+    private int size;
+    private long[] dateTaken;
+    private double[] latitude;
+    private double[] longitude;
+    private int[] clusterIndex;
+    private int[] locationNameIndex;
+    private byte[] timeCluster;
+    private int[] uriPrefix;
+    private long[] mediaId;
+
+    private final StringTable uriPrefixes = new StringTable();
+    private final StringTable clusterIds = new StringTable();
+    private final StringTable locationNames = new StringTable();
+    private final Map<Integer, String> irregularUris = new HashMap<>();
+
+    public PhotoColumns(int capacity) {
+        int initial = Math.max(capacity, 16);
+        dateTaken = new long[initial];
+        latitude = new double[initial];
+        longitude = new double[initial];
+        clusterIndex = new int[initial];
+        locationNameIndex = new int[initial];
+        timeCluster = new byte[initial];
+        uriPrefix = new int[initial];
+        mediaId = new long[initial];
+    }
+
+    /**
+     * Build columns from already materialized photos, index i matches photos.get(i)
+     */
+    public static PhotoColumns fromPhotos(List<PhotoData> photos) {
+        PhotoColumns columns = new PhotoColumns(photos.size());
+        for (PhotoData photo : photos) {
+            columns.add(photo.getPhotoUri(), photo.getDateTaken(), photo.getLatitude(),
+                    photo.getLongitude(), photo.getClusterId(), photo.getLocationName(),
+                    photo.getTimeCluster());
+        }
+        return columns;
+    }
+
+    /**
+     * Append a photo and return its index
+     */
+    public int add(String photoUri, long dateTaken, double latitude, double longitude,
+                   String clusterId, String locationName, String timeCluster) {
+        if (size == this.dateTaken.length) {
+            grow();
+        }
+
+        int index = size++;
+        this.dateTaken[index] = dateTaken;
+        this.latitude[index] = latitude;
+        this.longitude[index] = longitude;
+        this.clusterIndex[index] = clusterId != null ? clusterIds.intern(clusterId) : NO_CLUSTER;
+        this.locationNameIndex[index] = locationName != null ? locationNames.intern(locationName) : -1;
+        this.timeCluster[index] = timeClusterCode(timeCluster);
+        storeUri(index, photoUri);
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getDateTaken(int index) {
+        return dateTaken[index];
+    }
+
+    public double getLatitude(int index) {
+        return latitude[index];
+    }
+
+    public double getLongitude(int index) {
+        return longitude[index];
+    }
+
+    public boolean hasLocation(int index) {
+        return latitude[index] != 0.0 || longitude[index] != 0.0;
+    }
+
+    public String getPhotoUri(int index) {
+        long id = mediaId[index];
+        if (id == IRREGULAR_URI) {
+            return irregularUris.get(index);
+        }
+        return uriPrefixes.get(uriPrefix[index]) + id;
+    }
+
+    public int getClusterIndex(int index) {
+        return clusterIndex[index];
+    }
+
+    public String getClusterId(int index) {
+        int cluster = clusterIndex[index];
+        return cluster == NO_CLUSTER ? null : clusterIds.get(cluster);
+    }
+
+    public void setClusterId(int index, String clusterId) {
+        clusterIndex[index] = clusterId != null ? clusterIds.intern(clusterId) : NO_CLUSTER;
+    }
+
+    public int getClusterTableSize() {
+        return clusterIds.size();
+    }
+
+    public String getLocationName(int index) {
+        int name = locationNameIndex[index];
+        return name < 0 ? null : locationNames.get(name);
+    }
+
+    public void setLocationName(int index, String locationName) {
+        locationNameIndex[index] = locationName != null ? locationNames.intern(locationName) : -1;
+    }
+
+    public String getTimeCluster(int index) {
+        byte code = timeCluster[index];
+        return code < 0 ? null : TIME_CLUSTERS[code];
+    }
+
+    /**
+     * Position of the time cluster in {@link #TIME_CLUSTERS}, or -1 if it has none
+     */
+    public int getTimeClusterCode(int index) {
+        return timeCluster[index];
+    }
+
+    /**
+     * Sort a range of photo indices by dateTaken, ties by index, so the result does not depend
+     * on the order the range was filled in. Merge sort on primitives, so no boxing and no
+     * comparator calls.
+     */
+    public void sortByDateTaken(int[] indices, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int[] buffer = Arrays.copyOfRange(indices, from, to);
+        mergeSort(buffer, 0, indices, from, to - from);
+    }
+
+    // Both arrays hold the same elements on entry; leaves them sorted in target
+    private void mergeSort(int[] source, int sourceFrom, int[] target, int targetFrom, int length) {
+        if (length < 16) {
+            int end = targetFrom + length;
+            for (int i = targetFrom + 1; i < end; i++) {
+                int value = target[i];
+                int j = i - 1;
+                while (j >= targetFrom && isAfter(target[j], value)) {
+                    target[j + 1] = target[j];
+                    j--;
+                }
+                target[j + 1] = value;
+            }
+            return;
+        }
+
+        // Sort each half into source, then merge the halves back into target
+        int half = length >>> 1;
+        mergeSort(target, targetFrom, source, sourceFrom, half);
+        mergeSort(target, targetFrom + half, source, sourceFrom + half, length - half);
+
+        int left = sourceFrom;
+        int leftEnd = sourceFrom + half;
+        int right = leftEnd;
+        int rightEnd = sourceFrom + length;
+        for (int i = targetFrom; i < targetFrom + length; i++) {
+            if (right >= rightEnd || (left < leftEnd && !isAfter(source[left], source[right]))) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    private boolean isAfter(int a, int b) {
+        return dateTaken[a] > dateTaken[b] || (dateTaken[a] == dateTaken[b] && a > b);
+    }
+
+    private void grow() {
+        int capacity = dateTaken.length * 2;
+        dateTaken = Arrays.copyOf(dateTaken, capacity);
+        latitude = Arrays.copyOf(latitude, capacity);
+        longitude = Arrays.copyOf(longitude, capacity);
+        clusterIndex = Arrays.copyOf(clusterIndex, capacity);
+        locationNameIndex = Arrays.copyOf(locationNameIndex, capacity);
+        timeCluster = Arrays.copyOf(timeCluster, capacity);
+        uriPrefix = Arrays.copyOf(uriPrefix, capacity);
+        mediaId = Arrays.copyOf(mediaId, capacity);
+    }
+
+    private void storeUri(int index, String photoUri) {
+        int slash = photoUri.lastIndexOf('/');
+        long id = parseId(photoUri, slash + 1);
+
+        if (id == IRREGULAR_URI) {
+            mediaId[index] = IRREGULAR_URI;
+            irregularUris.put(index, photoUri);
+        } else {
+            mediaId[index] = id;
+            uriPrefix[index] = uriPrefixes.intern(photoUri.substring(0, slash + 1));
+        }
+    }
+
+    // Parses a plain decimal id without leading zeros, so the URI round-trips exactly
+    private static long parseId(String uri, int start) {
+        int length = uri.length() - start;
+        if (length <= 0 || length > 18 || (length > 1 && uri.charAt(start) == '0')) {
+            return IRREGULAR_URI;
+        }
+
+        long id = 0;
+        for (int i = start; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c < '0' || c > '9') {
+                return IRREGULAR_URI;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    static byte timeClusterCode(String timeCluster) {
+        if (timeCluster != null) {
+            for (byte i = 0; i < TIME_CLUSTERS.length; i++) {
+                if (TIME_CLUSTERS[i].equals(timeCluster)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Interned string table mapping values to dense indices
+     */
+    private static class StringTable {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        int intern(String value) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = values.size();
+                values.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+
+        String get(int index) {
+            return values.get(index);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package com.example.recalllive;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.annotation.NonNull;
 
-@Entity(tableName = "photos")
+@Entity(tableName = "photos",
+        indices = {
+                @Index("dateTaken"),
+                // Also serves "WHERE clusterId = ? ORDER BY dateTaken" and location prefix ranges
+                @Index({"clusterId", "dateTaken"}),
+                @Index("locationName"),
+                // Covers the bounds queries that find stored clusters near new photos
+                @Index({"latitude", "longitude", "clusterId"})
+        })
 public class PhotoData {
 
     // MAKE IT SO IT DOESNT AUTO FALL BACK ONTO CURRENT DATE
@@ -17,6 +26,7 @@ public class PhotoData {
     private String clusterId;
     private String timeCluster; // morning, afternoon, evening, night
     private String locationName; // friendly name for location cluster
+    private long perceptualHash; // PerceptualHash.UNKNOWN if the image could not be decoded
 
     public PhotoData(@NonNull String photoUri) {
         this.photoUri = photoUri;
@@ -80,6 +90,14 @@ public class PhotoData {
         this.locationName = locationName;
     }
 
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
     public boolean hasLocation() {
         return latitude != 0.0 || longitude != 0.0;
     }
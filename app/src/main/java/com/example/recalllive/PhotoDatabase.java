@@ -1,7 +1,9 @@
 package com.example.recalllive;
 
 import android.content.Context;
+import android.database.Cursor;
 
+import androidx.annotation.NonNull;
 import androidx.room.Dao;
 import androidx.room.Database;
 import androidx.room.Delete;
@@ -11,31 +13,160 @@ import androidx.room.Query;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.Update;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.example.recalllive.PhotoData;
 
 import java.util.List;
+import java.util.function.Consumer;
 
-@Database(entities = {PhotoData.class}, version = 1, exportSchema = false)
+/**
+ * Local store of photos, the cluster index and collapsed duplicates.
+ *
+ * Schemas are exported to app/schemas, and every version bump comes with a migration below,
+ * so an upgrade keeps the ingested library instead of wiping it.
+ */
+@Database(entities = {PhotoData.class, ClusterEntity.class, PhotoDuplicate.class}, version = 5, exportSchema = true)
 public abstract class PhotoDatabase extends RoomDatabase {
 
     private static PhotoDatabase INSTANCE;
     private static final String DATABASE_NAME = "recall_live_db";
 
+    /**
+     * Adds the cluster index, filled from the photos already stored. Names and time
+     * descriptions are left for the next clustering run to write.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `clusters` (`clusterId` TEXT NOT NULL, "
+                    + "`latitude` REAL NOT NULL, `longitude` REAL NOT NULL, `cellRow` INTEGER NOT NULL, "
+                    + "`cellColumn` INTEGER NOT NULL, `startTime` INTEGER NOT NULL, `endTime` INTEGER NOT NULL, "
+                    + "`photoCount` INTEGER NOT NULL, `locationName` TEXT, `timeDescription` TEXT, "
+                    + "`lastUsedAt` INTEGER NOT NULL, PRIMARY KEY(`clusterId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_clusters_cellRow_cellColumn_startTime` "
+                    + "ON `clusters` (`cellRow`, `cellColumn`, `startTime`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_clusters_startTime` ON `clusters` (`startTime`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_clusters_lastUsedAt_photoCount` "
+                    + "ON `clusters` (`lastUsedAt`, `photoCount`)");
+
+            // Centroid of the located photos, bucketed like ClusterEntity.cellOf (floor, not truncation)
+            String located = "(latitude != 0.0 OR longitude != 0.0)";
+            db.execSQL("INSERT INTO clusters (clusterId, latitude, longitude, cellRow, cellColumn, "
+                    + "startTime, endTime, photoCount, locationName, timeDescription, lastUsedAt) "
+                    + "SELECT clusterId, lat, lng, "
+                    + floorOf("lat / " + ClusterEntity.CELL_DEGREES) + ", "
+                    + floorOf("lng / " + ClusterEntity.CELL_DEGREES) + ", "
+                    + "startTime, endTime, photoCount, locationName, NULL, 0 FROM ("
+                    + "SELECT clusterId, "
+                    + "COALESCE(AVG(CASE WHEN " + located + " THEN latitude END), 0.0) AS lat, "
+                    + "COALESCE(AVG(CASE WHEN " + located + " THEN longitude END), 0.0) AS lng, "
+                    + "MIN(dateTaken) AS startTime, MAX(dateTaken) AS endTime, COUNT(*) AS photoCount, "
+                    + "MAX(locationName) AS locationName "
+                    + "FROM photos WHERE clusterId IS NOT NULL GROUP BY clusterId)");
+        }
+    };
+
+    /**
+     * Adds perceptual hashes, unknown for the photos already stored, and the duplicates table
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `photos` ADD COLUMN `perceptualHash` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `photo_duplicates` (`photoUri` TEXT NOT NULL, "
+                    + "`representativeUri` TEXT NOT NULL, `dateTaken` INTEGER NOT NULL, "
+                    + "`latitude` REAL NOT NULL, `longitude` REAL NOT NULL, `timeCluster` TEXT, "
+                    + "`perceptualHash` INTEGER NOT NULL, PRIMARY KEY(`photoUri`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photo_duplicates_representativeUri` "
+                    + "ON `photo_duplicates` (`representativeUri`)");
+        }
+    };
+
+    /**
+     * Indexes the photo columns every lookup filters or sorts on
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_dateTaken` ON `photos` (`dateTaken`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_clusterId_dateTaken` "
+                    + "ON `photos` (`clusterId`, `dateTaken`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_locationName` ON `photos` (`locationName`)");
+        }
+    };
+
+    /**
+     * Indexes photo coordinates, so clusters near new photos are found without a full scan
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_latitude_longitude_clusterId` "
+                    + "ON `photos` (`latitude`, `longitude`, `clusterId`)");
+        }
+    };
+
+    static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5};
+
     public abstract PhotoDao photoDao();
 
+    public abstract ClusterDao clusterDao();
+
+    public abstract DuplicateDao duplicateDao();
+
     public static synchronized PhotoDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             INSTANCE = Room.databaseBuilder(
                             context.getApplicationContext(),
                             PhotoDatabase.class,
                             DATABASE_NAME)
-                    .fallbackToDestructiveMigration()
+                    .addMigrations(MIGRATIONS)
+                    // Only a downgrade, e.g. reinstalling an older build, still starts over
+                    .fallbackToDestructiveMigrationOnDowngrade()
                     .build();
         }
         return INSTANCE;
     }
 
+    private static String floorOf(String expression) {
+        return "(CAST(" + expression + " AS INTEGER) - (" + expression + " < CAST(" + expression + " AS INTEGER)))";
+    }
+
+    /**
+     * Every clustered photo in one query, ordered by cluster and date and grouped while the
+     * cursor is read: each cluster goes to the consumer as soon as its last row is read. Only
+     * the current cluster is held, and the cursor pages rows in through its window, so large
+     * libraries are never materialized all at once.
+     */
+    public void streamClusters(Consumer<PhotoClusteringManager.PhotoCluster> consumer) {
+        try (Cursor cursor = photoDao().getClusteredPhotosCursor()) {
+            PhotoClusteringManager.PhotoCluster cluster = null;
+            while (cursor.moveToNext()) {
+                PhotoData photo = new PhotoData(cursor.getString(0));
+                photo.setDateTaken(cursor.getLong(1));
+                photo.setLatitude(cursor.getDouble(2));
+                photo.setLongitude(cursor.getDouble(3));
+                photo.setClusterId(cursor.getString(4));
+                photo.setTimeCluster(cursor.isNull(5) ? null : cursor.getString(5));
+                photo.setLocationName(cursor.isNull(6) ? null : cursor.getString(6));
+                photo.setPerceptualHash(cursor.getLong(7));
+
+                if (cluster == null || !cluster.getClusterId().equals(photo.getClusterId())) {
+                    if (cluster != null) {
+                        consumer.accept(cluster);
+                    }
+                    cluster = new PhotoClusteringManager.PhotoCluster(photo.getClusterId());
+                }
+                cluster.getPhotos().add(photo);
+            }
+            if (cluster != null) {
+                consumer.accept(cluster);
+            }
+        }
+    }
+
     @Dao
     public interface PhotoDao {
 
@@ -57,6 +188,9 @@ public abstract class PhotoDatabase extends RoomDatabase {
         @Query("SELECT * FROM photos WHERE clusterId = :clusterId ORDER BY dateTaken")
         List<PhotoData> getPhotosByCluster(String clusterId);
 
+        @Query("SELECT * FROM photos WHERE clusterId IN (:clusterIds) ORDER BY clusterId, dateTaken")
+        List<PhotoData> getPhotosInClusters(List<String> clusterIds);
+
         @Query("SELECT * FROM photos WHERE timeCluster = :timeCluster ORDER BY dateTaken DESC")
         List<PhotoData> getPhotosByTimeCluster(String timeCluster);
 
@@ -69,6 +203,40 @@ public abstract class PhotoDatabase extends RoomDatabase {
         @Query("SELECT DISTINCT clusterId FROM photos WHERE clusterId IS NOT NULL")
         List<String> getAllClusterIds();
 
+        @Query("SELECT photoUri FROM photos")
+        List<String> getAllPhotoUris();
+
+        @Query("SELECT DISTINCT clusterId FROM photos WHERE photoUri IN (:uris) AND clusterId IS NOT NULL")
+        List<String> getClusterIdsForUris(List<String> uris);
+
+        // Column order must match PhotoProcessingService.linkToStoredLocations
+        @Query("SELECT clusterId, latitude, longitude FROM photos " +
+                "WHERE latitude BETWEEN :minLatitude AND :maxLatitude " +
+                "AND longitude BETWEEN :minLongitude AND :maxLongitude " +
+                "AND clusterId IS NOT NULL AND (latitude != 0.0 OR longitude != 0.0)")
+        Cursor getClusterPhotosInBounds(double minLatitude, double maxLatitude,
+                                        double minLongitude, double maxLongitude);
+
+        @Query("SELECT DISTINCT clusterId FROM photos WHERE clusterId IS NOT NULL " +
+                "AND dateTaken BETWEEN :fromTime AND :toTime")
+        List<String> getClusterIdsInTimeRange(long fromTime, long toTime);
+
+        @Query("SELECT dateTaken FROM photos WHERE photoUri IN (:uris)")
+        List<Long> getDatesTakenForUris(List<String> uris);
+
+        // All time clusters of one location cluster, see PhotoClusteringManager.getLocationPrefix.
+        // A range rather than substr() so the clusterId index applies; cluster IDs are ASCII.
+        @Query("SELECT * FROM photos WHERE clusterId >= :locationPrefix " +
+                "AND clusterId < :locationPrefix || char(127) ORDER BY dateTaken")
+        List<PhotoData> getPhotosByLocationPrefix(String locationPrefix);
+
+        @Query("SELECT locationName FROM photos WHERE clusterId >= :locationPrefix " +
+                "AND clusterId < :locationPrefix || char(127) LIMIT 1")
+        String getLocationNameByPrefix(String locationPrefix);
+
+        @Query("DELETE FROM photos WHERE photoUri IN (:uris)")
+        void deletePhotosByUri(List<String> uris);
+
         @Query("SELECT DISTINCT locationName FROM photos WHERE locationName IS NOT NULL")
         List<String> getAllLocationNames();
 
@@ -88,8 +256,82 @@ public abstract class PhotoDatabase extends RoomDatabase {
         @Query("SELECT * FROM photos WHERE latitude != 0.0 OR longitude != 0.0 ORDER BY dateTaken DESC")
         List<PhotoData> getPhotosWithLocation();
 
+        // Column order must match PhotoDatabase.streamClusters; the order is the clusterId index's
+        @Query("SELECT photoUri, dateTaken, latitude, longitude, clusterId, timeCluster, locationName, " +
+                "perceptualHash FROM photos WHERE clusterId IS NOT NULL ORDER BY clusterId, dateTaken")
+        Cursor getClusteredPhotosCursor();
+
         // Get recent photos (last 7 days)
         @Query("SELECT * FROM photos WHERE dateTaken > :sevenDaysAgo ORDER BY dateTaken DESC")
         List<PhotoData> getRecentPhotos(long sevenDaysAgo);
     }
-}
\ No newline at end of file
+
+    @Dao
+    public interface ClusterDao {
+
+        @Insert(onConflict = OnConflictStrategy.REPLACE)
+        void insertClusters(List<ClusterEntity> clusters);
+
+        @Query("SELECT * FROM clusters WHERE clusterId IN (:clusterIds)")
+        List<ClusterEntity> getClustersByIds(List<String> clusterIds);
+
+        @Query("DELETE FROM clusters WHERE clusterId IN (:clusterIds)")
+        void deleteClustersByIds(List<String> clusterIds);
+
+        // Drop index rows whose photos are gone, after any write to the photos table
+        @Query("DELETE FROM clusters WHERE clusterId NOT IN " +
+                "(SELECT DISTINCT clusterId FROM photos WHERE clusterId IS NOT NULL)")
+        void deleteOrphanedClusters();
+
+        // The earliest time cluster of a location cluster starts at its earliest located photo,
+        // see PhotoClusteringManager.generateTimeId; rows without photos left are skipped
+        @Query("SELECT MIN(CAST(substr(clusterId, length(:locationPrefix) + 1) AS INTEGER)) FROM clusters " +
+                "WHERE clusterId >= :locationPrefix AND clusterId < :locationPrefix || char(127) " +
+                "AND EXISTS (SELECT 1 FROM photos WHERE photos.clusterId = clusters.clusterId)")
+        Long getEarliestLocatedTime(String locationPrefix);
+
+        @Query("SELECT * FROM clusters WHERE cellRow BETWEEN :minRow AND :maxRow " +
+                "AND cellColumn BETWEEN :minColumn AND :maxColumn " +
+                "AND startTime <= :toTime AND endTime >= :fromTime")
+        List<ClusterEntity> getClustersInCells(int minRow, int maxRow, int minColumn, int maxColumn,
+                                               long fromTime, long toTime);
+
+        @Query("SELECT * FROM clusters WHERE lastUsedAt < :usedBefore AND photoCount >= :minPhotos " +
+                "ORDER BY photoCount DESC LIMIT :limit")
+        List<ClusterEntity> getClustersNotUsedSince(long usedBefore, int minPhotos, int limit);
+
+        @Query("SELECT * FROM clusters WHERE photoCount >= :minPhotos ORDER BY RANDOM() LIMIT :limit")
+        List<ClusterEntity> getRandomClusters(int minPhotos, int limit);
+
+        @Query("UPDATE clusters SET lastUsedAt = :usedAt WHERE clusterId = :clusterId")
+        void markClusterUsed(String clusterId, long usedAt);
+
+        @Query("SELECT COUNT(*) FROM clusters")
+        int getClusterCount();
+
+        @Query("DELETE FROM clusters")
+        void deleteAllClusters();
+    }
+
+    @Dao
+    public interface DuplicateDao {
+
+        @Insert(onConflict = OnConflictStrategy.REPLACE)
+        void insertDuplicates(List<PhotoDuplicate> duplicates);
+
+        @Query("SELECT photoUri FROM photo_duplicates")
+        List<String> getAllDuplicateUris();
+
+        @Query("SELECT * FROM photo_duplicates WHERE representativeUri IN (:representativeUris)")
+        List<PhotoDuplicate> getDuplicatesOf(List<String> representativeUris);
+
+        @Query("DELETE FROM photo_duplicates WHERE photoUri IN (:uris)")
+        void deleteDuplicatesByUri(List<String> uris);
+
+        @Query("SELECT COUNT(*) FROM photo_duplicates")
+        int getDuplicateCount();
+
+        @Query("DELETE FROM photo_duplicates")
+        void deleteAllDuplicates();
+    }
+}
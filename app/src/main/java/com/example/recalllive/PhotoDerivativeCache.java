@@ -0,0 +1,326 @@
+package com.example.recalllive;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Small, ready-to-use versions of each photo, written once so videos and the quiz never decode
+ * a 12 MP original more than once.
+ *
+ * One decode of the original (subsampled to just above the largest level) yields every level.
+ * Files live under the app cache directory, keyed by the photo's MediaStore id, and are
+ * evicted least recently used once they pass MAX_BYTES. Ingestion pre-generates derivatives
+ * for the newest photos; anything else is generated on its first load.
+ */
+public class PhotoDerivativeCache {
+    private static final String TAG = "PhotoDerivativeCache";
+    private static final String DIRECTORY = "photo_derivatives";
+    private static final long MAX_BYTES = 256L * 1024 * 1024;
+    // Evict down to this much, so trimming does not run on every write
+    private static final long TRIM_TO_BYTES = MAX_BYTES * 9 / 10;
+    // A full ingest only pre-generates the newest photos; more would just be evicted again
+    private static final int PREFETCH_LIMIT = 300;
+
+    public enum Level {
+        /** The exact frame the video encoder takes: portrait, stretched to 720x1280 */
+        ENCODE("encode", 720, true),
+        /** Portrait, aspect kept, short edge 720, for full-width display such as the quiz */
+        DISPLAY("display", 720, false),
+        /** Portrait, aspect kept, short edge 240, for lists */
+        THUMBNAIL("thumb", 240, false);
+
+        static final int ENCODE_WIDTH = 720;
+        static final int ENCODE_HEIGHT = 1280;
+
+        private final String suffix;
+        private final int shortEdge;
+        private final boolean exactFrame;
+
+        Level(String suffix, int shortEdge, boolean exactFrame) {
+            this.suffix = suffix;
+            this.shortEdge = shortEdge;
+            this.exactFrame = exactFrame;
+        }
+    }
+
+    private static PhotoDerivativeCache INSTANCE;
+
+    private final Context context;
+    private final File directory;
+    private final Object trimLock = new Object();
+    private long totalBytes = -1; // measured on the first write
+
+    private PhotoDerivativeCache(Context context) {
+        this.context = context;
+        this.directory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    public static synchronized PhotoDerivativeCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new PhotoDerivativeCache(context.getApplicationContext());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * The photo at this level, from the cache or else from one decode of the original, which
+     * also fills the other levels. Null if the photo cannot be read. Blocks on disk I/O.
+     */
+    public Bitmap load(String photoUri, Level level) {
+        File file = fileFor(photoUri, level);
+        if (file.exists()) {
+            Bitmap cached = BitmapFactory.decodeFile(file.getPath(), decodeOptions());
+            if (cached != null) {
+                file.setLastModified(System.currentTimeMillis());
+                return cached;
+            }
+        }
+
+        Bitmap[] levels = generate(photoUri);
+        if (levels == null) {
+            return null;
+        }
+        Bitmap wanted = levels[level.ordinal()];
+        for (Bitmap bitmap : levels) {
+            // Small originals can share one bitmap between levels
+            if (bitmap != wanted) {
+                bitmap.recycle();
+            }
+        }
+        return wanted;
+    }
+
+    /**
+     * Generate derivatives for the newest photos in the background, regenerating any that
+     * exist, since ingestion only hands over new or modified photos
+     */
+    public void prefetch(List<PhotoData> photos) {
+        if (photos.isEmpty()) {
+            return;
+        }
+
+        List<String> newest = new ArrayList<>();
+        List<PhotoData> ordered = new ArrayList<>(photos);
+        ordered.sort(Comparator.comparingLong(PhotoData::getDateTaken).reversed());
+        for (int i = 0; i < Math.min(PREFETCH_LIMIT, ordered.size()); i++) {
+            newest.add(ordered.get(i).getPhotoUri());
+        }
+
+        // One task working through the list, so EXIF scans keep the other media I/O threads
+        AppExecutors.getInstance().mediaIO().execute(() -> {
+            int generated = 0;
+            for (String uri : newest) {
+                Bitmap[] levels = generate(uri);
+                if (levels != null) {
+                    generated++;
+                    for (Bitmap bitmap : levels) {
+                        bitmap.recycle();
+                    }
+                }
+            }
+            Log.d(TAG, "Pre-generated derivatives for " + generated + " of " + newest.size() + " photos");
+        });
+    }
+
+    /**
+     * Drop the derivatives of photos that left MediaStore
+     */
+    public void remove(Collection<String> photoUris) {
+        long freed = 0;
+        for (String uri : photoUris) {
+            for (Level level : Level.values()) {
+                File file = fileFor(uri, level);
+                long length = file.length();
+                if (file.delete()) {
+                    freed += length;
+                }
+            }
+        }
+        synchronized (trimLock) {
+            if (totalBytes >= 0) {
+                totalBytes -= freed;
+            }
+        }
+    }
+
+    /**
+     * Decode the original once and write every level. The returned bitmaps are in Level order.
+     */
+    private Bitmap[] generate(String photoUri) {
+        Bitmap portrait = decodePortrait(photoUri, Level.DISPLAY.shortEdge);
+        if (portrait == null) {
+            return null;
+        }
+
+        Bitmap[] levels = new Bitmap[Level.values().length];
+        for (Level level : Level.values()) {
+            Bitmap bitmap = scale(portrait, level);
+            write(bitmap, fileFor(photoUri, level));
+            levels[level.ordinal()] = bitmap;
+        }
+        if (!Arrays.asList(levels).contains(portrait)) {
+            portrait.recycle();
+        }
+        return levels;
+    }
+
+    /**
+     * The original, subsampled to keep its short edge at least minShortEdge and turned
+     * portrait the same way videos and the quiz always have
+     */
+    private Bitmap decodePortrait(String photoUri, int minShortEdge) {
+        Uri uri = Uri.parse(photoUri);
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    return null;
+                }
+                BitmapFactory.decodeStream(in, null, bounds);
+            }
+            int shortEdge = Math.min(bounds.outWidth, bounds.outHeight);
+            if (shortEdge <= 0) {
+                return null;
+            }
+
+            BitmapFactory.Options options = decodeOptions();
+            options.inSampleSize = 1;
+            while (shortEdge / (options.inSampleSize * 2) >= minShortEdge) {
+                options.inSampleSize *= 2;
+            }
+            Bitmap bitmap;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    return null;
+                }
+                bitmap = BitmapFactory.decodeStream(in, null, options);
+            }
+            if (bitmap == null || bitmap.getWidth() <= bitmap.getHeight()) {
+                return bitmap;
+            }
+
+            Matrix matrix = new Matrix();
+            matrix.postRotate(90);
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (rotated != bitmap) {
+                bitmap.recycle();
+            }
+            return rotated;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to decode " + photoUri + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Bitmap scale(Bitmap portrait, Level level) {
+        if (level.exactFrame) {
+            return Bitmap.createScaledBitmap(portrait, Level.ENCODE_WIDTH, Level.ENCODE_HEIGHT, true);
+        }
+        int shortEdge = portrait.getWidth();
+        if (shortEdge <= level.shortEdge) {
+            return portrait;
+        }
+        int height = (int) ((long) portrait.getHeight() * level.shortEdge / shortEdge);
+        return Bitmap.createScaledBitmap(portrait, level.shortEdge, Math.max(1, height), true);
+    }
+
+    /**
+     * Same color setup the quiz and video decoders have always used
+     */
+    private static BitmapFactory.Options decodeOptions() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inPremultiplied = true;
+        options.inDither = false;
+        options.inScaled = false;
+        return options;
+    }
+
+    private void write(Bitmap bitmap, File file) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        // Written aside and renamed, so a reader never sees half a file
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + file.getName() + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+
+        long previous = file.length();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        trim(file.length() - previous);
+    }
+
+    /**
+     * Account for a write and evict the least recently used files once over budget
+     */
+    private void trim(long addedBytes) {
+        synchronized (trimLock) {
+            File[] files = null;
+            if (totalBytes < 0) {
+                files = directory.listFiles();
+                totalBytes = 0;
+                for (File file : files != null ? files : new File[0]) {
+                    totalBytes += file.length();
+                }
+            } else {
+                totalBytes += addedBytes;
+            }
+            if (totalBytes <= MAX_BYTES) {
+                return;
+            }
+
+            if (files == null) {
+                files = directory.listFiles();
+            }
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (totalBytes <= TRIM_TO_BYTES) {
+                    break;
+                }
+                long length = file.length();
+                if (file.delete()) {
+                    totalBytes -= length;
+                }
+            }
+            Log.d(TAG, "Trimmed derivative cache to " + (totalBytes / 1024) + " KB");
+        }
+    }
+
+    /**
+     * MediaStore row URIs are keyed by their id; anything else by a hash of the URI
+     */
+    private File fileFor(String photoUri, Level level) {
+        String key = Uri.parse(photoUri).getLastPathSegment();
+        if (key == null || !key.matches("\\d+")) {
+            key = "u" + Integer.toHexString(photoUri.hashCode());
+        }
+        return new File(directory, key + "_" + level.suffix + ".jpg");
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.recalllive;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A photo collapsed into a near-identical representative (see NearDuplicateCollapser).
+ *
+ * Duplicates stay out of the photos table, but are remembered here so incremental scans do
+ * not treat them as new, and so one can take over when its representative is deleted.
+ */
+@Entity(tableName = "photo_duplicates",
+        indices = {@Index("representativeUri")})
+public class PhotoDuplicate {
+
+    @PrimaryKey
+    @NonNull
+    private String photoUri;
+    @NonNull
+    private String representativeUri;
+    private long dateTaken;
+    private double latitude;
+    private double longitude;
+    private String timeCluster;
+    private long perceptualHash;
+
+    public PhotoDuplicate(@NonNull String photoUri, @NonNull String representativeUri) {
+        this.photoUri = photoUri;
+        this.representativeUri = representativeUri;
+    }
+
+    public static PhotoDuplicate of(PhotoData photo, PhotoData representative) {
+        PhotoDuplicate duplicate = new PhotoDuplicate(photo.getPhotoUri(), representative.getPhotoUri());
+        duplicate.setDateTaken(photo.getDateTaken());
+        duplicate.setLatitude(photo.getLatitude());
+        duplicate.setLongitude(photo.getLongitude());
+        duplicate.setTimeCluster(photo.getTimeCluster());
+        duplicate.setPerceptualHash(photo.getPerceptualHash());
+        return duplicate;
+    }
+
+    /**
+     * The duplicate as a photo again, e.g. to promote it once its representative is gone
+     */
+    public PhotoData toPhoto() {
+        PhotoData photo = new PhotoData(photoUri);
+        photo.setDateTaken(dateTaken);
+        photo.setLatitude(latitude);
+        photo.setLongitude(longitude);
+        photo.setTimeCluster(timeCluster);
+        photo.setPerceptualHash(perceptualHash);
+        return photo;
+    }
+
+    @NonNull
+    public String getPhotoUri() {
+        return photoUri;
+    }
+
+    public void setPhotoUri(@NonNull String photoUri) {
+        this.photoUri = photoUri;
+    }
+
+    @NonNull
+    public String getRepresentativeUri() {
+        return representativeUri;
+    }
+
+    public void setRepresentativeUri(@NonNull String representativeUri) {
+        this.representativeUri = representativeUri;
+    }
+
+    public long getDateTaken() {
+        return dateTaken;
+    }
+
+    public void setDateTaken(long dateTaken) {
+        this.dateTaken = dateTaken;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public String getTimeCluster() {
+        return timeCluster;
+    }
+
+    public void setTimeCluster(String timeCluster) {
+        this.timeCluster = timeCluster;
+    }
+
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+}
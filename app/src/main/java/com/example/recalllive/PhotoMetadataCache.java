@@ -0,0 +1,161 @@
+package com.example.recalllive;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Dao;
+import androidx.room.Database;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoded photo metadata keyed by MediaStore file identity, so a full re-ingest only reads
+ * EXIF for files that are new or changed.
+ *
+ * Lives in its own database rather than PhotoDatabase, so it survives whatever empties the
+ * library, such as the destructive fallback on a downgrade, and makes the re-ingest that
+ * follows cheap. Being only a cache, it keeps a destructive fallback of its own instead of
+ * migrations. Lookups are safe from the EXIF worker threads; new entries are queued and
+ * written in batches by flush.
+ */
+public class PhotoMetadataCache {
+    private static final String TAG = "PhotoMetadataCache";
+    private static final String DATABASE_NAME = "photo_metadata_cache";
+    // Stays under SQLite's bound variable limit for IN (...) queries
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    private static PhotoMetadataCache INSTANCE;
+
+    private final MetadataDao dao;
+    private final ConcurrentLinkedQueue<PhotoMetadataEntity> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private PhotoMetadataCache(MetadataDao dao) {
+        this.dao = dao;
+    }
+
+    public static synchronized PhotoMetadataCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            CacheDatabase database = Room.databaseBuilder(
+                            context.getApplicationContext(),
+                            CacheDatabase.class,
+                            DATABASE_NAME)
+                    .fallbackToDestructiveMigration() // only a cache, refilled on the next scan
+                    .build();
+            INSTANCE = new PhotoMetadataCache(database.metadataDao());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * The cached photo for this file identity, or null (counted as a miss) if it is unknown or
+     * the file changed since
+     */
+    public PhotoData lookup(long mediaId, long size, long dateModified, String photoUri) {
+        PhotoMetadataEntity entity;
+        try {
+            entity = dao.getById(mediaId);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading metadata cache: " + e.getMessage());
+            entity = null;
+        }
+        if (entity == null || !entity.matches(size, dateModified)) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entity.toPhoto(photoUri);
+    }
+
+    /**
+     * Queue a freshly extracted photo for the next flush
+     */
+    public void put(long mediaId, long size, long dateModified, PhotoData photo) {
+        pendingWrites.add(PhotoMetadataEntity.fromPhoto(mediaId, size, dateModified, photo));
+        pendingCount.incrementAndGet();
+    }
+
+    public boolean hasFullBatch() {
+        return pendingCount.get() >= WRITE_BATCH_SIZE;
+    }
+
+    /**
+     * Write every queued entry
+     */
+    public void flush() {
+        List<PhotoMetadataEntity> batch = new ArrayList<>();
+        PhotoMetadataEntity entity;
+        while ((entity = pendingWrites.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(entity);
+            if (batch.size() == WRITE_BATCH_SIZE) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        write(batch);
+    }
+
+    /**
+     * Forget files that left MediaStore
+     */
+    public void remove(List<Long> mediaIds) {
+        try {
+            for (int i = 0; i < mediaIds.size(); i += WRITE_BATCH_SIZE) {
+                dao.deleteByIds(mediaIds.subList(i, Math.min(i + WRITE_BATCH_SIZE, mediaIds.size())));
+            }
+        } catch (Exception e) {
+            // Stale rows never match a new file, they only take space
+            Log.e(TAG, "Error pruning metadata cache: " + e.getMessage());
+        }
+    }
+
+    private void write(List<PhotoMetadataEntity> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            dao.insertAll(batch);
+        } catch (Exception e) {
+            // Losing cache entries only costs a re-read later
+            Log.e(TAG, "Error writing metadata cache: " + e.getMessage());
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Database(entities = {PhotoMetadataEntity.class}, version = 2, exportSchema = false)
+    public abstract static class CacheDatabase extends RoomDatabase {
+        public abstract MetadataDao metadataDao();
+    }
+
+    @Dao
+    public interface MetadataDao {
+
+        @Insert(onConflict = OnConflictStrategy.REPLACE)
+        void insertAll(List<PhotoMetadataEntity> entities);
+
+        @Query("SELECT * FROM photo_metadata WHERE mediaId = :mediaId")
+        PhotoMetadataEntity getById(long mediaId);
+
+        @Query("DELETE FROM photo_metadata WHERE mediaId IN (:mediaIds)")
+        void deleteByIds(List<Long> mediaIds);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.recalllive;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Decoded EXIF metadata of one MediaStore image, valid while the file keeps its size and
+ * DATE_MODIFIED. The MediaStore _ID alone is reused after deletes, so all three must match.
+ */
+@Entity(tableName = "photo_metadata")
+public class PhotoMetadataEntity {
+
+    @PrimaryKey
+    private long mediaId;
+    private long size;
+    private long dateModified;
+    private long dateTaken;
+    private double latitude;
+    private double longitude;
+    private String timeCluster;
+    private long perceptualHash;
+
+    public PhotoMetadataEntity(long mediaId, long size, long dateModified) {
+        this.mediaId = mediaId;
+        this.size = size;
+        this.dateModified = dateModified;
+    }
+
+    /**
+     * Cache row for a freshly extracted photo
+     */
+    public static PhotoMetadataEntity fromPhoto(long mediaId, long size, long dateModified, PhotoData photo) {
+        PhotoMetadataEntity entity = new PhotoMetadataEntity(mediaId, size, dateModified);
+        entity.setDateTaken(photo.getDateTaken());
+        entity.setLatitude(photo.getLatitude());
+        entity.setLongitude(photo.getLongitude());
+        entity.setTimeCluster(photo.getTimeCluster());
+        entity.setPerceptualHash(photo.getPerceptualHash());
+        return entity;
+    }
+
+    /**
+     * The cached metadata as a photo with the given URI
+     */
+    public PhotoData toPhoto(String photoUri) {
+        PhotoData photo = new PhotoData(photoUri);
+        photo.setDateTaken(dateTaken);
+        photo.setLatitude(latitude);
+        photo.setLongitude(longitude);
+        photo.setTimeCluster(timeCluster);
+        photo.setPerceptualHash(perceptualHash);
+        return photo;
+    }
+
+    public boolean matches(long size, long dateModified) {
+        return this.size == size && this.dateModified == dateModified;
+    }
+
+    public long getMediaId() {
+        return mediaId;
+    }
+
+    public void setMediaId(long mediaId) {
+        this.mediaId = mediaId;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getDateModified() {
+        return dateModified;
+    }
+
+    public void setDateModified(long dateModified) {
+        this.dateModified = dateModified;
+    }
+
+    public long getDateTaken() {
+        return dateTaken;
+    }
+
+    public void setDateTaken(long dateTaken) {
+        this.dateTaken = dateTaken;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public String getTimeCluster() {
+        return timeCluster;
+    }
+
+    public void setTimeCluster(String timeCluster) {
+        this.timeCluster = timeCluster;
+    }
+
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+}
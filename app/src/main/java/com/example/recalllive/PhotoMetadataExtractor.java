@@ -1,84 +1,507 @@
 package com.example.recalllive;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.MediaStore;
 import android.util.Log;
+import android.util.Size;
 
 import androidx.exifinterface.media.ExifInterface;
 
 import com.example.recalllive.PhotoData;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 public class PhotoMetadataExtractor {
     private static final String TAG = "PhotoMetadataExtractor";
+    private static final String PREFS_NAME = "RecallLive";
+    // Stays under SQLite's bound variable limit for IN (...) queries
+    private static final int SQL_BATCH_SIZE = 500;
+    // EXIF reads waiting or running at once; enough to keep every media I/O thread busy
+    private static final int EXIF_READS_IN_FLIGHT = 32;
+    private static final int PROGRESS_INTERVAL = 100;
+    // Smallest decode edge for a perceptual hash; a few pixels per cell of its 9x8 grid
+    private static final int HASH_DECODE_SIZE = 64;
+    // SimpleDateFormat is not thread-safe and EXIF is read on several threads
+    private static final ThreadLocal<SimpleDateFormat> EXIF_DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US));
+    private static final ThreadLocal<ExifHeaderParser> EXIF_HEADER_PARSER =
+            ThreadLocal.withInitial(() -> new ExifHeaderParser(TimeZone.getDefault()));
     private final Context context;
-    private final SimpleDateFormat exifDateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+    private final Executor exifExecutor;
+    private final PhotoMetadataCache metadataCache;
+    private final MediaStoreFilter filter;
+    // Watermark of the last successful scan, persisted once its photos are stored
+    private ScanWatermark pendingWatermark;
+
+    /**
+     * Progress of a MediaStore scan, reported on the scanning thread
+     */
+    public interface ProgressListener {
+        void onProgress(int processed, int total);
+    }
 
     public PhotoMetadataExtractor(Context context) {
+        this(context, AppExecutors.getInstance().mediaIO(), PhotoMetadataCache.getInstance(context),
+                MediaStoreFilter.getDefault());
+    }
+
+    /**
+     * @param exifExecutor runs the EXIF reads, or null to read them serially on the scanning thread
+     * @param metadataCache consulted before any file is opened, or null to always read EXIF
+     * @param filter rows every scan leaves out in the query itself
+     */
+    public PhotoMetadataExtractor(Context context, Executor exifExecutor, PhotoMetadataCache metadataCache,
+                                  MediaStoreFilter filter) {
         this.context = context;
+        this.exifExecutor = exifExecutor;
+        this.metadataCache = metadataCache;
+        this.filter = filter;
+    }
+
+    /**
+     * Hand every photo to the consumer in dateTaken order without keeping any of them.
+     * Rows without a MediaStore date are read first and held until the stream reaches their
+     * EXIF date. Returns false if the scan failed.
+     */
+    public boolean streamAllPhotos(Consumer<PhotoData> consumer) {
+        return streamAllPhotos(consumer, null);
+    }
+
+    public boolean streamAllPhotos(Consumer<PhotoData> consumer, ProgressListener progress) {
+        ScanWatermark watermark = ScanWatermark.start(context);
+        boolean scanned = scanInDateOrder(null, null, Collections.emptySet(), consumer, watermark, progress);
+        pendingWatermark = scanned ? watermark : null;
+        return scanned;
+    }
+
+    /**
+     * streamAllPhotos for a resumed ingest: only rows taken at or after fromTime, plus every
+     * row without a MediaStore date, leaving out skipUris
+     */
+    public boolean streamPhotosTakenSince(long fromTime, Set<String> skipUris, Consumer<PhotoData> consumer,
+                                          ProgressListener progress) {
+        ScanWatermark watermark = ScanWatermark.start(context);
+        boolean scanned = scanInDateOrder(MediaStore.Images.Media.DATE_TAKEN + " >= ?",
+                new String[]{String.valueOf(fromTime)}, skipUris, consumer, watermark, progress);
+        pendingWatermark = scanned ? watermark : null;
+        return scanned;
+    }
+
+    /**
+     * Scan the dated rows matching selection in dateTaken order, with every undated row merged
+     * in at its EXIF date. An undated row's date is only known once its file has been read, and
+     * can fall anywhere in the library, so those rows are all extracted up front and held.
+     */
+    private boolean scanInDateOrder(String selection, String[] selectionArgs, Set<String> skipUris,
+                                    Consumer<PhotoData> consumer, ScanWatermark watermark,
+                                    ProgressListener progress) {
+        String dateTaken = MediaStore.Images.Media.DATE_TAKEN;
+        List<PhotoData> undated = new ArrayList<>();
+        if (!scanMediaStore(dateTaken + " IS NULL OR " + dateTaken + " <= 0", null, skipUris,
+                null, undated::add, null, watermark, null)) {
+            return false;
+        }
+        undated.sort(Comparator.comparingLong(PhotoData::getDateTaken));
+        ArrayDeque<PhotoData> held = new ArrayDeque<>(undated);
+
+        String dated = dateTaken + " > 0";
+        boolean scanned = scanMediaStore(selection == null ? dated : dated + " AND (" + selection + ")",
+                selectionArgs, skipUris, dateTaken + " ASC", photo -> {
+                    while (!held.isEmpty() && held.peek().getDateTaken() <= photo.getDateTaken()) {
+                        consumer.accept(held.poll());
+                    }
+                    consumer.accept(photo);
+                }, null, watermark, progress);
+        if (!scanned) {
+            return false;
+        }
+        while (!held.isEmpty()) {
+            consumer.accept(held.poll());
+        }
+        return true;
+    }
+
+    /**
+     * Extract only photos that are not stored yet, and report stored photos that are gone.
+     * EXIF is only read for the new rows.
+     */
+    public ScanResult extractNewPhotos(Set<String> knownUris) {
+        List<PhotoData> added = new ArrayList<>();
+        Set<String> presentUris = new HashSet<>();
+        ScanWatermark watermark = ScanWatermark.start(context);
+
+        if (!scanMediaStore(null, null, knownUris, MediaStore.Images.Media.DATE_TAKEN + " DESC",
+                added::add, presentUris, watermark, null)) {
+            // Never report deletions from a scan that did not finish
+            pendingWatermark = null;
+            return new ScanResult(added, Collections.emptySet());
+        }
+
+        Set<String> removed = new HashSet<>(knownUris);
+        removed.removeAll(presentUris);
+        forgetCachedMetadata(removed);
+        pendingWatermark = watermark;
+        return new ScanResult(added, removed);
+    }
+
+    /**
+     * Extract only photos added or modified since the last committed scan, and report stored
+     * photos that are gone. Changed rows are selected by the watermark, so EXIF is only read
+     * for them; deletions come from diffing the _ID column alone. Modified photos are reported
+     * as added. Falls back to extractNewPhotos when there is no usable watermark.
+     */
+    public ScanResult extractChangedPhotos(Set<String> knownUris) {
+        ScanWatermark last = ScanWatermark.load(context);
+        if (last == null) {
+            Log.d(TAG, "No scan watermark, diffing the whole library");
+            return extractNewPhotos(knownUris);
+        }
+
+        pendingWatermark = null;
+        Set<String> presentUris = queryPresentUris();
+        if (presentUris == null) {
+            return new ScanResult(new ArrayList<>(), Collections.emptySet());
+        }
+
+        List<PhotoData> changed = new ArrayList<>();
+        ScanWatermark watermark = last.next();
+        if (!scanMediaStore(last.getSelection(), last.getSelectionArgs(), Collections.emptySet(),
+                MediaStore.Images.Media.DATE_TAKEN + " DESC", changed::add, null, watermark, null)) {
+            return new ScanResult(new ArrayList<>(), Collections.emptySet());
+        }
+
+        // Rows the watermark has passed but that were never stored, e.g. after the database was cleared
+        Set<String> missingUris = new HashSet<>(presentUris);
+        missingUris.removeAll(knownUris);
+        for (PhotoData photo : changed) {
+            missingUris.remove(photo.getPhotoUri());
+        }
+        List<String> missingIds = new ArrayList<>();
+        for (String uri : missingUris) {
+            missingIds.add(Uri.parse(uri).getLastPathSegment());
+        }
+        for (int i = 0; i < missingIds.size(); i += SQL_BATCH_SIZE) {
+            List<String> batch = missingIds.subList(i, Math.min(i + SQL_BATCH_SIZE, missingIds.size()));
+            String selection = MediaStore.Images.Media._ID + " IN ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+            if (!scanMediaStore(selection, batch.toArray(new String[0]), Collections.emptySet(),
+                    MediaStore.Images.Media.DATE_TAKEN + " DESC", changed::add, null, watermark, null)) {
+                return new ScanResult(new ArrayList<>(), Collections.emptySet());
+            }
+        }
+
+        Set<String> removed = new HashSet<>(knownUris);
+        removed.removeAll(presentUris);
+        forgetCachedMetadata(removed);
+        pendingWatermark = watermark;
+        return new ScanResult(changed, removed);
+    }
+
+    private void forgetCachedMetadata(Set<String> removedUris) {
+        if (metadataCache == null || removedUris.isEmpty()) {
+            return;
+        }
+        List<Long> mediaIds = new ArrayList<>();
+        for (String uri : removedUris) {
+            try {
+                mediaIds.add(Long.parseLong(Uri.parse(uri).getLastPathSegment()));
+            } catch (NumberFormatException e) {
+                // Not a MediaStore row URI, never cached
+            }
+        }
+        metadataCache.remove(mediaIds);
     }
 
     /**
-     * Extract all photos from device with metadata
+     * Persist the watermark of the last successful scan. Call once its photos are stored;
+     * until then the next scan picks up the same changes again.
      */
-    public List<PhotoData> extractAllPhotos() {
-        List<PhotoData> photoList = new ArrayList<>();
+    public void commitScanWatermark() {
+        if (pendingWatermark != null) {
+            pendingWatermark.save(context);
+            pendingWatermark = null;
+        }
+    }
+
+    /**
+     * URIs of every image in MediaStore the filter lets through, reading nothing but the _ID
+     * column. A stored photo the filter now excludes counts as removed. Null if the query failed.
+     */
+    private Set<String> queryPresentUris() {
+        try (Cursor cursor = context.getContentResolver().query(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                new String[]{MediaStore.Images.Media._ID},
+                filter.apply(null, Build.VERSION.SDK_INT),
+                filter.applyArgs(null, Build.VERSION.SDK_INT),
+                null)) {
+
+            if (cursor == null) {
+                return null;
+            }
+
+            Set<String> uris = new HashSet<>(cursor.getCount() * 2);
+            while (cursor.moveToNext()) {
+                uris.add(Uri.withAppendedPath(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                        String.valueOf(cursor.getLong(0))).toString());
+            }
+            return uris;
+        } catch (Exception e) {
+            Log.e(TAG, "Error listing photo IDs: " + e.getMessage());
+            return null;
+        }
+    }
 
-        String[] projection = {
+    /**
+     * Walk the MediaStore rows matching selection and the filter, extracting every row not in
+     * skipUris and advancing the watermark past all of them. EXIF is read on the EXIF executor
+     * while the cursor moves on, and the photos reach the sink in cursor order on this thread.
+     * Files the metadata cache knows unchanged are not opened at all. Files MediaStore already
+     * has a date and location for skip the EXIF read, and their perceptual hash comes from the
+     * thumbnail MediaStore keeps, so the original is only decoded when it has none yet.
+     * Returns false if the scan failed.
+     */
+    private boolean scanMediaStore(String selection, String[] selectionArgs, Set<String> skipUris,
+                                   String sortOrder, Consumer<PhotoData> sink, Set<String> presentUris,
+                                   ScanWatermark watermark, ProgressListener progress) {
+        List<String> projection = new ArrayList<>(Arrays.asList(
                 MediaStore.Images.Media._ID,
                 MediaStore.Images.Media.DATA,
                 MediaStore.Images.Media.DATE_TAKEN,
                 MediaStore.Images.Media.DATE_ADDED,
+                MediaStore.Images.Media.DATE_MODIFIED,
+                MediaStore.Images.Media.SIZE,
                 MediaStore.Images.Media.DISPLAY_NAME
-        };
+        ));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            projection.add(MediaStore.MediaColumns.GENERATION_MODIFIED);
+        }
+        // Filled in from EXIF by the media scanner until API 29, which redacts them. The
+        // orientation is only needed to turn pre-29 thumbnails upright for the hash.
+        boolean mediaStoreLocation = Build.VERSION.SDK_INT < Build.VERSION_CODES.Q;
+        if (mediaStoreLocation) {
+            projection.add(MediaStore.Images.Media.LATITUDE);
+            projection.add(MediaStore.Images.Media.LONGITUDE);
+            projection.add(MediaStore.Images.Media.ORIENTATION);
+        }
 
         ContentResolver contentResolver = context.getContentResolver();
         Uri imagesUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
 
         try (Cursor cursor = contentResolver.query(
                 imagesUri,
-                projection,
-                null,
-                null,
-                MediaStore.Images.Media.DATE_TAKEN + " DESC")) {
-
-            if (cursor != null) {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
-                int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-                int dateTakenColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_TAKEN);
-
-                while (cursor.moveToNext()) {
-                    long id = cursor.getLong(idColumn);
-                    String path = cursor.getString(pathColumn);
-                    long dateTaken = cursor.getLong(dateTakenColumn);
-
-                    Uri contentUri = Uri.withAppendedPath(
-                            MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                            String.valueOf(id)
-                    );
-
-                    PhotoData photo = extractPhotoMetadata(contentUri.toString(), path, dateTaken);
-                    if (photo != null) {
-                        photoList.add(photo);
-                    }
+                projection.toArray(new String[0]),
+                filter.apply(selection, Build.VERSION.SDK_INT),
+                filter.applyArgs(selectionArgs, Build.VERSION.SDK_INT),
+                sortOrder)) {
+
+            if (cursor == null) {
+                return false;
+            }
+
+            int total = cursor.getCount();
+            int[] counts = new int[2]; // skipped, extracted
+            long hitsBefore = metadataCache != null ? metadataCache.getHitCount() : 0;
+            long missesBefore = metadataCache != null ? metadataCache.getMissCount() : 0;
+            OrderedPipeline<MediaRow, PhotoData> pipeline = new OrderedPipeline<>(exifExecutor,
+                    EXIF_READS_IN_FLIGHT,
+                    this::extractRow,
+                    photo -> {
+                        if (photo != null) {
+                            sink.accept(photo);
+                        }
+                        if (metadataCache != null && metadataCache.hasFullBatch()) {
+                            metadataCache.flush();
+                        }
+                        if (progress != null && ++counts[1] % PROGRESS_INTERVAL == 0) {
+                            progress.onProgress(counts[0] + counts[1], total);
+                        }
+                    });
+
+            int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+            int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
+            int dateTakenColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_TAKEN);
+            int dateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED);
+            int sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.SIZE);
+            int generationColumn = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.GENERATION_MODIFIED) : -1;
+            int latitudeColumn = mediaStoreLocation
+                    ? cursor.getColumnIndexOrThrow(MediaStore.Images.Media.LATITUDE) : -1;
+            int longitudeColumn = mediaStoreLocation
+                    ? cursor.getColumnIndexOrThrow(MediaStore.Images.Media.LONGITUDE) : -1;
+            int orientationColumn = mediaStoreLocation
+                    ? cursor.getColumnIndexOrThrow(MediaStore.Images.Media.ORIENTATION) : -1;
+
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(idColumn);
+                long dateModified = cursor.getLong(dateModifiedColumn);
+                watermark.advance(id, dateModified,
+                        generationColumn >= 0 ? cursor.getLong(generationColumn) : 0);
+
+                Uri contentUri = Uri.withAppendedPath(
+                        MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                        String.valueOf(id)
+                );
+                String uri = contentUri.toString();
+
+                if (presentUris != null) {
+                    presentUris.add(uri);
                 }
+                if (skipUris.contains(uri)) {
+                    counts[0]++;
+                    continue;
+                }
+
+                MediaRow row = new MediaRow(id, uri, cursor.getString(pathColumn),
+                        cursor.getLong(dateTakenColumn), cursor.getLong(sizeColumn), dateModified);
+                if (latitudeColumn >= 0 && !cursor.isNull(latitudeColumn) && !cursor.isNull(longitudeColumn)) {
+                    row.setLocation(cursor.getDouble(latitudeColumn), cursor.getDouble(longitudeColumn));
+                }
+                if (orientationColumn >= 0) {
+                    row.orientation = cursor.getInt(orientationColumn);
+                }
+                pipeline.submit(row);
+            }
+
+            pipeline.finish();
+            if (progress != null) {
+                progress.onProgress(total, total);
+            }
+            if (metadataCache != null) {
+                metadataCache.flush();
+                Log.d(TAG, "Metadata cache: " + (metadataCache.getHitCount() - hitsBefore) + " hits, "
+                        + (metadataCache.getMissCount() - missesBefore) + " misses");
             }
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "Error extracting photos: " + e.getMessage());
+            return false;
         }
+    }
 
-        return photoList;
+    /**
+     * Cached metadata while the file is unchanged, otherwise a fresh extraction, which is cached
+     */
+    private PhotoData extractRow(MediaRow row) {
+        if (metadataCache != null) {
+            PhotoData cached = metadataCache.lookup(row.id, row.size, row.dateModified, row.uri);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        PhotoData photo = row.hasLocation() && row.dateTaken > 0
+                ? fromMediaStore(row) : extractPhotoMetadata(row.uri, row.path, row.dateTaken);
+        photo.setPerceptualHash(computePerceptualHash(row));
+        // Without a time cluster EXIF could not be read, and without a hash the thumbnail could
+        // not be decoded; both may work next time, so only complete results are cached
+        if (metadataCache != null && photo.getTimeCluster() != null
+                && photo.getPerceptualHash() != PerceptualHash.UNKNOWN) {
+            metadataCache.put(row.id, row.size, row.dateModified, photo);
+        }
+        return photo;
+    }
+
+    /**
+     * A photo built from its MediaStore row alone, without reading EXIF
+     */
+    private PhotoData fromMediaStore(MediaRow row) {
+        PhotoData photo = new PhotoData(row.uri);
+        photo.setDateTaken(row.dateTaken);
+        photo.setLatitude(row.latitude);
+        photo.setLongitude(row.longitude);
+        photo.setTimeCluster(getTimeCluster(row.dateTaken));
+        return photo;
+    }
+
+    /**
+     * dHash of MediaStore's thumbnail of the photo, or PerceptualHash.UNKNOWN if it cannot be
+     * decoded. Thumbnails are upright on API 29+; before that they are turned by the row's
+     * ORIENTATION, so hashes stay comparable across an OS upgrade. Only if MediaStore has no
+     * thumbnail is the file itself decoded, with the largest power-of-two subsampling that
+     * still covers HASH_DECODE_SIZE.
+     */
+    @SuppressWarnings("deprecation")
+    private long computePerceptualHash(MediaRow row) {
+        Bitmap bitmap = null;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                bitmap = context.getContentResolver().loadThumbnail(Uri.parse(row.uri),
+                        new Size(HASH_DECODE_SIZE, HASH_DECODE_SIZE), null);
+            } else {
+                BitmapFactory.Options thumbnailOptions = new BitmapFactory.Options();
+                // Mini thumbnails are at most 512x384
+                thumbnailOptions.inSampleSize = 4;
+                thumbnailOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+                bitmap = MediaStore.Images.Thumbnails.getThumbnail(context.getContentResolver(), row.id,
+                        MediaStore.Images.Thumbnails.MINI_KIND, thumbnailOptions);
+            }
+            if (bitmap == null && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q && row.path != null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(row.path, options);
+                int sampleSize = 1;
+                while (options.outWidth / (sampleSize * 2) >= HASH_DECODE_SIZE
+                        && options.outHeight / (sampleSize * 2) >= HASH_DECODE_SIZE) {
+                    sampleSize *= 2;
+                }
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = sampleSize;
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                bitmap = BitmapFactory.decodeFile(row.path, options);
+            }
+            if (bitmap == null) {
+                return PerceptualHash.UNKNOWN;
+            }
+            if (row.orientation != 0) {
+                Matrix matrix = new Matrix();
+                matrix.postRotate(row.orientation);
+                Bitmap upright = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
+                        matrix, false);
+                if (upright != bitmap) {
+                    bitmap.recycle();
+                    bitmap = upright;
+                }
+            }
+
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            return PerceptualHash.dHash(pixels, width, height);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not hash " + row.uri + ": " + e.getMessage());
+            return PerceptualHash.UNKNOWN;
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
     }
 
     /**
@@ -90,6 +513,12 @@ public class PhotoMetadataExtractor {
         // Set date taken from MediaStore
         photo.setDateTaken(dateTaken > 0 ? dateTaken : System.currentTimeMillis());
 
+        // Most files only need their header read; ExifInterface handles the rest
+        if (readExifHeader(photo, path, dateTaken)) {
+            photo.setTimeCluster(getTimeCluster(photo.getDateTaken()));
+            return photo;
+        }
+
         // Extract EXIF data for location and more precise date
         try {
             ExifInterface exif = new ExifInterface(path);
@@ -110,7 +539,7 @@ public class PhotoMetadataExtractor {
 
                 if (dateTime != null) {
                     try {
-                        Date date = exifDateFormat.parse(dateTime);
+                        Date date = EXIF_DATE_FORMAT.get().parse(dateTime);
                         if (date != null) {
                             photo.setDateTaken(date.getTime());
                         }
@@ -130,6 +559,35 @@ public class PhotoMetadataExtractor {
         return photo;
     }
 
+    /**
+     * Fill in location, and the EXIF date when MediaStore has none, from the file header alone.
+     * Returns false if the header parser could not handle the file.
+     */
+    private boolean readExifHeader(PhotoData photo, String path, long dateTaken) {
+        if (path == null) {
+            return false;
+        }
+
+        ExifHeaderParser parser = EXIF_HEADER_PARSER.get();
+        try (FileInputStream in = new FileInputStream(path);
+             FileChannel channel = in.getChannel()) {
+            if (!parser.parse(channel)) {
+                return false;
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+
+        if (parser.hasLocation()) {
+            photo.setLatitude(parser.getLatitude());
+            photo.setLongitude(parser.getLongitude());
+        }
+        if (dateTaken <= 0 && parser.getDateTime() != 0) {
+            photo.setDateTaken(parser.getDateTime());
+        }
+        return true;
+    }
+
     /**
      * Determine time cluster based on hour of day
      */
@@ -175,7 +633,7 @@ public class PhotoMetadataExtractor {
 
                 if (dateTime != null) {
                     try {
-                        Date date = exifDateFormat.parse(dateTime);
+                        Date date = EXIF_DATE_FORMAT.get().parse(dateTime);
                         if (date != null) {
                             photo.setDateTaken(date.getTime());
                         }
@@ -195,4 +653,146 @@ public class PhotoMetadataExtractor {
 
         return photo;
     }
+
+    /**
+     * The cursor columns one photo's extraction needs
+     */
+    private static final class MediaRow {
+        final long id;
+        final String uri;
+        final String path;
+        final long dateTaken;
+        final long size;
+        final long dateModified;
+        // From MediaStore where it still reports locations, otherwise 0
+        double latitude;
+        double longitude;
+        // Clockwise degrees to turn a pre-API 29 thumbnail upright
+        int orientation;
+
+        MediaRow(long id, String uri, String path, long dateTaken, long size, long dateModified) {
+            this.id = id;
+            this.uri = uri;
+            this.path = path;
+            this.dateTaken = dateTaken;
+            this.size = size;
+            this.dateModified = dateModified;
+        }
+
+        void setLocation(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        boolean hasLocation() {
+            return latitude != 0 || longitude != 0;
+        }
+    }
+
+    /**
+     * How far MediaStore has been scanned. On API 30+ the generation counter covers every
+     * insert and update; before that DATE_MODIFIED (in seconds) and the highest _ID stand in.
+     * A MediaStore version change means its database was rebuilt and the watermark is dropped.
+     */
+    static final class ScanWatermark {
+        private static final String KEY_VERSION = "scan_mediastore_version";
+        private static final String KEY_GENERATION = "scan_generation";
+        private static final String KEY_DATE_MODIFIED = "scan_date_modified";
+        private static final String KEY_MAX_ID = "scan_max_id";
+
+        private final String version;
+        private final long startSeconds;
+        private long generation;
+        private long dateModified;
+        private long maxId;
+
+        private ScanWatermark(String version, long generation, long dateModified, long maxId) {
+            this.version = version;
+            this.startSeconds = System.currentTimeMillis() / 1000;
+            this.generation = generation;
+            this.dateModified = dateModified;
+            this.maxId = maxId;
+        }
+
+        static ScanWatermark start(Context context) {
+            return new ScanWatermark(currentVersion(context), 0, 0, 0);
+        }
+
+        static ScanWatermark load(Context context) {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String version = prefs.getString(KEY_VERSION, null);
+            if (version == null || !version.equals(currentVersion(context))) {
+                return null;
+            }
+            return new ScanWatermark(version, prefs.getLong(KEY_GENERATION, 0),
+                    prefs.getLong(KEY_DATE_MODIFIED, 0), prefs.getLong(KEY_MAX_ID, 0));
+        }
+
+        private static String currentVersion(Context context) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? MediaStore.getVersion(context) : "";
+        }
+
+        /**
+         * A watermark for the next scan, starting from this one
+         */
+        ScanWatermark next() {
+            return new ScanWatermark(version, generation, dateModified, maxId);
+        }
+
+        void advance(long id, long rowDateModified, long rowGeneration) {
+            maxId = Math.max(maxId, id);
+            dateModified = Math.max(dateModified, rowDateModified);
+            generation = Math.max(generation, rowGeneration);
+        }
+
+        String getSelection() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                return MediaStore.MediaColumns.GENERATION_MODIFIED + " > ?";
+            }
+            return MediaStore.Images.Media.DATE_MODIFIED + " > ? OR " + MediaStore.Images.Media._ID + " > ?";
+        }
+
+        String[] getSelectionArgs() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                return new String[]{String.valueOf(generation)};
+            }
+            return new String[]{String.valueOf(dateModified), String.valueOf(maxId)};
+        }
+
+        void save(Context context) {
+            // Rows modified later in the same second as the scan must still count as changed
+            long safeDateModified = Math.min(dateModified, startSeconds - 1);
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(KEY_VERSION, version)
+                    .putLong(KEY_GENERATION, generation)
+                    .putLong(KEY_DATE_MODIFIED, safeDateModified)
+                    .putLong(KEY_MAX_ID, maxId)
+                    .apply();
+        }
+    }
+
+    /**
+     * Photos added since the last scan and URIs of stored photos that no longer exist
+     */
+    public static class ScanResult {
+        private final List<PhotoData> addedPhotos;
+        private final Set<String> removedUris;
+
+        public ScanResult(List<PhotoData> addedPhotos, Set<String> removedUris) {
+            this.addedPhotos = addedPhotos;
+            this.removedUris = removedUris;
+        }
+
+        public List<PhotoData> getAddedPhotos() {
+            return addedPhotos;
+        }
+
+        public Set<String> getRemovedUris() {
+            return removedUris;
+        }
+
+        public boolean isEmpty() {
+            return addedPhotos.isEmpty() && removedUris.isEmpty();
+        }
+    }
 }
@@ -1,21 +1,48 @@
 package com.example.recalllive;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class PhotoProcessingService {
     private static final String TAG = "PhotoProcessingService";
+    // Stays under SQLite's bound variable limit for IN (...) queries
+    private static final int SQL_BATCH_SIZE = 500;
+    // Photos buffered before a full ingest stores them, flushed at the next quiet gap
+    private static final int INGEST_FLUSH_PHOTOS = 2000;
+    // Flushed even without a gap, so a library without one still stores as it goes
+    private static final int INGEST_MAX_PENDING_PHOTOS = 4 * INGEST_FLUSH_PHOTOS;
+    // Queue bounds between ingest stages: enough to ride out hiccups, not to buffer the library
+    private static final int STAGE_QUEUE_PHOTOS = 1000;
+    private static final int STAGE_QUEUE_BATCHES = 4;
+    private static final int SYNC_BATCHES_IN_FLIGHT = 4;
+    private static final long SYNC_TIMEOUT_SECONDS = 60;
+    // Incremental runs from the daily worker and live ingestion share the scan watermark
+    private static final Object INCREMENTAL_LOCK = new Object();
 
     private final Context context;
     private final PhotoMetadataExtractor metadataExtractor;
     private final PhotoClusteringManager clusteringManager;
     private final PhotoDatabase database;
+    private final ClusterIndex clusterIndex;
+    private final PhotoDerivativeCache derivativeCache;
     private final FirebaseClusterManager firebaseClusterManager;
     private final Executor executor; // CHANGED: Use shared executor
     private String patientUid;
@@ -30,8 +57,10 @@ public class PhotoProcessingService {
     public PhotoProcessingService(Context context) {
         this.context = context;
         this.metadataExtractor = new PhotoMetadataExtractor(context);
-        this.clusteringManager = new PhotoClusteringManager();
+        this.clusteringManager = new PhotoClusteringManager(AppExecutors.getInstance().computePool());
         this.database = PhotoDatabase.getInstance(context);
+        this.clusterIndex = new ClusterIndex(database);
+        this.derivativeCache = PhotoDerivativeCache.getInstance(context);
         this.executor = AppExecutors.getInstance().diskIO(); // CHANGED: Use shared executor
 
         this.patientUid = getPatientUid();
@@ -46,8 +75,10 @@ public class PhotoProcessingService {
     public PhotoProcessingService(Context context, String patientUid) {
         this.context = context;
         this.metadataExtractor = new PhotoMetadataExtractor(context);
-        this.clusteringManager = new PhotoClusteringManager();
+        this.clusteringManager = new PhotoClusteringManager(AppExecutors.getInstance().computePool());
         this.database = PhotoDatabase.getInstance(context);
+        this.clusterIndex = new ClusterIndex(database);
+        this.derivativeCache = PhotoDerivativeCache.getInstance(context);
         this.executor = AppExecutors.getInstance().diskIO(); // CHANGED: Use shared executor
         this.patientUid = patientUid;
         this.firebaseClusterManager = new FirebaseClusterManager(context, patientUid);
@@ -63,42 +94,121 @@ public class PhotoProcessingService {
                 .getString("patient_uid", null);
     }
 
+    /**
+     * Full run as a staged pipeline. MediaStore extraction, clustering with its Room writes, and
+     * Firebase each run on a thread of their own with bounded queues in between, so a full
+     * ingest takes about as long as its slowest stage rather than the sum of all three. Photos are stored while
+     * they are read: each stretch of the stream is added to the stored library as an
+     * incremental delta, which yields the same clusters as one batch run over every photo.
+     * Per-stage throughput is logged at the end.
+     */
     public void processAllPhotos(ProcessingCallback callback) {
+        runFullIngest(callback);
+    }
+
+    /**
+     * Fast path for a new library: ingest only the photos taken in the last days and publish
+     * their clusters, so a first video can be made before the rest is read. The full ingest is
+     * left as interrupted, and finishInterruptedIngest adds the older photos around what is
+     * stored here. If photos are stored already, or a full ingest is under way, this is an
+     * ordinary processNewPhotos run instead.
+     */
+    public void processRecentPhotos(int days, ProcessingCallback callback) {
+        executor.execute(() -> {
+            synchronized (INCREMENTAL_LOCK) {
+                if (IngestCheckpoint.isInterrupted(context) || database.photoDao().getPhotoCount() > 0
+                        || database.duplicateDao().getDuplicateCount() > 0) {
+                    Log.d(TAG, "Library already ingested, processing recent photos as new photos");
+                    runNewPhotos(callback);
+                    return;
+                }
+                runRecentPhotos(days, callback);
+            }
+        });
+    }
+
+    private void runRecentPhotos(int days, ProcessingCallback callback) {
+        try {
+            if (callback != null) {
+                AppExecutors.getInstance().mainThread().execute(callback::onProcessingStarted);
+            }
+
+            List<PhotoClusteringManager.PhotoCluster> clusters = runRecentIngest(days, callback);
+            List<PhotoData> photos = new ArrayList<>();
+            for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+                photos.addAll(cluster.getPhotos());
+            }
+            derivativeCache.prefetch(photos);
+
+            if (callback != null) {
+                List<PhotoClusteringManager.PhotoCluster> finalClusters = clusters.isEmpty() ? null : clusters;
+                AppExecutors.getInstance().mainThread().execute(() ->
+                        callback.onProcessingComplete(finalClusters));
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing recent photos: " + e.getMessage());
+            if (callback != null) {
+                String error = e.getMessage();
+                AppExecutors.getInstance().mainThread().execute(() ->
+                        callback.onProcessingError(error));
+            }
+        }
+    }
+
+    /**
+     * Complete a full ingest that was interrupted or left for later by processRecentPhotos.
+     * Completes with a null cluster list, right away if there is nothing to finish.
+     */
+    public void finishInterruptedIngest(ProcessingCallback callback) {
         executor.execute(() -> {
             try {
                 if (callback != null) {
-                    // Post to main thread
                     AppExecutors.getInstance().mainThread().execute(callback::onProcessingStarted);
                 }
 
-                Log.d(TAG, "Extracting photo metadata...");
-                List<PhotoData> photos = metadataExtractor.extractAllPhotos();
-                Log.d(TAG, "Found " + photos.size() + " photos");
-
-                if (photos.isEmpty()) {
-                    if (callback != null) {
-                        AppExecutors.getInstance().mainThread().execute(() ->
-                                callback.onProcessingComplete(null));
+                synchronized (INCREMENTAL_LOCK) {
+                    if (IngestCheckpoint.isInterrupted(context)) {
+                        runIngestStages(callback, false);
                     }
-                    return;
                 }
 
-                Log.d(TAG, "Clustering photos...");
-                List<PhotoClusteringManager.PhotoCluster> clusters = clusteringManager.clusterPhotos(photos);
-                Log.d(TAG, "Created " + clusters.size() + " clusters");
+                if (callback != null) {
+                    AppExecutors.getInstance().mainThread().execute(() ->
+                            callback.onProcessingComplete(null));
+                }
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error finishing photo ingest: " + e.getMessage());
+                if (callback != null) {
+                    String error = e.getMessage();
+                    AppExecutors.getInstance().mainThread().execute(() ->
+                            callback.onProcessingError(error));
+                }
+            }
+        });
+    }
 
-                Log.d(TAG, "Storing in local database...");
-                storePhotosInDatabase(photos, callback);
+    private void runFullIngest(ProcessingCallback callback) {
+        executor.execute(() -> {
+            try {
+                if (callback != null) {
+                    // Post to main thread
+                    AppExecutors.getInstance().mainThread().execute(callback::onProcessingStarted);
+                }
 
-                Log.d(TAG, "Storing clusters in Firebase...");
-                if (firebaseClusterManager != null) {
-                    storeClustersInFirebase(clusters, callback);
-                } else {
-                    Log.e(TAG, "Firebase cluster manager not initialized");
+                List<PhotoClusteringManager.PhotoCluster> clusters;
+                synchronized (INCREMENTAL_LOCK) {
+                    clusters = runIngestStages(callback, true);
                 }
+                List<PhotoData> photos = new ArrayList<>();
+                for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+                    photos.addAll(cluster.getPhotos());
+                }
+                derivativeCache.prefetch(photos);
 
                 if (callback != null) {
-                    List<PhotoClusteringManager.PhotoCluster> finalClusters = clusters;
+                    List<PhotoClusteringManager.PhotoCluster> finalClusters = clusters.isEmpty() ? null : clusters;
                     AppExecutors.getInstance().mainThread().execute(() ->
                             callback.onProcessingComplete(finalClusters));
                 }
@@ -114,27 +224,743 @@ public class PhotoProcessingService {
         });
     }
 
-    private void storeClustersInFirebase(List<PhotoClusteringManager.PhotoCluster> clusters,
-                                         ProcessingCallback callback) {
-        if (firebaseClusterManager == null) {
-            Log.e(TAG, "Firebase cluster manager not initialized");
+    /**
+     * Extract on this thread and feed the cluster, persist and sync stages, resuming from the
+     * ingest checkpoint if an earlier run was interrupted. Returns every cluster of this run if
+     * keepClusters, otherwise null.
+     */
+    private List<PhotoClusteringManager.PhotoCluster> runIngestStages(ProcessingCallback callback,
+                                                                       boolean keepClusters) {
+        Map<String, PhotoClusteringManager.PhotoCluster> allClusters = keepClusters ? new LinkedHashMap<>() : null;
+        Semaphore syncPermits = new Semaphore(SYNC_BATCHES_IN_FLIGHT);
+
+        IngestCheckpoint checkpoint = IngestCheckpoint.getInstance(context);
+        boolean resuming = checkpoint.isActive();
+        if (resuming) {
+            Log.d(TAG, "Resuming ingest after " + checkpoint.getStoredBatches() + " stored batches, "
+                    + database.photoDao().getPhotoCount() + " photos already stored");
+        } else {
+            checkpoint.begin();
+            database.duplicateDao().deleteAllDuplicates();
+        }
+
+        PipelineStage<IngestBatch> syncStage = new PipelineStage<>("sync", STAGE_QUEUE_BATCHES,
+                new PipelineStage.Worker<IngestBatch>() {
+                    @Override
+                    public void process(IngestBatch batch) throws InterruptedException {
+                        syncBatch(batch, syncPermits, checkpoint);
+                    }
+
+                    @Override
+                    public void finish() throws InterruptedException {
+                        awaitSyncedBatches(syncPermits);
+                    }
+                });
+
+        // Each flush clusters against what is stored, so it waits until the previous batch is;
+        // photos keep streaming into the cluster stage meanwhile
+        Semaphore storedTurn = new Semaphore(1);
+        PipelineStage<IngestBatch> persistStage = new PipelineStage<>("persist", STAGE_QUEUE_BATCHES,
+                new PipelineStage.Worker<IngestBatch>() {
+                    @Override
+                    public void process(IngestBatch batch) {
+                        try {
+                            persistIngest(batch, checkpoint);
+                        } finally {
+                            // Also on failure, so the cluster stage finds out on its next put
+                            storedTurn.release();
+                        }
+                        syncStage.put(batch);
+                    }
+                });
+
+        // Only touched on the cluster stage's thread
+        List<PhotoData> pending = new ArrayList<>();
+        List<PhotoDuplicate> pendingDuplicates = new ArrayList<>();
+        int[] flushes = new int[1];
+        // Photos arrive in dateTaken order, so duplicates only need a sliding window
+        NearDuplicateCollapser collapser = new NearDuplicateCollapser();
+
+        PipelineStage<PhotoData> clusterStage = new PipelineStage<>("cluster", STAGE_QUEUE_PHOTOS,
+                new PipelineStage.Worker<PhotoData>() {
+                    @Override
+                    public void process(PhotoData photo) throws InterruptedException {
+                        // After a quiet gap of two time windows a flush changes the fewest stored clusters
+                        long gap = pending.isEmpty() ? 0
+                                : photo.getDateTaken() - pending.get(pending.size() - 1).getDateTaken();
+                        if (pending.size() >= INGEST_MAX_PENDING_PHOTOS || (pending.size() >= INGEST_FLUSH_PHOTOS
+                                && gap > 2 * PhotoClusteringManager.TIME_CLUSTER_WINDOW_MILLIS)) {
+                            flush(photo.getDateTaken());
+                        }
+
+                        PhotoData representative = collapser.offer(photo);
+                        if (representative != null) {
+                            pendingDuplicates.add(PhotoDuplicate.of(photo, representative));
+                        } else {
+                            pending.add(photo);
+                        }
+                    }
+
+                    @Override
+                    public void finish() throws InterruptedException {
+                        flush(Long.MAX_VALUE);
+                    }
+
+                    private void flush(long resumeFrom) throws InterruptedException {
+                        storedTurn.acquire();
+                        persistStage.put(clusterIngest(pending, pendingDuplicates, resumeFrom, allClusters));
+                        flushes[0]++;
+                    }
+                });
+
+        List<PipelineStage<?>> stages = Arrays.asList(clusterStage, persistStage, syncStage);
+        for (PipelineStage<?> stage : stages) {
+            stage.start();
+        }
+        // Clusters an earlier run stored but Firebase never confirmed
+        int[] totals = {database.photoDao().getClusterCount(), database.photoDao().getPhotoCount()};
+        for (IngestBatch batch : loadUnsyncedBatches(checkpoint, totals)) {
+            syncStage.put(batch);
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        boolean scanned;
+        try {
+            Log.d(TAG, "Extracting photo metadata...");
+            if (resuming) {
+                Set<String> storedUris = new HashSet<>(database.photoDao().getAllPhotoUris());
+                storedUris.addAll(database.duplicateDao().getAllDuplicateUris());
+                scanned = metadataExtractor.streamPhotosTakenSince(checkpoint.getResumeFrom(), storedUris,
+                        clusterStage::put, progressListener(callback));
+            } else {
+                scanned = metadataExtractor.streamAllPhotos(clusterStage::put, progressListener(callback));
+            }
+            long extractMillis = SystemClock.elapsedRealtime() - start;
+            Log.d(TAG, "extract: " + clusterStage.getProcessedCount() + " photos read in " + extractMillis + " ms");
+
+            // Whatever was read is stored either way; the watermark only moves after a full scan
+            for (PipelineStage<?> stage : stages) {
+                stage.finish();
+            }
+        } catch (RuntimeException e) {
+            for (PipelineStage<?> stage : stages) {
+                stage.cancel();
+            }
+            throw e;
+        }
+        if (!scanned) {
+            throw new IllegalStateException("MediaStore scan failed");
+        }
+
+        clusterIndex.pruneOrphans();
+        metadataExtractor.commitScanWatermark();
+        checkpoint.complete();
+        Log.d(TAG, "Ingested " + database.photoDao().getPhotoCount() + " photos into "
+                + database.photoDao().getClusterCount() + " clusters in "
+                + (SystemClock.elapsedRealtime() - start) + " ms over " + flushes[0] + " flushes");
+        for (PipelineStage<?> stage : stages) {
+            Log.d(TAG, stage.report());
+        }
+        return allClusters != null ? new ArrayList<>(allClusters.values()) : null;
+    }
+
+    /**
+     * Cluster one stretch of the stream as a delta to what is stored, the same way
+     * processNewPhotos adds new photos. Clustering every stretch against the stored library
+     * gives the same clusters and IDs as one batch run over the whole library, so later
+     * incremental runs find them as they left them. The previous stretch must be persisted
+     * first. Clears photos and duplicates and returns the batch for persistIngest.
+     */
+    private IngestBatch clusterIngest(List<PhotoData> photos, List<PhotoDuplicate> duplicates, long resumeFrom,
+                                      Map<String, PhotoClusteringManager.PhotoCluster> allClusters) {
+        PhotoMetadataExtractor.ScanResult delta =
+                new PhotoMetadataExtractor.ScanResult(new ArrayList<>(photos), new HashSet<>());
+        AffectedClusters affected = loadAffectedClusters(delta);
+        PhotoClusteringManager.IncrementalResult result = clusteringManager.clusterIncremental(
+                affected.clusters, delta.getAddedPhotos(), delta.getRemovedUris(),
+                affected.pinnedLocationNames, affected.addedPhotoLocations);
+
+        IngestBatch batch = new IngestBatch();
+        batch.clusters.addAll(result.getChangedClusters());
+        batch.removedClusterIds.addAll(result.getRemovedClusterIds());
+        batch.duplicates.addAll(duplicates);
+        batch.resumeFrom = resumeFrom;
+
+        if (allClusters != null) {
+            allClusters.keySet().removeAll(batch.removedClusterIds);
+            for (PhotoClusteringManager.PhotoCluster cluster : batch.clusters) {
+                allClusters.put(cluster.getClusterId(), cluster);
+            }
+        }
+        photos.clear();
+        duplicates.clear();
+        return batch;
+    }
+
+    /**
+     * Write a clustered stretch to Room and move the ingest checkpoint past it
+     */
+    private void persistIngest(IngestBatch batch, IngestCheckpoint checkpoint) {
+        storeBatch(batch);
+        checkpoint.markStored(batch.getClusterIds(), batch.resumeFrom);
+        batch.totalClusters = database.photoDao().getClusterCount();
+        batch.totalPhotos = database.photoDao().getPhotoCount();
+    }
+
+    /**
+     * Cluster, store and publish the photos taken in the last days of an empty library. They
+     * are stored like the first stretch of a full ingest, so the older photos it adds later are
+     * clustered around them as in one batch run.
+     */
+    private List<PhotoClusteringManager.PhotoCluster> runRecentIngest(int days, ProcessingCallback callback)
+            throws InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+        List<PhotoData> recent = new ArrayList<>();
+        // Rows without a MediaStore date are read too; their EXIF date decides
+        boolean scanned = metadataExtractor.streamPhotosTakenSince(cutoff, new HashSet<>(), photo -> {
+            if (photo.getDateTaken() >= cutoff) {
+                recent.add(photo);
+            }
+        }, progressListener(callback));
+        if (!scanned) {
+            throw new IllegalStateException("MediaStore scan failed");
+        }
+
+        // Nothing is stored yet, so the recent photos only collapse among themselves
+        NearDuplicateCollapser.Result collapsed = NearDuplicateCollapser.collapse(new ArrayList<>(), recent);
+
+        // From here on the library counts as a full ingest in progress, with everything older pending
+        IngestCheckpoint checkpoint = IngestCheckpoint.getInstance(context);
+        checkpoint.begin();
+        IngestBatch batch = clusterIngest(new ArrayList<>(collapsed.getKeptPhotos()),
+                new ArrayList<>(collapsed.getDuplicates()), Long.MIN_VALUE, null);
+        persistIngest(batch, checkpoint);
+        syncBatch(batch, new Semaphore(SYNC_BATCHES_IN_FLIGHT), checkpoint);
+
+        Log.d(TAG, "Published " + batch.clusters.size() + " clusters of the last " + days + " days ("
+                + batch.totalPhotos + " of " + recent.size() + " photos) in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        return batch.clusters;
+    }
+
+    /**
+     * Write one batch of changed clusters, retired cluster IDs and duplicates to Room
+     */
+    private void storeBatch(IngestBatch batch) {
+        List<PhotoData> photos = new ArrayList<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : batch.clusters) {
+            photos.addAll(cluster.getPhotos());
+        }
+        database.runInTransaction(() -> {
+            database.photoDao().insertPhotos(photos);
+            storeDuplicates(batch.duplicates);
+        });
+        clusterIndex.update(batch.clusters, batch.removedClusterIds);
+    }
+
+    /**
+     * Push one batch to Firebase, waiting while SYNC_BATCHES_IN_FLIGHT are unconfirmed. After
+     * SYNC_TIMEOUT_SECONDS it goes ahead anyway: offline writes are queued by the Firebase
+     * client and confirmed only once the device is back online.
+     */
+    private void syncBatch(IngestBatch batch, Semaphore permits, IngestCheckpoint checkpoint)
+            throws InterruptedException {
+        if (firebaseClusterManager == null || (batch.clusters.isEmpty() && batch.removedClusterIds.isEmpty())) {
             return;
         }
 
-        firebaseClusterManager.storeClusters(clusters,
+        boolean acquired = permits.tryAcquire(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!acquired) {
+            Log.w(TAG, "Firebase has not confirmed earlier batches, sending the next one anyway");
+        }
+        firebaseClusterManager.applyClusterChanges(batch.clusters, batch.removedClusterIds,
+                batch.totalClusters, batch.totalPhotos,
                 new FirebaseClusterManager.OnClusterStorageCallback() {
                     @Override
                     public void onSuccess(int clusterCount) {
-                        Log.d(TAG, "Successfully stored " + clusterCount + " clusters in Firebase");
+                        Log.d(TAG, "Stored " + clusterCount + " clusters in Firebase");
+                        checkpoint.markSynced(batch.getClusterIds());
+                        if (acquired) {
+                            permits.release();
+                        }
                     }
 
                     @Override
                     public void onError(String error) {
                         Log.e(TAG, "Failed to store clusters in Firebase: " + error);
+                        if (acquired) {
+                            permits.release();
+                        }
                     }
                 });
     }
 
+    /**
+     * Batches of the clusters the checkpoint lists as not confirmed by Firebase, read back from
+     * Room. Listed clusters that are gone locally were retired, so their deletion is sent again.
+     */
+    private List<IngestBatch> loadUnsyncedBatches(IngestCheckpoint checkpoint, int[] totals) {
+        List<String> clusterIds = new ArrayList<>(checkpoint.getUnsyncedClusterIds());
+        List<IngestBatch> batches = new ArrayList<>();
+        for (int i = 0; i < clusterIds.size(); i += SQL_BATCH_SIZE) {
+            List<String> ids = clusterIds.subList(i, Math.min(i + SQL_BATCH_SIZE, clusterIds.size()));
+            IngestBatch batch = new IngestBatch();
+            batch.clusters.addAll(clusterIndex.loadClusters(database.clusterDao().getClustersByIds(ids)));
+            batch.totalClusters = totals[0];
+            batch.totalPhotos = totals[1];
+            batches.add(batch);
+        }
+        Set<String> retired = new HashSet<>(clusterIds);
+        for (IngestBatch batch : batches) {
+            for (PhotoClusteringManager.PhotoCluster cluster : batch.clusters) {
+                retired.remove(cluster.getClusterId());
+            }
+        }
+        if (!retired.isEmpty()) {
+            IngestBatch removal = new IngestBatch();
+            removal.removedClusterIds.addAll(retired);
+            removal.totalClusters = totals[0];
+            removal.totalPhotos = totals[1];
+            batches.add(removal);
+        }
+        return batches;
+    }
+
+    /**
+     * Push clusters an earlier full ingest stored but Firebase never confirmed
+     */
+    private void resyncUnconfirmedClusters() throws InterruptedException {
+        IngestCheckpoint checkpoint = IngestCheckpoint.getInstance(context);
+        if (checkpoint.getUnsyncedClusterIds().isEmpty()) {
+            return;
+        }
+
+        int[] totals = {database.photoDao().getClusterCount(), database.photoDao().getPhotoCount()};
+        Semaphore permits = new Semaphore(SYNC_BATCHES_IN_FLIGHT);
+        for (IngestBatch batch : loadUnsyncedBatches(checkpoint, totals)) {
+            syncBatch(batch, permits, checkpoint);
+        }
+    }
+
+    private void awaitSyncedBatches(Semaphore permits) throws InterruptedException {
+        if (permits.tryAcquire(SYNC_BATCHES_IN_FLIGHT, SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            permits.release(SYNC_BATCHES_IN_FLIGHT);
+        } else {
+            Log.w(TAG, "Finishing before Firebase confirmed every batch");
+        }
+    }
+
+    /**
+     * Clusters and duplicates handed from one ingest stage to the next
+     */
+    private static class IngestBatch {
+        final List<PhotoClusteringManager.PhotoCluster> clusters = new ArrayList<>();
+        final List<String> removedClusterIds = new ArrayList<>();
+        final List<PhotoDuplicate> duplicates = new ArrayList<>();
+        // Where a resumed ingest continues once this batch is stored
+        long resumeFrom;
+        // Totals once this batch is stored, for the Firebase summary
+        int totalClusters;
+        int totalPhotos;
+
+        /**
+         * IDs of every cluster this batch writes or deletes
+         */
+        List<String> getClusterIds() {
+            List<String> ids = new ArrayList<>(clusters.size() + removedClusterIds.size());
+            for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+                ids.add(cluster.getClusterId());
+            }
+            ids.addAll(removedClusterIds);
+            return ids;
+        }
+    }
+
+    /**
+     * Cluster only the photos added, modified or removed since the last run. Just the clusters
+     * they touch are loaded, re-clustered and written back; MediaStore is only read past the
+     * scan watermark, so an unchanged gallery costs one query of the _ID column.
+     */
+    public void processNewPhotos(ProcessingCallback callback) {
+        processNewPhotos(callback, executor);
+    }
+
+    /**
+     * processNewPhotos on the caller's executor, e.g. a background-priority thread
+     */
+    public void processNewPhotos(ProcessingCallback callback, Executor runOn) {
+        runOn.execute(() -> {
+            synchronized (INCREMENTAL_LOCK) {
+                runNewPhotos(callback);
+            }
+        });
+    }
+
+    private void runNewPhotos(ProcessingCallback callback) {
+        try {
+            if (callback != null) {
+                AppExecutors.getInstance().mainThread().execute(callback::onProcessingStarted);
+            }
+
+            // Finish an interrupted full ingest first; the delta is only defined against a whole library
+            if (IngestCheckpoint.isInterrupted(context)) {
+                Log.d(TAG, "Resuming an interrupted full ingest");
+                runIngestStages(callback, false);
+                if (callback != null) {
+                    AppExecutors.getInstance().mainThread().execute(() ->
+                            callback.onProcessingComplete(null));
+                }
+                return;
+            }
+            resyncUnconfirmedClusters();
+
+            // Collapsed duplicates are known too, or every scan would report them as new
+            Set<String> knownUris = new HashSet<>(database.photoDao().getAllPhotoUris());
+            knownUris.addAll(database.duplicateDao().getAllDuplicateUris());
+            PhotoMetadataExtractor.ScanResult changes = metadataExtractor.extractChangedPhotos(knownUris);
+            Log.d(TAG, "Found " + changes.getAddedPhotos().size() + " new or modified and "
+                    + changes.getRemovedUris().size() + " removed photos");
+
+            if (changes.isEmpty()) {
+                metadataExtractor.commitScanWatermark();
+                if (callback != null) {
+                    AppExecutors.getInstance().mainThread().execute(() ->
+                            callback.onProcessingComplete(new ArrayList<>()));
+                }
+                return;
+            }
+
+            PhotoMetadataExtractor.ScanResult scan = collapseDuplicates(changes);
+            AffectedClusters affected = loadAffectedClusters(scan);
+            PhotoClusteringManager.IncrementalResult result = clusteringManager.clusterIncremental(
+                    affected.clusters, scan.getAddedPhotos(), scan.getRemovedUris(),
+                    affected.pinnedLocationNames, affected.addedPhotoLocations);
+            Log.d(TAG, affected.clusters.size() + " clusters affected, "
+                    + result.getChangedClusters().size() + " changed, "
+                    + result.getRemovedClusterIds().size() + " retired");
+
+            List<String> removedUris = new ArrayList<>(scan.getRemovedUris());
+            List<PhotoData> changedPhotos = new ArrayList<>();
+            for (PhotoClusteringManager.PhotoCluster cluster : result.getChangedClusters()) {
+                changedPhotos.addAll(cluster.getPhotos());
+            }
+
+            database.runInTransaction(() -> {
+                for (int i = 0; i < removedUris.size(); i += SQL_BATCH_SIZE) {
+                    database.photoDao().deletePhotosByUri(
+                            removedUris.subList(i, Math.min(i + SQL_BATCH_SIZE, removedUris.size())));
+                }
+            });
+            storePhotosInDatabase(changedPhotos, callback);
+            clusterIndex.update(result.getChangedClusters(), result.getRemovedClusterIds());
+            metadataExtractor.commitScanWatermark();
+            derivativeCache.remove(removedUris);
+            derivativeCache.prefetch(scan.getAddedPhotos());
+
+            if (firebaseClusterManager != null) {
+                firebaseClusterManager.applyClusterChanges(
+                        result.getChangedClusters(),
+                        result.getRemovedClusterIds(),
+                        database.photoDao().getClusterCount(),
+                        database.photoDao().getPhotoCount(),
+                        new FirebaseClusterManager.OnClusterStorageCallback() {
+                            @Override
+                            public void onSuccess(int clusterCount) {
+                                Log.d(TAG, "Synced " + clusterCount + " changed clusters to Firebase");
+                            }
+
+                            @Override
+                            public void onError(String error) {
+                                Log.e(TAG, "Failed to sync cluster changes: " + error);
+                            }
+                        });
+            } else {
+                Log.e(TAG, "Firebase cluster manager not initialized");
+            }
+
+            if (callback != null) {
+                AppExecutors.getInstance().mainThread().execute(() ->
+                        callback.onProcessingComplete(result.getChangedClusters()));
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing new photos: " + e.getMessage());
+            if (callback != null) {
+                String error = e.getMessage();
+                AppExecutors.getInstance().mainThread().execute(() ->
+                        callback.onProcessingError(error));
+            }
+        }
+    }
+
+    /**
+     * Collapse the changed photos into stored photos and each other, and store the duplicates.
+     * Duplicates of removed or changed photos are collapsed again, so one of them takes over as
+     * representative. Returns the delta to cluster: kept photos are added, and photos that are
+     * now duplicates are removed from the photos table along with the deleted ones.
+     */
+    private PhotoMetadataExtractor.ScanResult collapseDuplicates(PhotoMetadataExtractor.ScanResult changes) {
+        PhotoDatabase.DuplicateDao duplicateDao = database.duplicateDao();
+
+        Set<String> changedUris = new HashSet<>(changes.getRemovedUris());
+        List<PhotoData> incoming = new ArrayList<>(changes.getAddedPhotos());
+        for (PhotoData photo : incoming) {
+            changedUris.add(photo.getPhotoUri());
+        }
+
+        List<String> changedList = new ArrayList<>(changedUris);
+        for (int i = 0; i < changedList.size(); i += SQL_BATCH_SIZE) {
+            List<String> batch = changedList.subList(i, Math.min(i + SQL_BATCH_SIZE, changedList.size()));
+            for (PhotoDuplicate orphan : duplicateDao.getDuplicatesOf(batch)) {
+                if (!changedUris.contains(orphan.getPhotoUri())) {
+                    incoming.add(orphan.toPhoto());
+                }
+            }
+        }
+        Set<String> incomingUris = new HashSet<>();
+        for (PhotoData photo : incoming) {
+            incomingUris.add(photo.getPhotoUri());
+        }
+
+        NearDuplicateCollapser.Result collapsed = NearDuplicateCollapser.collapse(
+                loadStoredNeighbours(incoming, changedUris, incomingUris), incoming);
+
+        // Old rows of every photo looked at here are replaced by the new outcome
+        List<String> staleRows = new ArrayList<>(changedUris);
+        staleRows.addAll(incomingUris);
+        Set<String> removedUris = new HashSet<>(changes.getRemovedUris());
+        for (PhotoDuplicate duplicate : collapsed.getDuplicates()) {
+            removedUris.add(duplicate.getPhotoUri());
+        }
+        database.runInTransaction(() -> {
+            for (int i = 0; i < staleRows.size(); i += SQL_BATCH_SIZE) {
+                duplicateDao.deleteDuplicatesByUri(
+                        staleRows.subList(i, Math.min(i + SQL_BATCH_SIZE, staleRows.size())));
+            }
+            duplicateDao.insertDuplicates(collapsed.getDuplicates());
+        });
+        Log.d(TAG, "Collapsed " + collapsed.getDuplicates().size() + " near-duplicates");
+
+        return new PhotoMetadataExtractor.ScanResult(collapsed.getKeptPhotos(), removedUris);
+    }
+
+    /**
+     * Stored photos taken within the duplicate window of any incoming photo, except those
+     * being removed or re-collapsed. Overlapping windows are merged into one query.
+     */
+    private List<PhotoData> loadStoredNeighbours(List<PhotoData> incoming, Set<String> changedUris,
+                                                 Set<String> incomingUris) {
+        List<Long> times = new ArrayList<>();
+        for (PhotoData photo : incoming) {
+            if (photo.getPerceptualHash() != PerceptualHash.UNKNOWN) {
+                times.add(photo.getDateTaken());
+            }
+        }
+        Collections.sort(times);
+
+        List<PhotoData> neighbours = new ArrayList<>();
+        long window = NearDuplicateCollapser.WINDOW_MILLIS;
+        int i = 0;
+        while (i < times.size()) {
+            long from = times.get(i) - window;
+            long to = times.get(i) + window;
+            while (++i < times.size() && times.get(i) - window <= to) {
+                to = times.get(i) + window;
+            }
+            for (PhotoData photo : database.photoDao().getPhotosBetweenDates(from, to)) {
+                if (!changedUris.contains(photo.getPhotoUri()) && !incomingUris.contains(photo.getPhotoUri())) {
+                    neighbours.add(photo);
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Load every stored cluster whose location cluster contains a removed or modified photo,
+     * lies within the clustering radius of an added one, or has a photo within two time windows
+     * of any changed photo (photos without a location follow the located photo nearest in time).
+     * Location clusters the delta only extends are pinned and loaded in part, just the time
+     * clusters within two windows; see PhotoClusteringManager.clusterIncremental.
+     */
+    private AffectedClusters loadAffectedClusters(PhotoMetadataExtractor.ScanResult scan) {
+        PhotoDatabase.PhotoDao dao = database.photoDao();
+        Set<String> wholePrefixes = new HashSet<>();
+
+        // Stored rows cover removed photos and the old copies of modified ones
+        List<String> deltaUris = new ArrayList<>(scan.getRemovedUris());
+        List<Long> deltaTimes = new ArrayList<>();
+        for (PhotoData photo : scan.getAddedPhotos()) {
+            deltaUris.add(photo.getPhotoUri());
+            deltaTimes.add(photo.getDateTaken());
+        }
+        for (int i = 0; i < deltaUris.size(); i += SQL_BATCH_SIZE) {
+            List<String> batch = deltaUris.subList(i, Math.min(i + SQL_BATCH_SIZE, deltaUris.size()));
+            for (String clusterId : dao.getClusterIdsForUris(batch)) {
+                wholePrefixes.add(PhotoClusteringManager.getLocationPrefix(clusterId));
+            }
+            deltaTimes.addAll(dao.getDatesTakenForUris(batch));
+        }
+
+        AffectedClusters affected = new AffectedClusters();
+        affected.addedPhotoLocations.putAll(linkToStoredLocations(scan.getAddedPhotos(), wholePrefixes));
+        Set<String> pinnedPrefixes = new HashSet<>(affected.addedPhotoLocations.values());
+
+        // Overlapping time ranges are merged into one query
+        Set<String> partialClusterIds = new HashSet<>();
+        long reach = 2 * PhotoClusteringManager.TIME_CLUSTER_WINDOW_MILLIS;
+        Collections.sort(deltaTimes);
+        int i = 0;
+        while (i < deltaTimes.size()) {
+            long from = deltaTimes.get(i) - reach;
+            long to = deltaTimes.get(i) + reach;
+            while (++i < deltaTimes.size() && deltaTimes.get(i) - reach <= to) {
+                to = deltaTimes.get(i) + reach;
+            }
+            for (String clusterId : dao.getClusterIdsInTimeRange(from, to)) {
+                String prefix = PhotoClusteringManager.getLocationPrefix(clusterId);
+                if (wholePrefixes.contains(prefix)) {
+                    continue;
+                }
+                if (PhotoClusteringManager.isAnchoredLocation(prefix)) {
+                    partialClusterIds.add(clusterId);
+                    pinnedPrefixes.add(prefix);
+                } else {
+                    wholePrefixes.add(prefix);
+                }
+            }
+        }
+
+        Map<String, PhotoClusteringManager.PhotoCluster> clusters = new LinkedHashMap<>();
+        for (String prefix : wholePrefixes) {
+            addToClusters(clusters, dao.getPhotosByLocationPrefix(prefix));
+        }
+        List<String> partial = new ArrayList<>(partialClusterIds);
+        for (int k = 0; k < partial.size(); k += SQL_BATCH_SIZE) {
+            addToClusters(clusters, dao.getPhotosInClusters(
+                    partial.subList(k, Math.min(k + SQL_BATCH_SIZE, partial.size()))));
+        }
+        for (String prefix : pinnedPrefixes) {
+            affected.pinnedLocationNames.put(prefix, dao.getLocationNameByPrefix(prefix));
+        }
+
+        affected.clusters.addAll(clusters.values());
+        return affected;
+    }
+
+    private static void addToClusters(Map<String, PhotoClusteringManager.PhotoCluster> clusters,
+                                      List<PhotoData> photos) {
+        for (PhotoData photo : photos) {
+            PhotoClusteringManager.PhotoCluster cluster = clusters.get(photo.getClusterId());
+            if (cluster == null) {
+                cluster = new PhotoClusteringManager.PhotoCluster(photo.getClusterId());
+                clusters.put(photo.getClusterId(), cluster);
+            }
+            cluster.getPhotos().add(photo);
+        }
+    }
+
+    /**
+     * Link the added photos to the stored location clusters within the clustering radius of
+     * them, found with one bounds query on the coordinate index per grid cell of added photos.
+     * Adds the clusters that must be loaded whole to wholePrefixes and returns the location
+     * prefix each added photo extends, for the rest.
+     */
+    private Map<String, String> linkToStoredLocations(List<PhotoData> photos, Set<String> wholePrefixes) {
+        PhotoClusteringManager.LocationLinks links = new PhotoClusteringManager.LocationLinks(photos);
+        double latDelta = PhotoClusteringManager.LOCATION_CLUSTER_RADIUS_METERS / GeoDistance.METERS_PER_DEGREE;
+
+        // Bounding box of the added photos in each cell, as {south, north, west, east}
+        Map<Long, double[]> cells = new HashMap<>();
+        for (PhotoData photo : links.getLocatedPhotos()) {
+            double lat = photo.getLatitude();
+            double lng = photo.getLongitude();
+            long key = ((long) Math.floor(lat / latDelta) << 32) | ((long) Math.floor(lng / latDelta) & 0xffffffffL);
+            double[] box = cells.get(key);
+            if (box == null) {
+                cells.put(key, new double[]{lat, lat, lng, lng});
+            } else {
+                box[0] = Math.min(box[0], lat);
+                box[1] = Math.max(box[1], lat);
+                box[2] = Math.min(box[2], lng);
+                box[3] = Math.max(box[3], lng);
+            }
+        }
+
+        for (double[] box : cells.values()) {
+            double south = box[0] - latDelta;
+            double north = box[1] + latDelta;
+            double cos = Math.cos(Math.toRadians(Math.min(90.0, Math.max(Math.abs(south), Math.abs(north)))));
+            double lngDelta = Math.min(180.0, latDelta / Math.max(cos, 1e-6));
+            double west = box[2] - lngDelta;
+            double east = box[3] + lngDelta;
+
+            if (lngDelta >= 180.0) {
+                addStoredPhotosInBounds(links, south, north, -180.0, 180.0);
+                continue;
+            }
+            // A box crossing the antimeridian is queried as two longitude ranges
+            if (west < -180.0) {
+                addStoredPhotosInBounds(links, south, north, west + 360.0, 180.0);
+                west = -180.0;
+            }
+            if (east > 180.0) {
+                addStoredPhotosInBounds(links, south, north, -180.0, east - 360.0);
+                east = 180.0;
+            }
+            addStoredPhotosInBounds(links, south, north, west, east);
+        }
+
+        PhotoDatabase.ClusterDao clusterDao = database.clusterDao();
+        return links.resolve(wholePrefixes, clusterDao::getEarliestLocatedTime);
+    }
+
+    private void addStoredPhotosInBounds(PhotoClusteringManager.LocationLinks links, double south, double north,
+                                         double west, double east) {
+        try (Cursor cursor = database.photoDao().getClusterPhotosInBounds(south, north, west, east)) {
+            while (cursor.moveToNext()) {
+                links.addStoredPhoto(cursor.getString(0), cursor.getDouble(1), cursor.getDouble(2));
+            }
+        }
+    }
+
+    /**
+     * Stored clusters an incremental run needs, and which of them are only partly loaded
+     */
+    private static class AffectedClusters {
+        final List<PhotoClusteringManager.PhotoCluster> clusters = new ArrayList<>();
+        // Location prefix of each partly loaded location cluster, to its location name
+        final Map<String, String> pinnedLocationNames = new HashMap<>();
+        // Added photos extending a partly loaded location cluster, to its location prefix
+        final Map<String, String> addedPhotoLocations = new HashMap<>();
+    }
+
+    /**
+     * Forward scan progress to the callback on the main thread
+     */
+    private PhotoMetadataExtractor.ProgressListener progressListener(ProcessingCallback callback) {
+        if (callback == null) {
+            return null;
+        }
+        return (processed, total) -> AppExecutors.getInstance().mainThread().execute(() ->
+                callback.onProgressUpdate(processed, total));
+    }
+
+    /**
+     * Record duplicates, dropping any earlier photos rows of theirs
+     */
+    private void storeDuplicates(List<PhotoDuplicate> duplicates) {
+        List<String> uris = new ArrayList<>();
+        for (PhotoDuplicate duplicate : duplicates) {
+            uris.add(duplicate.getPhotoUri());
+        }
+        for (int i = 0; i < uris.size(); i += SQL_BATCH_SIZE) {
+            database.photoDao().deletePhotosByUri(uris.subList(i, Math.min(i + SQL_BATCH_SIZE, uris.size())));
+        }
+        database.duplicateDao().insertDuplicates(duplicates);
+    }
+
     private void storePhotosInDatabase(List<PhotoData> photos, ProcessingCallback callback) {
         int total = photos.size();
         int batchSize = 50;
@@ -183,24 +1009,24 @@ public class PhotoProcessingService {
     public void getClustersFromLocal(OnClustersLoadedCallback callback) {
         executor.execute(() -> {
             try {
-                List<String> clusterIds = database.photoDao().getAllClusterIds();
-                List<PhotoClusteringManager.PhotoCluster> clusters = new java.util.ArrayList<>();
-
-                for (String clusterId : clusterIds) {
-                    List<PhotoData> photos = database.photoDao().getPhotosByCluster(clusterId);
-                    if (!photos.isEmpty()) {
-                        PhotoClusteringManager.PhotoCluster cluster =
-                                new PhotoClusteringManager.PhotoCluster(clusterId);
-                        cluster.setPhotos(photos);
-
-                        PhotoData first = photos.get(0);
-                        cluster.setLocationName(first.getLocationName());
-                        cluster.setLatitude(first.getLatitude());
-                        cluster.setLongitude(first.getLongitude());
-
-                        clusters.add(cluster);
+                List<PhotoClusteringManager.PhotoCluster> clusters = new ArrayList<>();
+                database.streamClusters(cluster -> {
+                    // Photos come in time order, and the earliest may have no location
+                    PhotoData named = cluster.getPhotos().get(0);
+                    for (PhotoData photo : cluster.getPhotos()) {
+                        if (photo.hasLocation()) {
+                            named = photo;
+                            break;
+                        }
                     }
-                }
+                    ClusterStats stats = cluster.getStats();
+                    cluster.setLocationName(named.getLocationName());
+                    cluster.setLatitude(stats.getCentroidLatitude());
+                    cluster.setLongitude(stats.getCentroidLongitude());
+                    cluster.setStartTime(stats.getStartTime());
+                    cluster.setEndTime(stats.getEndTime());
+                    clusters.add(cluster);
+                });
 
                 if (callback != null) {
                     callback.onClustersLoaded(clusters);
@@ -0,0 +1,183 @@
+package com.example.recalllive;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of a staged pipeline: a thread of its own draining a bounded queue of items.
+ *
+ * Stages are chained by having a worker put its output into the next stage, so every stage
+ * runs at the same time and the slowest one sets the pace. A full queue blocks the producer,
+ * which keeps a fast stage from piling up work in memory. Each stage keeps count of its busy
+ * time, its idle time (starved by upstream) and the time producers spent blocked on it
+ * (slower than upstream), for {@link #report()}.
+ *
+ * A failing worker stops the stage; the next put or finish throws IllegalStateException.
+ */
+public class PipelineStage<T> {
+
+    /**
+     * Processes the items of one stage, on the stage thread
+     */
+    public interface Worker<T> {
+        void process(T item) throws Exception;
+
+        /**
+         * Called once after the last item, e.g. to hand on a partial batch
+         */
+        default void finish() throws Exception {
+        }
+    }
+
+    private static final Object END = new Object();
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    private final String name;
+    private final Worker<T> worker;
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+
+    // Written by the stage thread, read once finish has joined it
+    private long processedCount;
+    private long busyNanos;
+    private long idleNanos;
+
+    public PipelineStage(String name, int capacity, Worker<T> worker) {
+        this.name = name;
+        this.worker = worker;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::drain, "PipelineStage-" + name);
+    }
+
+    public PipelineStage<T> start() {
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Queue an item, blocking while the queue is full
+     */
+    public void put(T item) {
+        enqueue(item);
+    }
+
+    /**
+     * Wait until every queued item is processed and the worker has finished
+     */
+    public void finish() {
+        enqueue(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new IllegalStateException("Interrupted while finishing stage " + name, e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stop the stage, dropping whatever is still queued
+     */
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+        thread.interrupt();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos);
+    }
+
+    public long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(idleNanos);
+    }
+
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+    }
+
+    /**
+     * Throughput and time split of the stage, once finish has returned
+     */
+    public String report() {
+        double perSecond = busyNanos > 0 ? processedCount * 1e9 / busyNanos : 0;
+        return String.format(Locale.US, "%s: %d items, %.0f/s while busy, busy %d ms, idle %d ms, "
+                        + "producers blocked %d ms", name, processedCount, perSecond,
+                getBusyMillis(), getIdleMillis(), getBlockedMillis());
+    }
+
+    private void enqueue(Object item) {
+        checkFailure();
+        if (queue.offer(item)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            // Wake up now and then, so a stage that died while we wait does not block us forever
+            while (!queue.offer(item, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new IllegalStateException("Interrupted while feeding stage " + name, e);
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Stage " + name + " failed", failure);
+        }
+        if (cancelled) {
+            throw new IllegalStateException("Stage " + name + " was cancelled");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        long waitStart = System.nanoTime();
+        try {
+            while (true) {
+                Object item = queue.take();
+                long start = System.nanoTime();
+                idleNanos += start - waitStart;
+
+                if (item == END) {
+                    worker.finish();
+                    busyNanos += System.nanoTime() - start;
+                    return;
+                }
+                worker.process((T) item);
+                processedCount++;
+
+                waitStart = System.nanoTime();
+                busyNanos += waitStart - start;
+            }
+        } catch (InterruptedException e) {
+            if (!cancelled) {
+                failure = e;
+            }
+        } catch (Throwable t) {
+            failure = t;
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.recalllive;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid index over photo coordinates.
+ *
+ * Latitude is cut into rows one search radius tall. Each row is cut into
+ * columns at least one search radius wide at the row's most poleward edge,
+ * so a radius query only has to look at the handful of cells around the
+ * query point instead of every photo in the library. Columns wrap around
+ * at the antimeridian, so points on either side of it are neighbours.
+ */
+public class SpatialGridIndex {
+
+    // Slightly less than the shortest degree of latitude on the WGS84 ellipsoid,
+    // so cells are never smaller than the radius whatever distance model is used
+    private static final double METERS_PER_DEGREE = 110_000.0;
+    private static final double MIN_COS_LATITUDE = 1e-6;
+
+    private final double cellDegrees;
+    private final Map<Long, int[]> cells = new HashMap<>();
+    private int size;
+
+    public SpatialGridIndex(double radiusMeters) {
+        this.cellDegrees = radiusMeters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Add a point under the given id (usually its index in the photo list)
+     */
+    public void add(int id, double latitude, double longitude) {
+        int row = rowOf(latitude);
+        long key = cellKey(row, columnOf(row, longitude));
+
+        // cell[0] holds the number of ids stored after it
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[4];
+            cells.put(key, cell);
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells.put(key, cell);
+        }
+        cell[++cell[0]] = id;
+        size++;
+    }
+
+    /**
+     * Remove a point added under the same id and coordinates. Empty cells are dropped,
+     * so an index with points coming and going stays as small as its live points.
+     */
+    public boolean remove(int id, double latitude, double longitude) {
+        int row = rowOf(latitude);
+        long key = cellKey(row, columnOf(row, longitude));
+
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            return false;
+        }
+
+        int cellSize = cell[0];
+        for (int k = 1; k <= cellSize; k++) {
+            if (cell[k] == id) {
+                // Order within a cell does not matter, so move the last id into the gap
+                cell[k] = cell[cellSize];
+                cell[0]--;
+                if (cell[0] == 0) {
+                    cells.remove(key);
+                }
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ids of every point that could lie within the radius of the query point.
+     * Callers still need an exact distance check on the result.
+     */
+    public int[] getCandidates(double latitude, double longitude) {
+        int firstRow = rowOf(latitude - cellDegrees);
+        int lastRow = rowOf(latitude + cellDegrees);
+        double longitudeSpan = longitudeDegrees(
+                Math.max(Math.abs(latitude - cellDegrees), Math.abs(latitude + cellDegrees)));
+
+        int[] result = new int[16];
+        int count = 0;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            int columns = columnCount(row);
+            int firstColumn = columnOf(row, longitude - longitudeSpan);
+            int lastColumn = columnOf(row, longitude + longitudeSpan);
+
+            // One column range, two if the span crosses the antimeridian, or the whole row
+            int[] ranges;
+            if (2 * longitudeSpan >= 360.0 - columnWidth(row)) {
+                ranges = new int[]{0, columns - 1};
+            } else if (firstColumn <= lastColumn) {
+                ranges = new int[]{firstColumn, lastColumn};
+            } else {
+                ranges = new int[]{firstColumn, columns - 1, 0, lastColumn};
+            }
+
+            for (int r = 0; r < ranges.length; r += 2) {
+                for (int column = ranges[r]; column <= ranges[r + 1]; column++) {
+                    int[] cell = cells.get(cellKey(row, column));
+                    if (cell == null) {
+                        continue;
+                    }
+
+                    int cellSize = cell[0];
+                    if (count + cellSize > result.length) {
+                        result = Arrays.copyOf(result, Math.max(result.length * 2, count + cellSize));
+                    }
+                    System.arraycopy(cell, 1, result, count, cellSize);
+                    count += cellSize;
+                }
+            }
+        }
+
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    private int rowOf(double latitude) {
+        return (int) Math.floor(latitude / cellDegrees);
+    }
+
+    /**
+     * Column of a longitude, wrapped into [-180, 180) first. The last column of a row may be
+     * narrower than the others; it still borders column 0 across the antimeridian.
+     */
+    private int columnOf(int row, double longitude) {
+        double wrapped = ((longitude + 180.0) % 360.0 + 360.0) % 360.0;
+        return Math.min((int) Math.floor(wrapped / columnWidth(row)), columnCount(row) - 1);
+    }
+
+    private int columnCount(int row) {
+        return (int) Math.ceil(360.0 / columnWidth(row));
+    }
+
+    private double columnWidth(int row) {
+        // Column width is fixed per row, taken at the row's most poleward edge
+        double edge = Math.max(Math.abs(row * cellDegrees), Math.abs((row + 1) * cellDegrees));
+        return longitudeDegrees(edge);
+    }
+
+    private double longitudeDegrees(double latitude) {
+        double cos = Math.cos(Math.toRadians(Math.min(latitude, 90.0)));
+        return Math.min(cellDegrees / Math.max(cos, MIN_COS_LATITUDE), 360.0);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
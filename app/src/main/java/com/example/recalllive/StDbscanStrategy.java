@@ -0,0 +1,283 @@
+package com.example.recalllive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ST-DBSCAN with a spatial radius that adapts to how densely each region is photographed.
+ *
+ * A fixed 100 m radius merges neighboring spots in a dense city and shatters a walk through the
+ * countryside into single photos. Here the library is cut into coarse regions and each region's
+ * radius is the median distance from a sample of its photos to their k-th nearest neighbor,
+ * clamped to [MIN_EPS_METERS, MAX_EPS_METERS]. Two photos are neighbors when they are within
+ * the smaller radius of their two regions and at most the time radius apart.
+ */
+public class StDbscanStrategy implements ClusteringStrategy {
+
+    // Region and k-distance parameters
+    private static final double REGION_DEGREES = 0.1; // about 11 km
+    private static final int K_NEIGHBORS = 4;
+    private static final int SAMPLES_PER_REGION = 64;
+    static final double MIN_EPS_METERS = 50.0;
+    static final double MAX_EPS_METERS = 1_000.0;
+
+    private static final int DEFAULT_MIN_POINTS = 2;
+
+    private final int minPoints;
+    private final long timeEpsMillis;
+
+    public StDbscanStrategy() {
+        this(DEFAULT_MIN_POINTS, PhotoClusteringManager.TIME_CLUSTER_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param minPoints     photos (including itself) a photo needs in its neighborhood to seed a cluster
+     * @param timeEpsMillis largest time gap between neighbors
+     */
+    public StDbscanStrategy(int minPoints, long timeEpsMillis) {
+        this.minPoints = minPoints;
+        this.timeEpsMillis = timeEpsMillis;
+    }
+
+    @Override
+    public long getTimeWindowMillis() {
+        return timeEpsMillis;
+    }
+
+    /**
+     * Clusters are seeded in time order, so a border photo within reach of two clusters joins
+     * the earlier one. With the default minPoints of 2 there are no border photos and the
+     * result is the connected components of the neighbor relation.
+     */
+    @Override
+    public void assignLabels(PhotoColumns columns, int[] labels) {
+        int count = columns.size();
+        Arrays.fill(labels, 0, count, NOISE);
+
+        double[] eps = computeEps(columns);
+        double indexRadius = MIN_EPS_METERS;
+        for (int i = 0; i < count; i++) {
+            if (columns.hasLocation(i)) {
+                indexRadius = Math.max(indexRadius, eps[i]);
+            }
+        }
+
+        // One grid per time bucket of the time radius, so a query only sees photos from the
+        // neighboring buckets instead of every visit to the same place over the years
+        Map<Long, SpatialGridIndex> buckets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (columns.hasLocation(i)) {
+                SpatialGridIndex index = buckets.get(bucketOf(columns.getDateTaken(i)));
+                if (index == null) {
+                    index = new SpatialGridIndex(indexRadius);
+                    buckets.put(bucketOf(columns.getDateTaken(i)), index);
+                }
+                index.add(i, columns.getLatitude(i), columns.getLongitude(i));
+            }
+        }
+
+        int[] seeds = new int[count];
+        for (int i = 0; i < count; i++) {
+            seeds[i] = i;
+        }
+        columns.sortByDateTaken(seeds, 0, count);
+
+        boolean[] visited = new boolean[count];
+        int[] queue = new int[count];
+        int groups = 0;
+
+        for (int p : seeds) {
+            if (visited[p] || !columns.hasLocation(p)) {
+                continue;
+            }
+            visited[p] = true;
+
+            int[] neighbors = getNeighbors(p, columns, eps, buckets);
+            if (neighbors.length + 1 < minPoints) {
+                // Noise for now, may still turn out to be a border photo of a later cluster
+                continue;
+            }
+
+            int label = groups++;
+            labels[p] = label;
+            int queueSize = 0;
+            for (int neighbor : neighbors) {
+                if (labels[neighbor] == NOISE) {
+                    labels[neighbor] = label;
+                    queue[queueSize++] = neighbor;
+                }
+            }
+
+            for (int head = 0; head < queueSize; head++) {
+                int q = queue[head];
+                if (visited[q]) {
+                    continue;
+                }
+                visited[q] = true;
+
+                int[] reachable = getNeighbors(q, columns, eps, buckets);
+                if (reachable.length + 1 < minPoints) {
+                    // Border photo, it joins but does not expand the cluster
+                    continue;
+                }
+                for (int neighbor : reachable) {
+                    if (labels[neighbor] == NOISE) {
+                        labels[neighbor] = label;
+                        queue[queueSize++] = neighbor;
+                    }
+                }
+            }
+        }
+    }
+
+    private long bucketOf(long dateTaken) {
+        return Math.floorDiv(dateTaken, Math.max(1L, timeEpsMillis));
+    }
+
+    /**
+     * Photos within both the spatial and the time radius of the center photo
+     */
+    private int[] getNeighbors(int center, PhotoColumns columns, double[] eps,
+                               Map<Long, SpatialGridIndex> buckets) {
+        double centerLat = columns.getLatitude(center);
+        double centerLng = columns.getLongitude(center);
+        double cosCenterLat = Math.cos(Math.toRadians(centerLat));
+        long centerTime = columns.getDateTaken(center);
+        long bucket = bucketOf(centerTime);
+
+        int[] result = new int[8];
+        int count = 0;
+
+        for (long b = bucket - 1; b <= bucket + 1; b++) {
+            SpatialGridIndex index = buckets.get(b);
+            if (index == null) {
+                continue;
+            }
+
+            for (int candidate : index.getCandidates(centerLat, centerLng)) {
+                if (candidate == center
+                        || Math.abs(columns.getDateTaken(candidate) - centerTime) > timeEpsMillis) {
+                    continue;
+                }
+
+                // The smaller radius keeps the relation symmetric across region borders
+                if (GeoDistance.isWithinRadius(centerLat, centerLng, cosCenterLat,
+                        columns.getLatitude(candidate), columns.getLongitude(candidate),
+                        Math.min(eps[center], eps[candidate]))) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = candidate;
+                }
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Spatial radius of every photo, taken from the k-distance of its region
+     */
+    private double[] computeEps(PhotoColumns columns) {
+        int count = columns.size();
+        SpatialGridIndex fine = new SpatialGridIndex(MIN_EPS_METERS);
+        SpatialGridIndex coarse = new SpatialGridIndex(MAX_EPS_METERS);
+        Map<Long, List<Integer>> regions = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            if (!columns.hasLocation(i)) {
+                continue;
+            }
+            fine.add(i, columns.getLatitude(i), columns.getLongitude(i));
+            coarse.add(i, columns.getLatitude(i), columns.getLongitude(i));
+
+            long region = regionOf(columns.getLatitude(i), columns.getLongitude(i));
+            List<Integer> members = regions.get(region);
+            if (members == null) {
+                members = new ArrayList<>();
+                regions.put(region, members);
+            }
+            members.add(i);
+        }
+
+        double[] eps = new double[count];
+        for (List<Integer> members : regions.values()) {
+            double regionEps = regionEps(columns, members, fine, coarse);
+            for (int i : members) {
+                eps[i] = regionEps;
+            }
+        }
+        return eps;
+    }
+
+    private long regionOf(double latitude, double longitude) {
+        long row = (long) Math.floor((latitude + 90.0) / REGION_DEGREES);
+        long column = (long) Math.floor((longitude + 180.0) / REGION_DEGREES);
+        return (row << 32) | column;
+    }
+
+    /**
+     * Median k-distance over a sample of the region. The sample is picked by URI hash rather
+     * than position, so the same photos always give the same radius.
+     */
+    private double regionEps(PhotoColumns columns, List<Integer> members,
+                             SpatialGridIndex fine, SpatialGridIndex coarse) {
+        List<Integer> samples = members;
+        if (members.size() > SAMPLES_PER_REGION) {
+            samples = new ArrayList<>(members);
+            samples.sort((a, b) -> {
+                String uriA = columns.getPhotoUri(a);
+                String uriB = columns.getPhotoUri(b);
+                int byHash = Integer.compare(uriA.hashCode(), uriB.hashCode());
+                return byHash != 0 ? byHash : uriA.compareTo(uriB);
+            });
+            samples = samples.subList(0, SAMPLES_PER_REGION);
+        }
+
+        double[] distances = new double[samples.size()];
+        for (int s = 0; s < distances.length; s++) {
+            int photo = samples.get(s);
+            // Dense places resolve on the fine grid; only sparse ones need the 1 km search
+            double distance = kDistance(columns, photo, fine, MIN_EPS_METERS);
+            if (distance > MIN_EPS_METERS) {
+                distance = kDistance(columns, photo, coarse, MAX_EPS_METERS);
+            }
+            distances[s] = distance;
+        }
+        Arrays.sort(distances);
+
+        double median = distances[distances.length / 2];
+        return Math.max(MIN_EPS_METERS, Math.min(MAX_EPS_METERS, median));
+    }
+
+    /**
+     * Distance to the k-th nearest photo, or infinity if fewer than k lie within the limit
+     */
+    private double kDistance(PhotoColumns columns, int photo, SpatialGridIndex index, double limitMeters) {
+        double lat = columns.getLatitude(photo);
+        double lng = columns.getLongitude(photo);
+
+        int[] candidates = index.getCandidates(lat, lng);
+        double[] distances = new double[candidates.length];
+        int count = 0;
+        for (int candidate : candidates) {
+            if (candidate == photo) {
+                continue;
+            }
+            double distance = GeoDistance.distanceMeters(lat, lng,
+                    columns.getLatitude(candidate), columns.getLongitude(candidate));
+            if (distance <= limitMeters) {
+                distances[count++] = distance;
+            }
+        }
+
+        if (count < K_NEIGHBORS) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Arrays.sort(distances, 0, count);
+        return distances[K_NEIGHBORS - 1];
+    }
+}
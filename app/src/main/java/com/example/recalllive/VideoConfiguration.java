@@ -21,6 +21,14 @@ public class VideoConfiguration {
      */
     public static final int MAX_VIDEOS_PER_DAY = 10;
 
+    /**
+     * Days of recent photos organized first at signup, for the first video
+     * Default: 30 days
+     *
+     * The rest of the library is organized in the background afterwards
+     */
+    public static final int FIRST_VIDEO_RECENT_DAYS = 30;
+
     /**
      * Hour (24-hour format) to generate daily videos
      * Default: 0 (midnight/12 AM)
@@ -37,6 +37,7 @@ public class VideoGenerationService {
 
     private final Context context;
     private final FirebaseClusterManager firebaseClusterManager;
+    private final ClusterIndex clusterIndex;
     private final Executor executor;
     private final Random random;
 
@@ -51,6 +52,7 @@ public class VideoGenerationService {
     public VideoGenerationService(Context context, String patientUid) {
         this.context = context;
         this.firebaseClusterManager = new FirebaseClusterManager(context, patientUid);
+        this.clusterIndex = new ClusterIndex(PhotoDatabase.getInstance(context));
         this.executor = Executors.newSingleThreadExecutor();
         this.random = new Random();
     }
@@ -61,7 +63,22 @@ public class VideoGenerationService {
     public void generateVideoFromRandomCluster(VideoGenerationCallback callback) {
         executor.execute(() -> {
             try {
-                // Step 1: Get all clusters from Firebase
+                // Step 1: Pick a cluster with enough photos from the local index
+                List<PhotoClusteringManager.PhotoCluster> local =
+                        clusterIndex.loadClusters(clusterIndex.findRandom(IMAGES_PER_VIDEO, 1));
+                if (!local.isEmpty()) {
+                    PhotoClusteringManager.PhotoCluster selectedCluster = local.get(0);
+                    Log.d(TAG, "Selected cluster: " + selectedCluster.getClusterId() +
+                            " with " + selectedCluster.getPhotoCount() + " photos");
+
+                    if (callback != null) {
+                        callback.onVideoGenerationStarted(selectedCluster.getClusterId());
+                    }
+                    processClusterForVideo(selectedCluster, callback);
+                    return;
+                }
+
+                // Otherwise get all clusters from Firebase
                 firebaseClusterManager.getClusters(new FirebaseClusterManager.OnClustersRetrievedCallback() {
                     @Override
                     public void onClustersRetrieved(List<PhotoClusteringManager.PhotoCluster> clusters) {
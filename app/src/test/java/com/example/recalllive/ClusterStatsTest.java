@@ -0,0 +1,70 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the single-pass cluster statistics.
+ */
+public class ClusterStatsTest {
+
+    @Test
+    public void statsFromClustering_matchAWalkOverThePhotos() {
+        List<PhotoData> library = PhotoClusteringManagerTest.syntheticLibrary(new Random(1), 2_000);
+        String[] timesOfDay = {"Morning", "Afternoon", "Evening", "Night", null};
+        Random random = new Random(2);
+        for (PhotoData photo : library) {
+            photo.setTimeCluster(timesOfDay[random.nextInt(timesOfDay.length)]);
+        }
+
+        for (PhotoClusteringManager.PhotoCluster cluster : new PhotoClusteringManager().clusterPhotos(library)) {
+            ClusterStats stats = cluster.getStats();
+            List<PhotoData> photos = cluster.getPhotos();
+
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            int located = 0;
+            int mornings = 0;
+            for (PhotoData photo : photos) {
+                start = Math.min(start, photo.getDateTaken());
+                end = Math.max(end, photo.getDateTaken());
+                located += photo.hasLocation() ? 1 : 0;
+                mornings += "Morning".equals(photo.getTimeCluster()) ? 1 : 0;
+            }
+
+            assertEquals(photos.size(), stats.getPhotoCount());
+            assertEquals(located, stats.getLocatedCount());
+            assertEquals(start, cluster.getStartTime());
+            assertEquals(end, cluster.getEndTime());
+            assertEquals(mornings, stats.getTimeOfDayCount("Morning"));
+            assertArrayEquals(ClusterStats.of(photos).getTimeOfDayCounts(), stats.getTimeOfDayCounts());
+            assertEquals(stats.getCentroidLatitude(), cluster.getLatitude(), 0.0);
+            if (stats.hasLocation()) {
+                assertTrue(stats.getMinLatitude() <= cluster.getLatitude());
+                assertTrue(cluster.getLatitude() <= stats.getMaxLatitude());
+            }
+        }
+    }
+
+    @Test
+    public void centroid_wrapsAroundAntimeridian() {
+        PhotoData west = new PhotoData("content://media/external/images/media/1");
+        west.setLatitude(-17.0);
+        west.setLongitude(179.9);
+        PhotoData east = new PhotoData("content://media/external/images/media/2");
+        east.setLatitude(-17.2);
+        east.setLongitude(-179.7);
+
+        ClusterStats stats = ClusterStats.of(Arrays.asList(west, east));
+
+        assertEquals(-17.1, stats.getCentroidLatitude(), 1e-9);
+        assertEquals(-179.9, stats.getCentroidLongitude(), 1e-9);
+        assertEquals(179.9, stats.getMinLongitude(), 1e-9);
+        assertEquals(-179.7, stats.getMaxLongitude(), 1e-9);
+    }
+}
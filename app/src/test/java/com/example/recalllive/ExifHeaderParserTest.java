@@ -0,0 +1,253 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ExifHeaderParser, against sample files written in both byte orders
+ * and both containers.
+ */
+public class ExifHeaderParserTest {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void littleEndianJpeg_givesLocationAndOriginalDate() throws Exception {
+        byte[] tiff = tiff(ByteOrder.LITTLE_ENDIAN, "2023:09:13 08:30:15", "2001:01:01 00:00:00",
+                'N', new long[]{37, 1, 25, 1, 3084, 100}, 'W', new long[]{122, 1, 8, 1, 3480, 100});
+        ExifHeaderParser parser = parse(jpeg(null, tiff));
+
+        assertTrue(parser.hasLocation());
+        assertEquals(37 + 25 / 60.0 + 30.84 / 3600, parser.getLatitude(), DELTA);
+        assertEquals(-(122 + 8 / 60.0 + 34.80 / 3600), parser.getLongitude(), DELTA);
+        assertEquals(simpleDateFormat("2023:09:13 08:30:15"), parser.getDateTime());
+    }
+
+    @Test
+    public void bigEndianJpegAfterXmp_givesSouthernEasternLocation() throws Exception {
+        byte[] xmp = "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.US_ASCII);
+        byte[] tiff = tiff(ByteOrder.BIG_ENDIAN, null, "2020:03:08 02:30:00",
+                'S', new long[]{33, 1, 52, 1, 0, 1}, 'E', new long[]{151, 1, 12, 1, 30, 1});
+        ExifHeaderParser parser = parse(jpeg(xmp, tiff));
+
+        assertTrue(parser.hasLocation());
+        assertEquals(-(33 + 52 / 60.0), parser.getLatitude(), DELTA);
+        assertEquals(151 + 12 / 60.0 + 30 / 3600.0, parser.getLongitude(), DELTA);
+        // Falls back to IFD0 DateTime, inside the spring-forward gap
+        assertEquals(simpleDateFormat("2020:03:08 02:30:00"), parser.getDateTime());
+    }
+
+    @Test
+    public void dates_matchSimpleDateFormatAcrossTheYear() throws Exception {
+        String[] dates = {"1999:12:31 23:59:59", "2000:02:29 12:00:00", "2021:11:07 01:30:00",
+                "2024:06:30 18:45:05", "1970:01:01 00:00:00"};
+        for (String date : dates) {
+            byte[] tiff = tiff(ByteOrder.LITTLE_ENDIAN, date, null, (char) 0, null, (char) 0, null);
+            ExifHeaderParser parser = parse(jpeg(null, tiff));
+
+            assertFalse(parser.hasLocation());
+            assertEquals(date, simpleDateFormat(date), parser.getDateTime());
+        }
+    }
+
+    @Test
+    public void jpegWithoutExif_parsesEmpty() throws Exception {
+        ByteBuffer file = ByteBuffer.allocate(64);
+        file.putShort((short) 0xFFD8);
+        file.putShort((short) 0xFFE0).putShort((short) 16).put("JFIF\0".getBytes(StandardCharsets.US_ASCII));
+        file.position(file.position() + 9);
+        file.putShort((short) 0xFFDA).putShort((short) 8);
+        ExifHeaderParser parser = parse(file.array());
+
+        assertFalse(parser.hasLocation());
+        assertEquals(0, parser.getDateTime());
+    }
+
+    @Test
+    public void unusualFiles_fallBack() throws Exception {
+        byte[] tiff = tiff(ByteOrder.LITTLE_ENDIAN, "2023:09:13 08:30:15", null,
+                'N', new long[]{37, 1, 25, 1, 3084, 100}, 'W', new long[]{122, 1, 8, 1, 3480, 100});
+        byte[] jpeg = jpeg(null, tiff);
+
+        // Segment cut short
+        assertFalse(parser().parse(channel(java.util.Arrays.copyOf(jpeg, jpeg.length - 20))));
+        // Malformed date
+        byte[] badDate = tiff(ByteOrder.LITTLE_ENDIAN, "2023:13:13 08:30:15", null,
+                (char) 0, null, (char) 0, null);
+        assertFalse(parser().parse(channel(jpeg(null, badDate))));
+        // Zero denominator
+        byte[] badGps = tiff(ByteOrder.BIG_ENDIAN, null, null,
+                'N', new long[]{37, 0, 25, 1, 0, 1}, 'W', new long[]{122, 1, 8, 1, 0, 1});
+        assertFalse(parser().parse(channel(jpeg(null, badGps))));
+        // Not an image
+        assertFalse(parser().parse(channel("plain text".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    public void heifExifItem_isFoundPastTheHeader() throws Exception {
+        byte[] tiff = tiff(ByteOrder.BIG_ENDIAN, "2022:07:04 21:15:00", null,
+                'N', new long[]{48, 1, 51, 1, 2940, 100}, 'E', new long[]{2, 1, 17, 1, 4020, 100});
+        ExifHeaderParser parser = parse(heif(tiff, 200_000));
+
+        assertTrue(parser.hasLocation());
+        assertEquals(48 + 51 / 60.0 + 29.40 / 3600, parser.getLatitude(), DELTA);
+        assertEquals(2 + 17 / 60.0 + 40.20 / 3600, parser.getLongitude(), DELTA);
+        assertEquals(simpleDateFormat("2022:07:04 21:15:00"), parser.getDateTime());
+
+        ExifHeaderParser near = parse(heif(tiff, 0));
+        assertEquals(parser.getDateTime(), near.getDateTime());
+    }
+
+    private static ExifHeaderParser parser() {
+        return new ExifHeaderParser(ZONE);
+    }
+
+    private static ExifHeaderParser parse(byte[] file) throws IOException {
+        ExifHeaderParser parser = parser();
+        assertTrue(parser.parse(channel(file)));
+        return parser;
+    }
+
+    private static FileChannel channel(byte[] content) throws IOException {
+        File file = File.createTempFile("exif", ".img");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        return new FileInputStream(file).getChannel();
+    }
+
+    private static long simpleDateFormat(String date) throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        format.setTimeZone(ZONE);
+        return format.parse(date).getTime();
+    }
+
+    /**
+     * A TIFF block with IFD0 (DateTime, Exif and GPS pointers), an Exif IFD holding
+     * DateTimeOriginal and a GPS IFD. Null values leave their tags out.
+     */
+    static byte[] tiff(ByteOrder order, String original, String dateTime,
+                       char latRef, long[] lat, char lngRef, long[] lng) {
+        ByteBuffer out = ByteBuffer.allocate(1024).order(order);
+        out.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        out.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        out.putShort((short) 42).putInt(8);
+
+        int data = 512; // values that don't fit inline go here
+        int ifd0Count = (dateTime != null ? 1 : 0) + (original != null ? 1 : 0) + (lat != null ? 1 : 0);
+        int exifIfd = 8 + 2 + ifd0Count * 12 + 4;
+        int gpsIfd = exifIfd + (original != null ? 2 + 12 + 4 : 0);
+
+        out.putShort((short) ifd0Count);
+        if (dateTime != null) {
+            data = entryWithData(out, 0x0132, 2, 20, data, ascii(dateTime));
+        }
+        if (original != null) {
+            out.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+        }
+        if (lat != null) {
+            out.putShort((short) 0x8825).putShort((short) 4).putInt(1).putInt(gpsIfd);
+        }
+        out.putInt(0);
+
+        if (original != null) {
+            out.putShort((short) 1);
+            data = entryWithData(out, 0x9003, 2, 20, data, ascii(original));
+            out.putInt(0);
+        }
+        if (lat != null) {
+            out.putShort((short) 4);
+            out.putShort((short) 1).putShort((short) 2).putInt(2).put((byte) latRef).put(new byte[3]);
+            data = entryWithData(out, 2, 5, 3, data, rationals(order, lat));
+            out.putShort((short) 3).putShort((short) 2).putInt(2).put((byte) lngRef).put(new byte[3]);
+            data = entryWithData(out, 4, 5, 3, data, rationals(order, lng));
+            out.putInt(0);
+        }
+        byte[] bytes = new byte[data];
+        System.arraycopy(out.array(), 0, bytes, 0, data);
+        return bytes;
+    }
+
+    private static int entryWithData(ByteBuffer out, int tag, int type, int count, int data, byte[] value) {
+        out.putShort((short) tag).putShort((short) type).putInt(count).putInt(data);
+        System.arraycopy(value, 0, out.array(), data, value.length);
+        return data + value.length;
+    }
+
+    private static byte[] ascii(String value) {
+        return (value + "\0").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] rationals(ByteOrder order, long[] values) {
+        ByteBuffer out = ByteBuffer.allocate(values.length * 4).order(order);
+        for (long value : values) {
+            out.putInt((int) value);
+        }
+        return out.array();
+    }
+
+    /**
+     * SOI, an optional XMP APP1, the Exif APP1, then the start of scan
+     */
+    static byte[] jpeg(byte[] xmp, byte[] tiff) {
+        ByteBuffer out = ByteBuffer.allocate(4096);
+        out.putShort((short) 0xFFD8);
+        if (xmp != null) {
+            out.putShort((short) 0xFFE1).putShort((short) (2 + xmp.length)).put(xmp);
+        }
+        out.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.length));
+        out.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff);
+        out.putShort((short) 0xFFDA).putShort((short) 8).put(new byte[6]);
+        return java.util.Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * ftyp, a meta box with one Exif item located by iloc, and the item payload at itemOffset
+     * (or right after meta when 0)
+     */
+    static byte[] heif(byte[] tiff, int itemOffset) {
+        byte[] payload = ByteBuffer.allocate(4 + 6 + tiff.length)
+                .putInt(6).put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff).array();
+
+        ByteBuffer infe = ByteBuffer.allocate(21);
+        infe.putInt(21).put("infe".getBytes(StandardCharsets.US_ASCII)).putInt(0x02000000)
+                .putShort((short) 1).putShort((short) 0).put("Exif".getBytes(StandardCharsets.US_ASCII))
+                .put((byte) 0);
+        ByteBuffer iinf = ByteBuffer.allocate(14 + 21);
+        iinf.putInt(35).put("iinf".getBytes(StandardCharsets.US_ASCII)).putInt(0).putShort((short) 1)
+                .put(infe.array());
+
+        int ilocSize = 12 + 2 + 2 + 2 + 2 + 2 + 4 + 4;
+        int metaSize = 12 + iinf.capacity() + ilocSize;
+        int ftypSize = 20;
+        int offset = itemOffset > 0 ? itemOffset : ftypSize + metaSize;
+
+        ByteBuffer iloc = ByteBuffer.allocate(ilocSize);
+        iloc.putInt(ilocSize).put("iloc".getBytes(StandardCharsets.US_ASCII)).putInt(0)
+                .put((byte) 0x44).put((byte) 0x00).putShort((short) 1)
+                .putShort((short) 1).putShort((short) 0).putShort((short) 1)
+                .putInt(offset).putInt(payload.length);
+
+        ByteBuffer out = ByteBuffer.allocate(Math.max(offset, ftypSize + metaSize) + payload.length);
+        out.putInt(ftypSize).put("ftypheic".getBytes(StandardCharsets.US_ASCII)).putInt(0)
+                .put("mif1".getBytes(StandardCharsets.US_ASCII));
+        out.putInt(metaSize).put("meta".getBytes(StandardCharsets.US_ASCII)).putInt(0)
+                .put(iinf.array()).put(iloc.array());
+        out.position(offset);
+        out.put(payload);
+        return out.array();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the clustering distance kernel.
+ */
+public class GeoDistanceTest {
+
+    @Test
+    public void distanceMeters_matchesKnownDistances() {
+        // Paris to London, about 343.5 km on the sphere
+        assertEquals(343_500, GeoDistance.distanceMeters(48.8566, 2.3522, 51.5074, -0.1278), 1_000);
+        // One degree of latitude
+        assertEquals(GeoDistance.METERS_PER_DEGREE, GeoDistance.distanceMeters(10, 20, 11, 20), 0.01);
+        assertEquals(0.0, GeoDistance.distanceMeters(37.44, -122.14, 37.44, -122.14), 0.0);
+    }
+
+    @Test
+    public void distanceMeters_wrapsAroundAntimeridian() {
+        double across = GeoDistance.distanceMeters(0, 179.9995, 0, -179.9995);
+        assertEquals(0.001 * GeoDistance.METERS_PER_DEGREE, across, 0.01);
+        assertTrue(GeoDistance.isWithinRadius(0, 179.9995, 0, -179.9995, 200));
+    }
+
+    @Test
+    public void isWithinRadius_agreesWithExactDistance() {
+        Random random = new Random(7);
+        double radius = 100.0;
+
+        for (int i = 0; i < 200_000; i++) {
+            double lat = random.nextDouble() * 170 - 85;
+            double lon = random.nextDouble() * 360 - 180;
+            double otherLat = lat + random.nextGaussian() * 0.002;
+            double otherLon = lon + random.nextGaussian() * 0.002;
+
+            boolean expected = GeoDistance.distanceMeters(lat, lon, otherLat, otherLon) <= radius;
+            assertEquals(expected, GeoDistance.isWithinRadius(lat, lon, otherLat, otherLon, radius));
+        }
+    }
+
+    @Test
+    public void clusterPhotos_runsOnPlainJvm() {
+        PhotoData first = photo("content://media/external/images/media/1", 37.4419, -122.1430, 0);
+        PhotoData second = photo("content://media/external/images/media/2", 37.4420, -122.1431, 60_000);
+        PhotoData farAway = photo("content://media/external/images/media/3", 40.7128, -74.0060, 0);
+
+        PhotoClusteringManager manager = new PhotoClusteringManager();
+        assertEquals(2, manager.clusterPhotos(Arrays.asList(first, second, farAway)).size());
+        assertEquals(first.getClusterId(), second.getClusterId());
+        assertNotEquals(first.getClusterId(), farAway.getClusterId());
+    }
+
+    private static PhotoData photo(String uri, double lat, double lon, long dateTaken) {
+        PhotoData photo = new PhotoData(uri);
+        photo.setLatitude(lat);
+        photo.setLongitude(lon);
+        photo.setDateTaken(dateTaken);
+        return photo;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for MediaStoreFilter.
+ */
+public class MediaStoreFilterTest {
+
+    @Test
+    public void apply_bindsOneArgumentPerPlaceholder() {
+        MediaStoreFilter filter = MediaStoreFilter.getDefault();
+
+        for (int sdkInt : new int[]{24, 28, 29, 34}) {
+            String selection = filter.apply("date_modified > ? OR _id > ?", sdkInt);
+            String[] args = filter.applyArgs(new String[]{"100", "7"}, sdkInt);
+
+            assertTrue(selection.startsWith("(date_modified > ? OR _id > ?) AND "));
+            assertEquals(selection.length() - selection.replace("?", "").length(), args.length);
+            assertEquals("100", args[0]);
+            assertEquals("7", args[1]);
+        }
+    }
+
+    @Test
+    public void excludedPaths_matchRelativePathOrAbsoluteData() {
+        MediaStoreFilter filter = new MediaStoreFilter(Collections.emptyList(),
+                Arrays.asList("WhatsApp/Media/"), Collections.emptyList(), 0, 0);
+
+        assertEquals("(relative_path IS NULL OR (relative_path NOT LIKE ?))", filter.apply(null, 29));
+        assertArrayEquals(new String[]{"%WhatsApp/Media/%"}, filter.applyArgs(null, 29));
+        assertEquals("(_data IS NULL OR (_data NOT LIKE ?))", filter.apply(null, 28));
+        assertArrayEquals(new String[]{"%/WhatsApp/Media/%"}, filter.applyArgs(null, 28));
+    }
+
+    @Test
+    public void emptyFilter_leavesTheQueryAlone() {
+        MediaStoreFilter filter = new MediaStoreFilter(Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), 0, 0);
+
+        assertNull(filter.apply(null, 29));
+        assertNull(filter.applyArgs(null, 29));
+        assertEquals("_id IN (?)", filter.apply("_id IN (?)", 29));
+        String[] args = {"5"};
+        assertSame(args, filter.applyArgs(args, 29));
+    }
+}
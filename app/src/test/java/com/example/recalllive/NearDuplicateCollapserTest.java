@@ -0,0 +1,136 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PerceptualHash and NearDuplicateCollapser.
+ */
+public class NearDuplicateCollapserTest {
+
+    private static final long START = 1_694_595_600_000L; // September 13, 2023
+    private static final long SECOND = 1000L;
+
+    @Test
+    public void dHash_survivesDownscaleAndBrightnessShift() {
+        int[] scene = scene(new Random(3), 90, 80);
+        long original = PerceptualHash.dHash(scene, 90, 80);
+
+        int[] brighter = new int[scene.length];
+        for (int i = 0; i < scene.length; i++) {
+            int gray = Math.min(255, (scene[i] & 0xFF) + 20);
+            brighter[i] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+        }
+
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(brighter, 90, 80)) <= 2);
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(halve(scene, 90, 80), 45, 40))
+                <= NearDuplicateCollapser.MAX_DISTANCE);
+        assertTrue(PerceptualHash.distance(original, PerceptualHash.dHash(scene(new Random(4), 90, 80), 90, 80))
+                > NearDuplicateCollapser.MAX_DISTANCE);
+        assertEquals(PerceptualHash.UNKNOWN, PerceptualHash.dHash(new int[8 * 8], 8, 8));
+    }
+
+    @Test
+    public void collapse_keepsEarliestOfEachBurst() {
+        long burst = 0x0F0F_3C3C_A5A5_F00FL;
+        PhotoData first = photo("first", START, burst);
+        PhotoData second = photo("second", START + 2 * SECOND, burst ^ 0b101);
+        PhotoData third = photo("third", START + 4 * SECOND, burst ^ 0b1110);
+        PhotoData other = photo("other", START + 3 * SECOND, ~burst);
+        PhotoData later = photo("later", START + 10 * 60 * SECOND, burst);
+
+        NearDuplicateCollapser.Result result = NearDuplicateCollapser.collapse(new ArrayList<>(),
+                Arrays.asList(third, later, other, second, first));
+
+        assertEquals(Arrays.asList(first, other, later), result.getKeptPhotos());
+        assertEquals(2, result.getDuplicates().size());
+        for (PhotoDuplicate duplicate : result.getDuplicates()) {
+            assertEquals("first", duplicate.getRepresentativeUri());
+        }
+    }
+
+    @Test
+    public void collapse_neverDemotesStoredPhotos() {
+        long hash = 0x1234_5678_9ABC_DEF0L;
+        PhotoData stored = photo("stored", START + 5 * SECOND, hash);
+        PhotoData earlier = photo("earlier", START, hash ^ 1);
+        PhotoData unhashed = photo("unhashed", START, PerceptualHash.UNKNOWN);
+
+        NearDuplicateCollapser.Result result = NearDuplicateCollapser.collapse(
+                Arrays.asList(stored), Arrays.asList(earlier, unhashed));
+
+        assertEquals(Arrays.asList(unhashed), result.getKeptPhotos());
+        assertEquals("earlier", result.getDuplicates().get(0).getPhotoUri());
+        assertEquals("stored", result.getDuplicates().get(0).getRepresentativeUri());
+    }
+
+    @Test
+    public void offer_matchesCollapseForOrderedPhotos() {
+        Random random = new Random(5);
+        List<PhotoData> photos = new ArrayList<>();
+        long time = START;
+        for (int burst = 0; burst < 300; burst++) {
+            long hash = random.nextLong();
+            int shots = 1 + random.nextInt(4);
+            for (int shot = 0; shot < shots; shot++) {
+                long noisy = hash ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64));
+                photos.add(photo("p" + photos.size(), time, noisy));
+                time += SECOND;
+            }
+            time += random.nextInt(10) * 60 * SECOND;
+        }
+
+        NearDuplicateCollapser collapser = new NearDuplicateCollapser();
+        List<PhotoData> kept = new ArrayList<>();
+        for (PhotoData photo : photos) {
+            if (collapser.offer(photo) == null) {
+                kept.add(photo);
+            }
+        }
+
+        NearDuplicateCollapser.Result result = NearDuplicateCollapser.collapse(new ArrayList<>(), photos);
+        assertEquals(result.getKeptPhotos(), kept);
+        assertEquals(photos.size(), kept.size() + result.getDuplicates().size());
+    }
+
+    private static PhotoData photo(String uri, long dateTaken, long hash) {
+        PhotoData photo = new PhotoData(uri);
+        photo.setDateTaken(dateTaken);
+        photo.setPerceptualHash(hash);
+        return photo;
+    }
+
+    /**
+     * Gray blocks of random brightness, 10x10 pixels each
+     */
+    private static int[] scene(Random random, int width, int height) {
+        int[] blocks = new int[(width / 10) * (height / 10)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = random.nextInt(200);
+        }
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gray = blocks[(y / 10) * (width / 10) + x / 10];
+                pixels[y * width + x] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] halve(int[] pixels, int width, int height) {
+        int[] half = new int[(width / 2) * (height / 2)];
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                half[y * (width / 2) + x] = pixels[2 * y * width + 2 * x];
+            }
+        }
+        return half;
+    }
+}
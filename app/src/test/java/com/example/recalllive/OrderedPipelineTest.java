@@ -0,0 +1,114 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for OrderedPipeline.
+ */
+public class OrderedPipelineTest {
+
+    @Test
+    public void results_arriveInSubmissionOrderDespiteUnevenTasks() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Random random = new Random(1);
+            List<Integer> delays = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                delays.add(random.nextInt(3));
+            }
+
+            List<Integer> results = new ArrayList<>();
+            OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(pool, 8,
+                    i -> {
+                        sleep(delays.get(i));
+                        return i;
+                    },
+                    results::add);
+            for (int i = 0; i < delays.size(); i++) {
+                pipeline.submit(i);
+            }
+            pipeline.finish();
+
+            for (int i = 0; i < delays.size(); i++) {
+                assertEquals(Integer.valueOf(i), results.get(i));
+            }
+            assertEquals(delays.size(), pipeline.getEmittedCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void submit_blocksOnceTheWindowIsFull() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            AtomicInteger started = new AtomicInteger();
+            int[] emitted = new int[1];
+            OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(pool, 5,
+                    i -> {
+                        started.incrementAndGet();
+                        sleep(1);
+                        return i;
+                    },
+                    i -> emitted[0]++);
+
+            for (int i = 0; i < 100; i++) {
+                pipeline.submit(i);
+                assertTrue(i + 1 - emitted[0] <= 5);
+            }
+            pipeline.finish();
+            assertEquals(100, started.get());
+            assertEquals(100, emitted[0]);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nullExecutor_runsInline() {
+        List<String> results = new ArrayList<>();
+        OrderedPipeline<Integer, String> pipeline = new OrderedPipeline<>(null, 1,
+                i -> Thread.currentThread().getName() + ":" + i, results::add);
+        pipeline.submit(1);
+
+        assertEquals(Thread.currentThread().getName() + ":1", results.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedTask_surfacesOnTheProducer() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(pool, 2,
+                    i -> {
+                        if (i == 3) {
+                            throw new IllegalArgumentException("bad item");
+                        }
+                        return i;
+                    },
+                    i -> { });
+            for (int i = 0; i < 10; i++) {
+                pipeline.submit(i);
+            }
+            pipeline.finish();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PhotoClusteringManager on synthetic libraries.
+ */
+public class PhotoClusteringManagerTest {
+
+    private static final long START = 1_694_595_600_000L; // September 13, 2023
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private final PhotoClusteringManager manager = new PhotoClusteringManager();
+
+    @Test
+    public void clusterIds_areStableAcrossRunsAndInputOrder() {
+        List<PhotoData> library = syntheticLibrary(new Random(1), 2_000);
+        Map<String, String> firstRun = clusterIdByUri(manager.clusterPhotos(copyOf(library)));
+
+        List<PhotoData> shuffled = copyOf(library);
+        Collections.shuffle(shuffled, new Random(2));
+        Map<String, String> secondRun = clusterIdByUri(manager.clusterPhotos(shuffled));
+
+        assertEquals(firstRun, secondRun);
+    }
+
+    @Test
+    public void clusterIncremental_matchesFullClustering() {
+        Random random = new Random(3);
+        List<PhotoData> library = syntheticLibrary(random, 3_000);
+        List<PhotoClusteringManager.PhotoCluster> stored = manager.clusterPhotos(copyOf(library));
+
+        List<PhotoData> added = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            added.add(syntheticPhoto(random, library.size() + i));
+        }
+        Set<String> removed = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            removed.add(library.get(random.nextInt(library.size())).getPhotoUri());
+        }
+
+        Affected affected = affectedClusters(stored, added, removed);
+        PhotoClusteringManager.IncrementalResult result = manager.clusterIncremental(affected.clusters,
+                added, removed, affected.pinnedLocationNames, affected.addedPhotoLocations);
+
+        assertMatchesFullClustering(library, stored, added, removed, result);
+        // Deterministic IDs mean most affected clusters come back unchanged
+        assertTrue(result.getChangedClusters().size() < affected.clusters.size());
+    }
+
+    @Test
+    public void clusterIncremental_loadsOnlyNearbyTimeClustersOfAnExtendedLocation() {
+        // A photo at home every day for two months, then one more at home on the last day
+        List<PhotoData> library = new ArrayList<>();
+        for (int day = 0; day < 60; day++) {
+            PhotoData photo = new PhotoData("content://media/external/images/media/" + day);
+            photo.setLatitude(37.7749 + (day % 5) * 0.00002);
+            photo.setLongitude(-122.4194);
+            photo.setDateTaken(START + day * 24 * HOUR);
+            library.add(photo);
+        }
+        List<PhotoClusteringManager.PhotoCluster> stored = manager.clusterPhotos(copyOf(library));
+        String home = PhotoClusteringManager.getLocationPrefix(stored.get(0).getClusterId());
+
+        PhotoData addedPhoto = new PhotoData("content://media/external/images/media/60");
+        addedPhoto.setLatitude(37.7749);
+        addedPhoto.setLongitude(-122.4194);
+        addedPhoto.setDateTaken(START + 59 * 24 * HOUR + HOUR);
+        List<PhotoData> added = new ArrayList<>();
+        added.add(addedPhoto);
+
+        Affected affected = affectedClusters(stored, added, new HashSet<>());
+        PhotoClusteringManager.IncrementalResult result = manager.clusterIncremental(affected.clusters,
+                added, new HashSet<>(), affected.pinnedLocationNames, affected.addedPhotoLocations);
+
+        assertEquals(1, affected.clusters.size());
+        assertEquals(home, affected.addedPhotoLocations.get(addedPhoto.getPhotoUri()));
+        assertMatchesFullClustering(library, stored, added, new HashSet<>(), result);
+    }
+
+    @Test
+    public void clusterIncremental_overDateOrderedStretches_matchesFullClustering() {
+        // A full ingest adds the library a stretch at a time, each as a delta to what is stored
+        List<PhotoData> library = syntheticLibrary(new Random(8), 3_000);
+        library.sort((a, b) -> Long.compare(a.getDateTaken(), b.getDateTaken()));
+
+        Map<String, PhotoClusteringManager.PhotoCluster> stored = new HashMap<>();
+        for (int start = 0; start < library.size(); start += 400) {
+            List<PhotoData> stretch = copyOf(library.subList(start, Math.min(start + 400, library.size())));
+            Affected affected = affectedClusters(new ArrayList<>(stored.values()), stretch, new HashSet<>());
+            PhotoClusteringManager.IncrementalResult result = manager.clusterIncremental(affected.clusters,
+                    stretch, new HashSet<>(), affected.pinnedLocationNames, affected.addedPhotoLocations);
+            stored.keySet().removeAll(result.getRemovedClusterIds());
+            for (PhotoClusteringManager.PhotoCluster cluster : result.getChangedClusters()) {
+                stored.put(cluster.getClusterId(), cluster);
+            }
+        }
+
+        Map<String, String> expected = clusterIdByUri(manager.clusterPhotos(copyOf(library)));
+        assertEquals(expected, clusterIdByUri(new ArrayList<>(stored.values())));
+    }
+
+    @Test
+    public void clusterIncremental_withEmptyDeltaChangesNothing() {
+        List<PhotoClusteringManager.PhotoCluster> stored =
+                manager.clusterPhotos(syntheticLibrary(new Random(4), 500));
+
+        PhotoClusteringManager.IncrementalResult result = manager.clusterIncremental(
+                stored, new ArrayList<>(), new HashSet<>());
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void unlocatedPhotos_joinNearestGpsSessionOrTimeSessions() {
+        List<PhotoData> photos = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            PhotoData photo = new PhotoData("content://media/external/images/media/" + i);
+            photo.setLatitude(37.7749 + i * 0.00001);
+            photo.setLongitude(-122.4194);
+            photo.setDateTaken(START + i * 6 * 60 * 1000L);
+            photos.add(photo);
+        }
+        // Shortly after the visit, then a burst of screenshots the next evening and one stray scan
+        PhotoData afterVisit = new PhotoData("content://media/external/images/media/10");
+        afterVisit.setDateTaken(START + 2 * HOUR);
+        photos.add(afterVisit);
+        for (int i = 0; i < 50; i++) {
+            PhotoData screenshot = new PhotoData("content://media/external/images/media/" + (11 + i));
+            screenshot.setDateTaken(START + 34 * HOUR + i * 60 * 1000L);
+            photos.add(screenshot);
+        }
+        PhotoData scan = new PhotoData("content://media/external/images/media/61");
+        scan.setDateTaken(START + 5 * 24 * HOUR);
+        photos.add(scan);
+
+        Map<String, String> clusterIds = clusterIdByUri(manager.clusterPhotos(photos));
+
+        assertEquals(3, new HashSet<>(clusterIds.values()).size());
+        assertEquals(clusterIds.get(photos.get(0).getPhotoUri()), clusterIds.get(afterVisit.getPhotoUri()));
+        assertEquals(clusterIds.get(photos.get(11).getPhotoUri()), clusterIds.get(photos.get(60).getPhotoUri()));
+        assertTrue(clusterIds.get(scan.getPhotoUri()).startsWith("no_location_"));
+    }
+
+    @Test
+    public void parallelClustering_matchesSequential() {
+        List<PhotoData> library = spreadLibrary(new Random(5), 2 * PhotoClusteringManager.PARALLEL_THRESHOLD);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<PhotoClusteringManager.PhotoCluster> sequential = manager.clusterPhotos(copyOf(library));
+            List<PhotoClusteringManager.PhotoCluster> parallel =
+                    new PhotoClusteringManager(pool).clusterPhotos(copyOf(library));
+
+            assertEquals(sequential.size(), parallel.size());
+            for (int c = 0; c < sequential.size(); c++) {
+                PhotoClusteringManager.PhotoCluster expected = sequential.get(c);
+                PhotoClusteringManager.PhotoCluster actual = parallel.get(c);
+                assertEquals(expected.getClusterId(), actual.getClusterId());
+                assertEquals(expected.getLocationName(), actual.getLocationName());
+                assertEquals(uris(expected.getPhotos()), uris(actual.getPhotos()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Photos around a few dozen places over two months, a fifth of them without GPS
+     */
+    private void assertMatchesFullClustering(List<PhotoData> library, List<PhotoClusteringManager.PhotoCluster> stored,
+                                             List<PhotoData> added, Set<String> removed,
+                                             PhotoClusteringManager.IncrementalResult result) {
+        Map<String, PhotoClusteringManager.PhotoCluster> merged = new HashMap<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : stored) {
+            merged.put(cluster.getClusterId(), cluster);
+        }
+        for (String clusterId : result.getRemovedClusterIds()) {
+            merged.remove(clusterId);
+        }
+        for (PhotoClusteringManager.PhotoCluster cluster : result.getChangedClusters()) {
+            merged.put(cluster.getClusterId(), cluster);
+        }
+
+        List<PhotoData> finalLibrary = new ArrayList<>();
+        for (PhotoData photo : library) {
+            if (!removed.contains(photo.getPhotoUri())) {
+                finalLibrary.add(photo);
+            }
+        }
+        finalLibrary.addAll(added);
+
+        List<PhotoClusteringManager.PhotoCluster> expected = manager.clusterPhotos(copyOf(finalLibrary));
+        assertEquals(clusterIdByUri(expected), clusterIdByUri(new ArrayList<>(merged.values())));
+        assertEquals(locationNameByUri(expected), locationNameByUri(new ArrayList<>(merged.values())));
+    }
+
+    static List<PhotoData> syntheticLibrary(Random random, int size) {
+        List<PhotoData> photos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            photos.add(syntheticPhoto(random, i));
+        }
+        return photos;
+    }
+
+    static PhotoData syntheticPhoto(Random random, int id) {
+        PhotoData photo = new PhotoData("content://media/external/images/media/" + id);
+        if (random.nextInt(5) > 0) {
+            int place = random.nextInt(40);
+            photo.setLatitude(37.0 + place * 0.01 + random.nextGaussian() * 0.0005);
+            photo.setLongitude(-122.0 + place * 0.013 + random.nextGaussian() * 0.0005);
+        }
+        photo.setDateTaken(START + (long) (random.nextDouble() * 60 * 24 * HOUR));
+        return photo;
+    }
+
+    /**
+     * Photos around thousands of places spread over a region, like a library built over years
+     */
+    static List<PhotoData> spreadLibrary(Random random, int size) {
+        List<PhotoData> photos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PhotoData photo = new PhotoData("content://media/external/images/media/" + i);
+            int place = random.nextInt(size / 20);
+            photo.setLatitude(35.0 + (place % 97) * 0.07 + random.nextGaussian() * 0.0004);
+            photo.setLongitude(-120.0 + (place / 97) * 0.09 + random.nextGaussian() * 0.0004);
+            photo.setDateTaken(START + (long) (random.nextDouble() * 3 * 365 * 24 * HOUR));
+            photos.add(photo);
+        }
+        return photos;
+    }
+
+    static List<PhotoData> copyOf(List<PhotoData> photos) {
+        List<PhotoData> copies = new ArrayList<>(photos.size());
+        for (PhotoData photo : photos) {
+            PhotoData copy = new PhotoData(photo.getPhotoUri());
+            copy.setDateTaken(photo.getDateTaken());
+            copy.setLatitude(photo.getLatitude());
+            copy.setLongitude(photo.getLongitude());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    static Map<String, String> clusterIdByUri(List<PhotoClusteringManager.PhotoCluster> clusters) {
+        Map<String, String> clusterIds = new HashMap<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+            for (PhotoData photo : cluster.getPhotos()) {
+                assertNull("photo in two clusters", clusterIds.put(photo.getPhotoUri(), cluster.getClusterId()));
+            }
+        }
+        return clusterIds;
+    }
+
+    private static Map<String, String> locationNameByUri(List<PhotoClusteringManager.PhotoCluster> clusters) {
+        Map<String, String> names = new HashMap<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+            for (PhotoData photo : cluster.getPhotos()) {
+                names.put(photo.getPhotoUri(), photo.getLocationName());
+            }
+        }
+        return names;
+    }
+
+    private static List<String> uris(List<PhotoData> photos) {
+        List<String> uris = new ArrayList<>(photos.size());
+        for (PhotoData photo : photos) {
+            uris.add(photo.getPhotoUri());
+        }
+        return uris;
+    }
+
+    // Mirrors the Room lookups in PhotoProcessingService.loadAffectedClusters
+    private static Affected affectedClusters(
+            List<PhotoClusteringManager.PhotoCluster> stored, List<PhotoData> added, Set<String> removed) {
+        List<Long> deltaTimes = new ArrayList<>();
+        Set<String> addedUris = new HashSet<>(uris(added));
+        for (PhotoData photo : added) {
+            deltaTimes.add(photo.getDateTaken());
+        }
+        Set<String> wholePrefixes = new HashSet<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : stored) {
+            for (PhotoData member : cluster.getPhotos()) {
+                if (removed.contains(member.getPhotoUri()) || addedUris.contains(member.getPhotoUri())) {
+                    deltaTimes.add(member.getDateTaken());
+                    wholePrefixes.add(PhotoClusteringManager.getLocationPrefix(cluster.getClusterId()));
+                }
+            }
+        }
+
+        PhotoClusteringManager.LocationLinks links = new PhotoClusteringManager.LocationLinks(added);
+        Map<String, Long> earliestLocated = new HashMap<>();
+        Map<String, String> locationNames = new HashMap<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : stored) {
+            String prefix = PhotoClusteringManager.getLocationPrefix(cluster.getClusterId());
+            long start = Long.parseLong(cluster.getClusterId().substring(prefix.length()));
+            earliestLocated.merge(prefix, start, Math::min);
+            for (PhotoData member : cluster.getPhotos()) {
+                locationNames.putIfAbsent(prefix, member.getLocationName());
+                if (member.hasLocation()) {
+                    links.addStoredPhoto(cluster.getClusterId(), member.getLatitude(), member.getLongitude());
+                }
+            }
+        }
+
+        Affected affected = new Affected();
+        affected.addedPhotoLocations.putAll(links.resolve(wholePrefixes, earliestLocated::get));
+        Set<String> pinnedPrefixes = new HashSet<>(affected.addedPhotoLocations.values());
+
+        Set<String> partialClusterIds = new HashSet<>();
+        for (PhotoClusteringManager.PhotoCluster cluster : stored) {
+            String prefix = PhotoClusteringManager.getLocationPrefix(cluster.getClusterId());
+            boolean inTimeRange = false;
+            for (PhotoData member : cluster.getPhotos()) {
+                for (long time : deltaTimes) {
+                    inTimeRange |= Math.abs(member.getDateTaken() - time)
+                            <= 2 * PhotoClusteringManager.TIME_CLUSTER_WINDOW_MILLIS;
+                }
+            }
+            if (!inTimeRange || wholePrefixes.contains(prefix)) {
+                continue;
+            }
+            if (PhotoClusteringManager.isAnchoredLocation(prefix)) {
+                partialClusterIds.add(cluster.getClusterId());
+                pinnedPrefixes.add(prefix);
+            } else {
+                wholePrefixes.add(prefix);
+            }
+        }
+
+        for (PhotoClusteringManager.PhotoCluster cluster : stored) {
+            if (wholePrefixes.contains(PhotoClusteringManager.getLocationPrefix(cluster.getClusterId()))
+                    || partialClusterIds.contains(cluster.getClusterId())) {
+                PhotoClusteringManager.PhotoCluster copy =
+                        new PhotoClusteringManager.PhotoCluster(cluster.getClusterId());
+                copy.setPhotos(copyOf(cluster.getPhotos()));
+                affected.clusters.add(copy);
+            }
+        }
+        for (String prefix : pinnedPrefixes) {
+            affected.pinnedLocationNames.put(prefix, locationNames.get(prefix));
+        }
+        return affected;
+    }
+
+    private static class Affected {
+        final List<PhotoClusteringManager.PhotoCluster> clusters = new ArrayList<>();
+        final Map<String, String> pinnedLocationNames = new HashMap<>();
+        final Map<String, String> addedPhotoLocations = new HashMap<>();
+    }
+}
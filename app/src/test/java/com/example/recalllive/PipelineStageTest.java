@@ -0,0 +1,78 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PipelineStage.
+ */
+public class PipelineStageTest {
+
+    @Test
+    public void chainedStages_processEveryItemInOrderThenFinish() {
+        List<String> output = new ArrayList<>();
+        PipelineStage<String> sink = new PipelineStage<String>("sink", 2, new PipelineStage.Worker<String>() {
+            @Override
+            public void process(String item) {
+                output.add(item);
+            }
+
+            @Override
+            public void finish() {
+                output.add("end");
+            }
+        }).start();
+        PipelineStage<Integer> square = new PipelineStage<Integer>("square", 2,
+                item -> sink.put(String.valueOf(item * item))).start();
+
+        for (int i = 1; i <= 100; i++) {
+            square.put(i);
+        }
+        square.finish();
+        sink.finish();
+
+        assertEquals(101, output.size());
+        assertEquals("1", output.get(0));
+        assertEquals("10000", output.get(99));
+        assertEquals("end", output.get(100));
+        assertEquals(100, square.getProcessedCount());
+        assertEquals(100, sink.getProcessedCount());
+    }
+
+    @Test
+    public void slowStage_blocksItsProducer() {
+        PipelineStage<Integer> slow = new PipelineStage<Integer>("slow", 1, item -> Thread.sleep(5)).start();
+
+        for (int i = 0; i < 20; i++) {
+            slow.put(i);
+        }
+        slow.finish();
+
+        assertTrue(slow.getBlockedMillis() > 0);
+        assertTrue(slow.getBusyMillis() >= 20 * 5);
+        assertTrue(slow.report().startsWith("slow: 20 items"));
+    }
+
+    @Test
+    public void failedWorker_surfacesOnTheProducer() {
+        PipelineStage<Integer> failing = new PipelineStage<Integer>("failing", 1, item -> {
+            if (item == 3) {
+                throw new IllegalArgumentException("bad item");
+            }
+        }).start();
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                failing.put(i);
+            }
+            failing.finish();
+            fail("Expected the failure to surface");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the grid index behind the clustering radius queries.
+ */
+public class SpatialGridIndexTest {
+
+    @Test
+    public void getCandidates_wrapsAroundAntimeridian() {
+        SpatialGridIndex index = new SpatialGridIndex(200);
+        index.add(0, 0, 179.9995);
+        index.add(1, 0, -179.9995);
+        index.add(2, 0, 0);
+
+        assertTrue(GeoDistance.isWithinRadius(0, 179.9995, 0, -179.9995, 200));
+        assertTrue(contains(index.getCandidates(0, 179.9995), 1));
+        assertTrue(contains(index.getCandidates(0, -179.9995), 0));
+        assertFalse(contains(index.getCandidates(0, -179.9995), 2));
+
+        // Same longitude written the other way round lands in the same cell
+        index.add(3, 0, 180.0005);
+        assertTrue(contains(index.getCandidates(0, -179.9995), 3));
+        assertTrue(index.remove(3, 0, -179.9995));
+    }
+
+    @Test
+    public void getCandidates_includesEveryPointWithinRadius() {
+        Random random = new Random(11);
+        double radius = 100.0;
+        int count = 20_000;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+
+        SpatialGridIndex index = new SpatialGridIndex(radius);
+        for (int i = 0; i < count; i++) {
+            // Clustered around the antimeridian and near the poles, where columns are widest
+            lats[i] = (random.nextBoolean() ? 0 : 89.99) + random.nextGaussian() * 0.001;
+            lons[i] = wrap(180 + random.nextGaussian() * 0.002);
+            index.add(i, lats[i], lons[i]);
+        }
+
+        for (int i = 0; i < count; i += 97) {
+            int[] candidates = index.getCandidates(lats[i], lons[i]);
+            for (int j = 0; j < count; j++) {
+                if (GeoDistance.isWithinRadius(lats[i], lons[i], lats[j], lons[j], radius)) {
+                    assertTrue("missing " + j + " near " + i, contains(candidates, j));
+                }
+            }
+        }
+    }
+
+    private static double wrap(double longitude) {
+        return longitude >= 180 ? longitude - 360 : longitude;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        return Arrays.stream(ids).anyMatch(candidate -> candidate == id);
+    }
+}
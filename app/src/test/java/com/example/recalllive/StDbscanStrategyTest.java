@@ -0,0 +1,87 @@
+package com.example.recalllive;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the density-adaptive ST-DBSCAN strategy against the default one.
+ */
+public class StDbscanStrategyTest {
+
+    private static final long START = 1_694_595_600_000L; // September 13, 2023
+    private static final long MINUTE = 60 * 1000L;
+
+    private final PhotoClusteringManager defaultManager = new PhotoClusteringManager();
+    private final PhotoClusteringManager stDbscanManager = new PhotoClusteringManager(new StDbscanStrategy(), null);
+
+    @Test
+    public void ruralWalk_staysOneCluster() {
+        // A photo every 400 m and 20 minutes along a country road
+        List<PhotoData> walk = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            PhotoData photo = new PhotoData("content://media/external/images/media/" + i);
+            photo.setLatitude(46.0 + i * 400.0 / GeoDistance.METERS_PER_DEGREE);
+            photo.setLongitude(8.0);
+            photo.setDateTaken(START + i * 20 * MINUTE);
+            walk.add(photo);
+        }
+
+        assertEquals(1, stDbscanManager.clusterPhotos(PhotoClusteringManagerTest.copyOf(walk)).size());
+        assertEquals(20, defaultManager.clusterPhotos(PhotoClusteringManagerTest.copyOf(walk)).size());
+    }
+
+    @Test
+    public void denseCity_separatesNearbySpots() {
+        // Two busy spots 120 m apart, visited in the same afternoon
+        Random random = new Random(3);
+        List<PhotoData> city = new ArrayList<>();
+        Set<String> firstSpot = new HashSet<>();
+        for (int i = 0; i < 400; i++) {
+            PhotoData photo = new PhotoData("content://media/external/images/media/" + i);
+            int spot = i % 2;
+            photo.setLatitude(48.8566 + spot * 120.0 / GeoDistance.METERS_PER_DEGREE
+                    + random.nextGaussian() * 8.0 / GeoDistance.METERS_PER_DEGREE);
+            photo.setLongitude(2.3522 + random.nextGaussian() * 0.0001);
+            photo.setDateTaken(START + random.nextInt(120) * MINUTE);
+            if (spot == 0) {
+                firstSpot.add(photo.getPhotoUri());
+            }
+            city.add(photo);
+        }
+
+        assertEquals(1, defaultManager.clusterPhotos(PhotoClusteringManagerTest.copyOf(city)).size());
+
+        List<PhotoClusteringManager.PhotoCluster> clusters =
+                stDbscanManager.clusterPhotos(PhotoClusteringManagerTest.copyOf(city));
+        assertEquals(2, clusters.size());
+        for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+            Set<String> members = new HashSet<>();
+            for (PhotoData photo : cluster.getPhotos()) {
+                members.add(photo.getPhotoUri());
+            }
+            assertTrue(members.equals(firstSpot) || Collections.disjoint(members, firstSpot));
+        }
+    }
+
+    @Test
+    public void clusterIds_areStableAcrossInputOrder() {
+        List<PhotoData> library = PhotoClusteringManagerTest.syntheticLibrary(new Random(1), 2_000);
+        Map<String, String> firstRun = PhotoClusteringManagerTest.clusterIdByUri(
+                stDbscanManager.clusterPhotos(PhotoClusteringManagerTest.copyOf(library)));
+
+        List<PhotoData> shuffled = PhotoClusteringManagerTest.copyOf(library);
+        Collections.shuffle(shuffled, new Random(2));
+        Map<String, String> secondRun = PhotoClusteringManagerTest.clusterIdByUri(stDbscanManager.clusterPhotos(shuffled));
+
+        assertEquals(firstRun, secondRun);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.recalllive.benchmark;
+
+import com.example.recalllive.PhotoClusteringManager;
+import com.example.recalllive.PhotoData;
+import com.example.recalllive.StDbscanStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full clustering runs over synthetic libraries through clusterPhotos: columns built from the
+ * photo list, then clustered, sequentially or across a fork/join pool
+ * of spatial partitions. Allocation rate comes from the gc profiler configured in build.gradle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClusteringBenchmark {
+
+    @Param({"1000", "10000", "50000", "200000"})
+    public int photoCount;
+
+    @Param({"fixed-radius", "st-dbscan"})
+    public String strategy;
+
+    // 0 clusters sequentially on the benchmark thread
+    @Param({"0", "4", "8"})
+    public int threads;
+
+    private List<PhotoData> library;
+    private PhotoClusteringManager manager;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = SyntheticLibrary.generate(photoCount, 42);
+        pool = threads > 0 ? new ForkJoinPool(threads) : null;
+        manager = "st-dbscan".equals(strategy)
+                ? new PhotoClusteringManager(new StDbscanStrategy(), pool)
+                : new PhotoClusteringManager(pool);
+
+        // Deterministic for a given library, so once per trial is enough
+        List<PhotoClusteringManager.PhotoCluster> clusters = manager.clusterPhotos(library);
+        int singletons = 0;
+        for (PhotoClusteringManager.PhotoCluster cluster : clusters) {
+            if (cluster.getPhotoCount() == 1) {
+                singletons++;
+            }
+        }
+        System.out.printf(Locale.US, "%n%d photos, %s, %d threads: %d clusters, %d singletons%n",
+                photoCount, strategy, threads, clusters.size(), singletons);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<PhotoClusteringManager.PhotoCluster> clusterLibrary() {
+        return manager.clusterPhotos(library);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.recalllive.benchmark;
+
+import com.example.recalllive.ExifHeaderParser;
+import com.example.recalllive.OrderedPipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pass of EXIF header parses over a directory of images, serially and through the bounded
+ * OrderedPipeline the MediaStore scan uses. Each task runs ExifHeaderParser, the scan's fast
+ * path; androidx ExifInterface, its fallback, does not run on the plain JVM.
+ *
+ * Point -Dexif.fixtures at a real photo directory to measure actual storage; otherwise 10k
+ * synthetic JPEG files are written to a temp directory. Drop the page cache between runs for
+ * cold-storage numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExifReadBenchmark {
+
+    private static final int FIXTURE_COUNT = 10_000;
+    private static final int HEADER_BYTES = 64 * 1024;
+    private static final int READS_IN_FLIGHT = 32;
+    private static final ThreadLocal<ExifHeaderParser> PARSER =
+            ThreadLocal.withInitial(() -> new ExifHeaderParser(TimeZone.getDefault()));
+
+    // 0 reads serially on the benchmark thread
+    @Param({"0", "4", "8"})
+    public int threads;
+
+    private List<File> files;
+    private Path generatedDir;
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String fixtures = System.getProperty("exif.fixtures");
+        File dir;
+        if (fixtures != null) {
+            dir = new File(fixtures);
+        } else {
+            generatedDir = Files.createTempDirectory("exif-fixtures");
+            writeFixtures(generatedDir, FIXTURE_COUNT);
+            dir = generatedDir.toFile();
+        }
+
+        File[] listed = dir.listFiles(File::isFile);
+        files = listed != null ? Arrays.asList(listed) : new ArrayList<>();
+        pool = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (generatedDir != null) {
+            for (File file : generatedDir.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(generatedDir);
+        }
+    }
+
+    @Benchmark
+    public long readHeaders() {
+        long[] parsed = new long[1];
+        OrderedPipeline<File, Integer> pipeline = new OrderedPipeline<>(pool, READS_IN_FLIGHT,
+                ExifReadBenchmark::readHeader, ok -> parsed[0] += ok);
+        for (File file : files) {
+            pipeline.submit(file);
+        }
+        pipeline.finish();
+        return parsed[0];
+    }
+
+    private static int readHeader(File file) {
+        ExifHeaderParser parser = PARSER.get();
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel channel = in.getChannel()) {
+            return parser.parse(channel) ? 1 : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * JPEG-shaped files: SOI, an Exif APP1 segment with an empty IFD0, then filler up to a
+     * typical header size
+     */
+    private static void writeFixtures(Path dir, int count) throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < count; i++) {
+            byte[] body = new byte[HEADER_BYTES + random.nextInt(HEADER_BYTES)];
+            random.nextBytes(body);
+            byte[] head = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x00, 0x16,
+                    'E', 'x', 'i', 'f', 0, 0, 'I', 'I', 0x2A, 0x00, 0x08, 0x00, 0x00, 0x00,
+                    0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+            System.arraycopy(head, 0, body, 0, head.length);
+            Files.write(dir.resolve("IMG_" + i + ".jpg"), body, StandardOpenOption.CREATE_NEW);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.recalllive.benchmark;
+
+import com.example.recalllive.GeoDistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pair cost of the clustering distance kernel: the full haversine, a radius check on near
+ * pairs (which falls through to the haversine) and one on far pairs (rejected by the prefilter).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoDistanceBenchmark {
+
+    private static final int PAIRS = 1 << 16;
+    private static final double RADIUS_METERS = 100.0;
+
+    // lat1, lon1, lat2, lon2 per pair
+    private double[] near;
+    private double[] far;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        near = new double[PAIRS * 4];
+        far = new double[PAIRS * 4];
+        Random random = new Random(11);
+
+        for (int i = 0; i < PAIRS; i++) {
+            double lat = random.nextDouble() * 120 - 60;
+            double lon = random.nextDouble() * 360 - 180;
+            fillPair(near, i, lat, lon, lat + random.nextGaussian() * 0.0005, lon + random.nextGaussian() * 0.0005);
+            fillPair(far, i, lat, lon, lat + 0.5 + random.nextDouble(), lon + random.nextDouble());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double haversine() {
+        double sum = 0;
+        for (int i = 0; i < near.length; i += 4) {
+            sum += GeoDistance.distanceMeters(near[i], near[i + 1], near[i + 2], near[i + 3]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int withinRadiusNear() {
+        return countWithinRadius(near);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int withinRadiusFar() {
+        return countWithinRadius(far);
+    }
+
+    private static int countWithinRadius(double[] coordinates) {
+        int hits = 0;
+        for (int i = 0; i < coordinates.length; i += 4) {
+            if (GeoDistance.isWithinRadius(
+                    coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3], RADIUS_METERS)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static void fillPair(double[] target, int pair, double lat1, double lon1, double lat2, double lon2) {
+        target[pair * 4] = lat1;
+        target[pair * 4 + 1] = lon1;
+        target[pair * 4 + 2] = lat2;
+        target[pair * 4 + 3] = lon2;
+    }
+}
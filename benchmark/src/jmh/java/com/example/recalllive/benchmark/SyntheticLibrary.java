@@ -0,0 +1,175 @@
+package com.example.recalllive.benchmark;
+
+import com.example.recalllive.GeoDistance;
+import com.example.recalllive.PhotoData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic photo libraries shaped like a real camera roll.
+ *
+ * Unlike TestDataGenerator's hand-written scenarios, these scale to any size: photos come in
+ * bursts at home, at a set of favorite places around town, along walks and during trips to
+ * other cities, with hours of the day weighted like phone camera use. Some bursts carry no
+ * GPS at all (screenshots, scans), and every location gets a few meters of GPS noise.
+ */
+public final class SyntheticLibrary {
+
+    private static final long START = 1_577_836_800_000L; // January 1, 2020
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static final double HOME_LAT = 37.4419;
+    private static final double HOME_LNG = -122.1430;
+    private static final int FAVORITE_PLACES = 60;
+    private static final int CITIES = 12;
+
+    // Relative photo activity per hour of day, from midnight
+    private static final int[] HOUR_WEIGHTS = {
+            1, 1, 0, 0, 0, 1, 2, 3, 4, 5, 6, 7, 8, 7, 6, 6, 7, 8, 9, 9, 8, 6, 4, 2};
+
+    private final Random random;
+    private final List<PhotoData> photos;
+    private final int size;
+    private final long span;
+    private final double[][] favorites = new double[FAVORITE_PLACES][];
+    private final double[][] cities = new double[CITIES][];
+
+    private SyntheticLibrary(int size, long seed) {
+        this.random = new Random(seed);
+        this.photos = new ArrayList<>(size);
+        this.size = size;
+        // Larger libraries cover more years, at a few dozen photos per day at most
+        this.span = Math.max(1, Math.min(10, size / 5_000)) * 365 * DAY;
+
+        for (int i = 0; i < FAVORITE_PLACES; i++) {
+            favorites[i] = offset(HOME_LAT, HOME_LNG, 500 + random.nextDouble() * 20_000);
+        }
+        for (int i = 0; i < CITIES; i++) {
+            cities[i] = offset(HOME_LAT, HOME_LNG, 200_000 + random.nextDouble() * 2_000_000);
+        }
+    }
+
+    /**
+     * A library of exactly size photos; the same seed always gives the same library
+     */
+    public static List<PhotoData> generate(int size, long seed) {
+        SyntheticLibrary library = new SyntheticLibrary(size, seed);
+        while (library.photos.size() < size) {
+            library.addEvent();
+        }
+        return library.photos;
+    }
+
+    private void addEvent() {
+        long start = START + (long) (random.nextDouble() * span / DAY) * DAY + randomHourOfDay();
+        int kind = random.nextInt(100);
+
+        if (kind < 30) {
+            burst(HOME_LAT, HOME_LNG, start, 30.0);
+        } else if (kind < 65) {
+            // Busy places get most of the visits
+            double[] place = favorites[(int) (FAVORITE_PLACES * Math.pow(random.nextDouble(), 2))];
+            burst(place[0], place[1], start, 60.0);
+        } else if (kind < 78) {
+            walk(start);
+        } else if (kind < 85) {
+            trip(start);
+        } else {
+            // Screenshots and scans
+            burst(0.0, 0.0, start, 0.0);
+        }
+    }
+
+    /**
+     * A few to a few dozen photos within an hour or two around one spot
+     */
+    private void burst(double lat, double lng, long start, double spreadMeters) {
+        int count = 1 + (int) (-Math.log(1 - random.nextDouble()) * 8);
+        long time = start;
+        for (int i = 0; i < count; i++) {
+            double[] position = lat == 0.0 && lng == 0.0
+                    ? null : offset(lat, lng, Math.abs(random.nextGaussian()) * spreadMeters);
+            add(position, time);
+            time += (long) (-Math.log(1 - random.nextDouble()) * 4 * MINUTE);
+        }
+    }
+
+    /**
+     * A hike or city walk: a photo every few hundred meters along a meandering track
+     */
+    private void walk(long start) {
+        double[] position = favorites[random.nextInt(FAVORITE_PLACES)];
+        double heading = random.nextDouble() * 2 * Math.PI;
+        int count = 5 + random.nextInt(40);
+        long time = start;
+
+        for (int i = 0; i < count; i++) {
+            add(offset(position[0], position[1], 5.0), time);
+            heading += random.nextGaussian() * 0.4;
+            double step = 50 + random.nextDouble() * 400;
+            position = new double[]{
+                    position[0] + step * Math.cos(heading) / GeoDistance.METERS_PER_DEGREE,
+                    position[1] + step * Math.sin(heading) / GeoDistance.METERS_PER_DEGREE
+                            / Math.cos(Math.toRadians(position[0]))};
+            time += 2 * MINUTE + (long) (random.nextDouble() * 10 * MINUTE);
+        }
+    }
+
+    /**
+     * Several days in another city, with bursts at spots around its center each day
+     */
+    private void trip(long start) {
+        double[] city = cities[random.nextInt(CITIES)];
+        long firstDay = start - Math.floorMod(start - START, DAY);
+        int days = 2 + random.nextInt(6);
+        for (int day = 0; day < days; day++) {
+            int stops = 1 + random.nextInt(5);
+            for (int stop = 0; stop < stops; stop++) {
+                double[] spot = offset(city[0], city[1], random.nextDouble() * 8_000);
+                burst(spot[0], spot[1], firstDay + day * DAY + randomHourOfDay(), 40.0);
+            }
+        }
+    }
+
+    private void add(double[] position, long time) {
+        if (photos.size() == size) {
+            return;
+        }
+        PhotoData photo = new PhotoData("content://media/external/images/media/" + (photos.size() + 1));
+        if (position != null) {
+            // A few meters of GPS noise
+            double[] noisy = offset(position[0], position[1], Math.abs(random.nextGaussian()) * 8.0);
+            photo.setLatitude(noisy[0]);
+            photo.setLongitude(noisy[1]);
+        }
+        photo.setDateTaken(time);
+        photos.add(photo);
+    }
+
+    private long randomHourOfDay() {
+        int total = 0;
+        for (int weight : HOUR_WEIGHTS) {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        int hour = 0;
+        while (pick >= HOUR_WEIGHTS[hour]) {
+            pick -= HOUR_WEIGHTS[hour++];
+        }
+        return hour * HOUR + (long) (random.nextDouble() * HOUR);
+    }
+
+    /**
+     * A point the given distance from the origin in a random direction
+     */
+    private double[] offset(double lat, double lng, double meters) {
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        double dLat = meters * Math.cos(bearing) / GeoDistance.METERS_PER_DEGREE;
+        double dLng = meters * Math.sin(bearing) / GeoDistance.METERS_PER_DEGREE / Math.cos(Math.toRadians(lat));
+        return new double[]{lat + dLat, lng + dLng};
+    }
+}